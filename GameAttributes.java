@@ -48,7 +48,11 @@ public enum GameAttributes {
     PLAYER_ONE_Y(-999),
     PLAYER_TWO_Y(-999),
     BALL_X(-999),
-    BALL_Y(-999);
+    BALL_Y(-999),
+    BALL_DX(-999),
+    BALL_DY(-999),
+    NUM_VOLLEYS(-999),
+    NUM_TICKS(-999);
     
     private int attributeValue;
     
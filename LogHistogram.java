@@ -0,0 +1,205 @@
+/*
+ * LogHistogram - mergeable log-scale histogram of non-negative counts
+ */
+package mlwithpong;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * LogHistogram<br>
+ * - counts non-negative integer values (volleys per rally, ticks per game, etc)<br>
+ * - values below 16 are counted exactly, larger values fall into buckets
+ *   whose width doubles with every power of two, so each bucket is within
+ *   about 6% of the values it holds and the whole long range fits in
+ *   under a thousand buckets<br>
+ * - not thread-safe: each thread records into its own histogram, and the
+ *   histograms are merged with add() when the results are read<br>
+ * - write()/read() store only the non-empty buckets, as varints (for
+ *   checkpoints)
+ */
+public class LogHistogram {
+
+    private static final int SUB_BITS    = 4;               // exact below 2^SUB_BITS
+    private static final int SUB_COUNT   = 1 << SUB_BITS;   // buckets per power of two
+    private static final int NUM_BUCKETS = (64 - SUB_BITS + 1) * SUB_COUNT;
+
+    private final long[] counts = new long[NUM_BUCKETS];
+    private long totalCount = 0;
+    private long totalSum   = 0;
+    private long minValue   = Long.MAX_VALUE;
+    private long maxValue   = 0;
+
+    /**
+     * record: counts one occurrence of a value<br>
+     * - negative values are counted as 0
+     *
+     * @param value the value to count
+     */
+    public void record(long value)
+    {
+        record(value, 1);
+    }
+
+    /**
+     * record: counts several occurrences of a value
+     *
+     * @param value the value to count
+     * @param count the number of occurrences
+     */
+    public void record(long value, long count)
+    {
+        if (value < 0) value = 0;
+        counts[bucketIndex(value)] += count;
+        totalCount += count;
+        totalSum   += value*count;
+        if (value < minValue) minValue = value;
+        if (value > maxValue) maxValue = value;
+    }
+
+    /**
+     * add: merges the counts of another histogram into this one
+     *
+     * @param other histogram to merge (is not modified)
+     */
+    public void add(LogHistogram other)
+    {
+        for (int b = 0; b < NUM_BUCKETS; b++)
+        {
+            counts[b] += other.counts[b];
+        }
+        totalCount += other.totalCount;
+        totalSum   += other.totalSum;
+        if (other.minValue < minValue) minValue = other.minValue;
+        if (other.maxValue > maxValue) maxValue = other.maxValue;
+    }
+
+    /**
+     * write: writes the histogram compactly: the non-empty buckets as
+     * (index gap, count) varints
+     *
+     * @param out stream to write to
+     * @throws IOException if the stream fails
+     */
+    public void write(OutputStream out) throws IOException
+    {
+        int used = 0;
+        for (long c : counts) if (c != 0) used++;
+        VarInts.writeVarint(out, used);
+        int previous = 0;
+        for (int b = 0; b < NUM_BUCKETS; b++)
+        {
+            if (counts[b] == 0) continue;
+            VarInts.writeVarint(out, b - previous);
+            VarInts.writeVarlong(out, counts[b]);
+            previous = b;
+        }
+        VarInts.writeVarlong(out, totalCount);
+        VarInts.writeVarlong(out, totalSum);
+        VarInts.writeVarlong(out, minValue);
+        VarInts.writeVarlong(out, maxValue);
+    }
+
+    /**
+     * read: replaces the counts with a histogram written by write()
+     *
+     * @param in stream to read from
+     * @throws IOException if the stream fails or holds no histogram
+     */
+    public void read(InputStream in) throws IOException
+    {
+        reset();
+        int used = VarInts.readVarint(in);
+        int b = 0;
+        for (int i = 0; i < used; i++)
+        {
+            b += VarInts.readVarint(in);
+            if (b < 0 || b >= NUM_BUCKETS) throw new IOException("histogram bucket out of range: " + b);
+            counts[b] = VarInts.readVarlong(in);
+        }
+        totalCount = VarInts.readVarlong(in);
+        totalSum   = VarInts.readVarlong(in);
+        minValue   = VarInts.readVarlong(in);
+        maxValue   = VarInts.readVarlong(in);
+    }
+
+    /**
+     * reset: clears all counts
+     */
+    public void reset()
+    {
+        java.util.Arrays.fill(counts, 0);
+        totalCount = 0;
+        totalSum   = 0;
+        minValue   = Long.MAX_VALUE;
+        maxValue   = 0;
+    }
+
+    public long getCount()
+    {
+        return totalCount;
+    }
+
+    public long getMin()
+    {
+        return (totalCount == 0) ? 0 : minValue;
+    }
+
+    public long getMax()
+    {
+        return maxValue;
+    }
+
+    public double getMean()
+    {
+        return (totalCount == 0) ? 0.0 : (double)totalSum/totalCount;
+    }
+
+    /**
+     * getValueAtPercentile: approximate value below which a percentage of counts fall
+     *
+     * @param percentile 0.0 to 100.0
+     * @return long the lower bound of the bucket holding that percentile
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        if (totalCount == 0) return 0;
+        long target = (long)Math.ceil(totalCount*Math.min(100.0, Math.max(0.0, percentile))/100.0);
+        if (target < 1) target = 1;
+        long seen = 0;
+        for (int b = 0; b < NUM_BUCKETS; b++)
+        {
+            seen += counts[b];
+            if (seen >= target) return Math.min(Math.max(bucketLowerBound(b), getMin()), maxValue);
+        }
+        return maxValue;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "n=" + totalCount
+             + " mean=" + String.format("%.2f", getMean())
+             + " min=" + getMin()
+             + " p50=" + getValueAtPercentile(50.0)
+             + " p90=" + getValueAtPercentile(90.0)
+             + " p99=" + getValueAtPercentile(99.0)
+             + " max=" + maxValue;
+    }
+
+    private static int bucketIndex(long value)
+    {
+        if (value < SUB_COUNT) return (int)value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        return (shift + 1)*SUB_COUNT + (int)((value >>> shift) - SUB_COUNT);
+    }
+
+    private static long bucketLowerBound(int index)
+    {
+        if (index < SUB_COUNT) return index;
+        int shift = index/SUB_COUNT - 1;
+        return ((long)(SUB_COUNT + index%SUB_COUNT)) << shift;
+    }
+}
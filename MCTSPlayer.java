@@ -0,0 +1,347 @@
+/*
+ * MCTSPlayer - Monte Carlo tree search CPU player
+ */
+package mlwithpong;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * MCTSPlayer: search-based CPU player<br>
+ * - unlike the simple and forecasting CPU players, it can aim its returns:
+ *   it plays future ticks forward on copies of the game (PongGame snapshots)
+ *   and picks the paddle move that most often wins the point, which lets it
+ *   find the spin (where the ball hits the paddle in updateBall) that the
+ *   opponent cannot reach<br>
+ * <p>
+ * Search:<br>
+ * - one decision per ball tick; an action (up, stay, down) is held for the
+ *   paddleMovesPerBallTick paddle moves of that ball tick<br>
+ * - the opponent is modelled as the forecasting CPU player<br>
+ * - a leaf is evaluated by a rollout in which both paddles forecast, until
+ *   the point ends (1 won, 0 lost) or ROLLOUT_TICKS pass (0.5)<br>
+ * - root parallel: every worker thread grows its own tree, so workers share
+ *   nothing while searching; the visit counts of the roots' children are
+ *   summed to choose the move<br>
+ * - tree reuse: after a move, each worker keeps the subtree of the child
+ *   whose state matches the game's next state<br>
+ * - every decision stops at a hard time budget, so it can play live in
+ *   PongPlayableGame (10 ms paddle tick, 5 paddle moves per ball tick);
+ *   workers check the deadline between iterations and are always joined
+ *   before the trees are read or advanced
+ */
+public class MCTSPlayer implements PongPlayer, Closeable {
+
+    private static final int    ROLLOUT_TICKS = 120;     // ball ticks per rollout
+    private static final double EXPLORATION   = 0.7;     // UCB1 exploration constant
+    private static final int[]  ACTIONS       = {-1, 0, 1};
+
+    private final int numWorkers;
+    private final long budgetNanos;
+    private final int paddleMovesPerBallTick;
+    private final ExecutorService executor;
+    private final List<Worker> workers = new ArrayList<>();
+
+    private final PongGameSnapshot current = new PongGameSnapshot();
+    private final PongGameSnapshot lastDecision = new PongGameSnapshot();
+    private boolean hasDecision = false;
+    private int lastAction = 0;
+    private long decisions = 0;
+    private long iterations = 0;
+
+    /**
+     * MCTSPlayer Constructor
+     *
+     * @param numWorkers number of search threads
+     * @param budgetMillis time budget of one decision, in milliseconds
+     * @param paddleMovesPerBallTick paddle moves between two ball ticks
+     *        (1 in startSimulatedMatch, 5 in PongPlayableGame)
+     */
+    public MCTSPlayer(int numWorkers, double budgetMillis, int paddleMovesPerBallTick)
+    {
+        this.numWorkers = numWorkers;
+        this.budgetNanos = (long)(budgetMillis*1e6);
+        this.paddleMovesPerBallTick = paddleMovesPerBallTick;
+        this.executor = Executors.newFixedThreadPool(numWorkers, runnable -> {
+            Thread thread = new Thread(runnable, "MCTSPlayer-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public int choosePaddleMove(PongGame pongGame, int player)
+    {
+        pongGame.snapshot(current, false);
+
+        // between two ball ticks the ball has not moved: keep the chosen move
+        if (hasDecision && sameBall(current, lastDecision)) return lastAction;
+
+        if (workers.isEmpty())
+        {
+            for (int w = 0; w < numWorkers; w++) workers.add(new Worker(pongGame.fork(), player, w));
+        }
+
+        long deadline = System.nanoTime() + budgetNanos;
+        List<Callable<Void>> searches = new ArrayList<>();
+        for (Worker worker : workers)
+        {
+            searches.add(() -> { worker.search(current, deadline); return null; });
+        }
+        try {
+            // each search returns within one iteration of the deadline
+            for (Future<Void> search : executor.invokeAll(searches)) search.get();
+        }
+        catch (InterruptedException ie) {
+            // cancelled workers may still be running: abandon their trees
+            Thread.currentThread().interrupt();
+            workers.clear();
+            hasDecision = false;
+            return lastAction;
+        }
+        catch (ExecutionException ee) {
+            throw new IllegalStateException("MCTS search failed", ee.getCause());
+        }
+
+        // sum the root visit counts of all trees
+        long[] visits = new long[ACTIONS.length];
+        for (Worker worker : workers)
+        {
+            Node root = worker.root;
+            if (root == null) continue;
+            iterations += worker.iterationsThisDecision;
+            for (int a = 0; a < ACTIONS.length; a++)
+            {
+                if (root.children[a] != null) visits[a] += root.children[a].visits;
+            }
+        }
+        int best = 1;
+        for (int a = 0; a < ACTIONS.length; a++)
+        {
+            if (visits[a] > visits[best]) best = a;
+        }
+        for (Worker worker : workers) worker.advance(best);
+
+        lastDecision.copyFrom(current);
+        hasDecision = true;
+        lastAction = ACTIONS[best];
+        decisions++;
+        return lastAction;
+    }
+
+    /**
+     * getMeanIterationsPerDecision: search iterations per decision, over all workers
+     *
+     * @return double mean iterations
+     */
+    public double getMeanIterationsPerDecision()
+    {
+        return (decisions == 0) ? 0.0 : (double)iterations/decisions;
+    }
+
+    @Override
+    public void close()
+    {
+        executor.shutdownNow();
+    }
+
+    private static boolean sameBall(PongGameSnapshot a, PongGameSnapshot b)
+    {
+        return a.x == b.x && a.y == b.y && a.dx == b.dx && a.dy == b.dy
+            && a.playerOneScore == b.playerOneScore && a.playerTwoScore == b.playerTwoScore;
+    }
+
+    private static boolean sameState(PongGameSnapshot a, PongGameSnapshot b)
+    {
+        return sameBall(a, b) && a.playerOneY == b.playerOneY && a.playerTwoY == b.playerTwoY;
+    }
+
+    /**
+     * Node: a game state at a ball-tick boundary
+     */
+    private static final class Node {
+        final PongGameSnapshot state;
+        final Node[] children = new Node[ACTIONS.length];
+        final boolean terminal;
+        final double terminalValue;
+        int visits = 0;
+        double valueSum = 0.0;
+
+        Node(PongGameSnapshot state, boolean terminal, double terminalValue)
+        {
+            this.state = state;
+            this.terminal = terminal;
+            this.terminalValue = terminalValue;
+        }
+    }
+
+    /**
+     * Worker: one search thread and its own tree
+     */
+    private final class Worker {
+        final PongGame game;        // scratch game, restored to a node's state for every step
+        final int player;
+        final int width;
+        final SplittableRandom random;
+        final Node[] path = new Node[4096];
+        Node root = null;
+        long iterationsThisDecision = 0;
+
+        Worker(PongGame game, int player, int seed)
+        {
+            this.game = game;
+            this.player = player;
+            this.width = game.getAttribute(GameAttributes.GAME_WIDTH);
+            this.random = new SplittableRandom(seed);
+        }
+
+        void search(PongGameSnapshot state, long deadline)
+        {
+            if (root == null || !sameState(root.state, state))
+            {
+                PongGameSnapshot rootState = new PongGameSnapshot();
+                rootState.copyFrom(state);
+                root = new Node(rootState, false, 0.0);
+            }
+            iterationsThisDecision = 0;
+            while (System.nanoTime() < deadline && !Thread.currentThread().isInterrupted())
+            {
+                iterate();
+                iterationsThisDecision++;
+            }
+        }
+
+        void advance(int action)
+        {
+            root = (root == null) ? null : root.children[action];
+        }
+
+        private void iterate()
+        {
+            // selection
+            int depth = 0;
+            Node node = root;
+            path[depth++] = node;
+            while (!node.terminal && fullyExpanded(node) && depth < path.length - 1)
+            {
+                node = node.children[selectUCB(node)];
+                path[depth++] = node;
+            }
+
+            // expansion
+            if (!node.terminal && !fullyExpanded(node))
+            {
+                int action = unexpandedAction(node);
+                game.restore(node.state);
+                int outcome = step(ACTIONS[action]);
+                Node child = new Node(game.snapshot(false), outcome >= 0, outcome);
+                node.children[action] = child;
+                node = child;
+                path[depth++] = node;
+            }
+
+            // simulation
+            double value;
+            if (node.terminal) value = node.terminalValue;
+            else
+            {
+                game.restore(node.state);
+                value = rollout();
+            }
+
+            // backpropagation
+            for (int d = 0; d < depth; d++)
+            {
+                path[d].visits++;
+                path[d].valueSum += value;
+            }
+        }
+
+        private boolean fullyExpanded(Node node)
+        {
+            for (Node child : node.children)
+            {
+                if (child == null) return false;
+            }
+            return true;
+        }
+
+        private int unexpandedAction(Node node)
+        {
+            int start = random.nextInt(ACTIONS.length);
+            for (int i = 0; i < ACTIONS.length; i++)
+            {
+                int a = (start + i) % ACTIONS.length;
+                if (node.children[a] == null) return a;
+            }
+            return 0;
+        }
+
+        private int selectUCB(Node node)
+        {
+            double logVisits = Math.log(node.visits);
+            int best = 0;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int a = 0; a < ACTIONS.length; a++)
+            {
+                Node child = node.children[a];
+                double score = child.valueSum/child.visits + EXPLORATION*Math.sqrt(logVisits/child.visits);
+                if (score > bestScore)
+                {
+                    bestScore = score;
+                    best = a;
+                }
+            }
+            return best;
+        }
+
+        // one ball tick: own action held for every paddle move, opponent forecasts
+        // returns 1 if this player scored, 0 if the opponent scored, -1 if still in play
+        private int step(int action)
+        {
+            int dyPaddle = game.getAttribute(GameAttributes.PADDLE_DY);
+            for (int m = 0; m < paddleMovesPerBallTick; m++)
+            {
+                if (player == 1)
+                {
+                    if (action != 0) game.movePlayerOnePaddle(action*dyPaddle);
+                    game.playerTwoAlgorithmicCPUMovePaddle(false);
+                }
+                else
+                {
+                    if (action != 0) game.movePlayerTwoPaddle(action*dyPaddle);
+                    game.playerOneAlgorithmicCPUMovePaddle(false);
+                }
+            }
+            game.updateBall();
+            int x = game.getAttribute(GameAttributes.BALL_X);
+            if (x > width) return (player == 1) ? 1 : 0;
+            if (x < 0)     return (player == 2) ? 1 : 0;
+            return -1;
+        }
+
+        private double rollout()
+        {
+            for (int t = 0; t < ROLLOUT_TICKS; t++)
+            {
+                for (int m = 0; m < paddleMovesPerBallTick; m++)
+                {
+                    game.playerOneAlgorithmicCPUMovePaddle(false);
+                    game.playerTwoAlgorithmicCPUMovePaddle(false);
+                }
+                game.updateBall();
+                int x = game.getAttribute(GameAttributes.BALL_X);
+                if (x > width) return (player == 1) ? 1.0 : 0.0;
+                if (x < 0)     return (player == 2) ? 1.0 : 0.0;
+            }
+            return 0.5;
+        }
+    }
+}
@@ -30,7 +30,7 @@ public class MLWithPong {
     /**
      * Main entry point as usual...
      * 
-     * @param args not used
+     * @param args --resume to continue a campaign or training run from its checkpoint file
      * @throws InterruptedException To Handle Thread sleeping until game ends
      */
     public static void main(String[] args) throws InterruptedException {
@@ -39,6 +39,8 @@ public class MLWithPong {
         boolean PLAYER_ONE_HUMAN = false;        
         // set to false for CPU controlled player, true for human (UP, DOWN)
         boolean PLAYER_TWO_HUMAN = false;
+        // campaigns and training runs continue from their checkpoint file
+        boolean RESUME = java.util.Arrays.asList(args).contains("--resume");
         
         if (false)
         {
@@ -50,6 +52,177 @@ public class MLWithPong {
             // USE THIS to simulate a game with no graphics [like Python ML code/games]
             new PongSimulatedGame();            
         }
+        else if (false)
+        {
+            // USE THIS to run a long simulation campaign that survives crashes (run again with --resume)
+            // [1 million seeded matches, checkpointed to campaign.ckp every 10 seconds]
+            try {
+                new PongSimulatedGame(1000000, Runtime.getRuntime().availableProcessors(), 1L,
+                                      java.nio.file.Paths.get("campaign.ckp"), RESUME);
+            }
+            catch (java.io.IOException ioe) {
+                System.err.println("campaign: " + ioe);
+            }
+        }
+        else if (false)
+        {
+            // USE THIS to play against the search-based CPU player (right paddle)
+            // [4 search threads, 8 ms per decision, 5 paddle moves per ball move]
+            new PongPlayableGame(PLAYER_ONE_HUMAN,false,null,new MCTSPlayer(4, 8.0, 5));
+        }
+        else if (false)
+        {
+            // USE THIS to play against the dynamic programming solution (right paddle)
+            // [solved by value iteration before the game starts, 5 paddle moves per ball move]
+            PongDPSolver solver = new PongDPSolver(new PongGame(PLAYER_ONE_HUMAN,false), 2, 5);
+            new PongPlayableGame(PLAYER_ONE_HUMAN,false,null,new PongDPPlayer(solver.solve()));
+        }
+        else if (false)
+        {
+            // USE THIS to train a tabular SARSA player (right paddle), then play against it
+            // [2 million points on 4 threads, printing the learning curve;
+            //  trained at the paddle moves per ball move of the playable game]
+            PongQLearner learner = new PongQLearner(new PongQTable(1<<24), 2, true, 0.2, 0.99, 0.05,
+                                                    PongPlayableGame.PADDLE_MOVES_PER_TICK);
+            learner.train(2000000, 4, 100000, System.out);
+            new PongPlayableGame(PLAYER_ONE_HUMAN,false,null,learner);
+        }
+        else if (false)
+        {
+            // USE THIS to train the policy network by evolution strategies (right paddle), then play against it
+            // [2 stacked position frames, 32 hidden units, 32 antithetic pairs of 50 points, 200 generations,
+            //  at the paddle moves per ball move of the playable game, checkpointed to es.ckp every 10 generations]
+            PongObservation observation = PongObservations.stackedPositions(2);
+            PongPolicyNetwork network = new PongPolicyNetwork(observation, observation.getSize(new PongGame()), 32, 0.01f);
+            network.initialize(1L);
+            PongESTrainer trainer = new PongESTrainer(network, 1 << 24, 7L, 32, 0.5, 0.05, 50,
+                                                      Runtime.getRuntime().availableProcessors());
+            trainer.setPaddleMovesPerTick(PongPlayableGame.PADDLE_MOVES_PER_TICK);
+            try (PongCheckpointFile checkpoints = new PongCheckpointFile(java.nio.file.Paths.get("es.ckp"), RESUME)) {
+                trainer.train(200, System.out, checkpoints, 10);
+            }
+            catch (java.io.IOException ioe) {
+                System.err.println("checkpoint: " + ioe);
+            }
+            trainer.shutdown();
+            new PongPlayableGame(PLAYER_ONE_HUMAN,false,null,network);
+        }
+        else if (false)
+        {
+            // USE THIS to rate the CPU players in a round-robin tournament
+            // [20 seeded matches per pairing and side, results kept in tournament.csv]
+            try {
+                PongTournament tournament = new PongTournament(20, Runtime.getRuntime().availableProcessors(),
+                                                               java.nio.file.Paths.get("tournament.csv"));
+                tournament.register("simple CPU", () -> new PongCPUPlayer(true));
+                tournament.register("forecast CPU", () -> new PongCPUPlayer(false));
+                tournament.play();
+                tournament.printLeaderboard(System.out);
+            }
+            catch (java.io.IOException ioe) {
+                System.err.println("tournament results: " + ioe);
+            }
+        }
+        else if (false)
+        {
+            // USE THIS to decide whether one CPU player beats another, stopping as soon as it is clear
+            // [forecast CPU (B) vs simple CPU (A): B wins 50% (H0) or 55% (H1) of points, 5% error rates]
+            PongSequentialTest test = new PongSequentialTest(() -> new PongCPUPlayer(true), () -> new PongCPUPlayer(false),
+                                                             0.5, 0.55, 0.05, 0.05, 1000000,
+                                                             Runtime.getRuntime().availableProcessors(), 1L);
+            test.run().print(System.out);
+        }
+        else if (false)
+        {
+            // USE THIS to write a training data set for Python (np.load(..., mmap_mode='r'))
+            // [100000 points of the forecast CPU (right paddle) with 10% random moves,
+            //  4 stacked position frames, 1 million records per chunk]
+            try {
+                PongObservation observation = PongObservations.stackedPositions(4);
+                PongDatasetWriter writer = new PongDatasetWriter(java.nio.file.Paths.get("dataset"),
+                                                                 observation.getSize(new PongGame()), 1000000);
+                writer.generate(100000, Runtime.getRuntime().availableProcessors(), observation, 2,
+                                () -> new PongCPUPlayer(false), 0.1, 1L);
+            }
+            catch (java.io.IOException ioe) {
+                System.err.println("data set: " + ioe);
+            }
+        }
+        else if (false)
+        {
+            // USE THIS to sweep paddle moves per tick over worker processes (one JVM per core)
+            // [forecast CPU (left) vs simple CPU (right), 1 to 5 moves per tick, 8 jobs of 5 matches each]
+            java.util.List<Process> workers = new java.util.ArrayList<>();
+            try (PongCoordinator coordinator = new PongCoordinator(PongCoordinator.DEFAULT_PORT, 5000)) {
+                int processes = Runtime.getRuntime().availableProcessors();
+                long[][] jobs = new long[6][8];
+                for (int moves = 1; moves <= 5; moves++)
+                    for (int j = 0; j < 8; j++)
+                        jobs[moves][j] = coordinator.submit(PongWorker.JOB_MATCHES, 1000L*j, 0, 1, 5, moves);
+                workers.addAll(coordinator.launchWorkers(processes, 1));
+                java.util.Map<Long, long[]> results = coordinator.awaitResults();
+                for (int moves = 1; moves <= 5; moves++)
+                {
+                    long[] sum = new long[5];
+                    int failed = 0;
+                    for (long id : jobs[moves])
+                    {
+                        long[] result = results.get(id);   // (none for a job given up, see getFailedJobs)
+                        if (result == null) { failed++; continue; }
+                        for (int i = 0; i < sum.length; i++) sum[i] += result[i];
+                    }
+                    System.out.println(moves + " moves/tick: forecast won " + sum[0] + ", simple won " + sum[1]
+                                       + ", points " + sum[2] + "-" + sum[3]
+                                       + ((failed > 0) ? " (" + failed + " jobs failed)" : ""));
+                }
+            }
+            catch (java.io.IOException ioe) {
+                System.err.println("coordinator: " + ioe);
+            }
+            for (Process worker : workers) worker.waitFor();   // told to stop when the coordinator closed
+        }
+        else if (false)
+        {
+            // USE THIS to record a replay (seed + paddle moves, a few bytes per rally) and watch it
+            // [one simulated match of the CPUs, state checksum every 256 ticks, written to match.prpl]
+            try {
+                PongGame pongGame = new PongGame();
+                pongGame.setVerbose(false);
+                try (PongReplay.Recorder recorder = PongReplay.record(pongGame, 1L, java.nio.file.Paths.get("match.prpl"), 256)) {
+                    pongGame.startSimulatedMatch();
+                    System.out.println("recorded " + recorder.getTicks() + " ticks");
+                }
+                new PongSavedGame("match.prpl");
+            }
+            catch (java.io.IOException ioe) {
+                System.err.println("replay: " + ioe);
+            }
+        }
+        else if (false)
+        {
+            // USE THIS to compare Saved Games side by side in one window (txt files or replays)
+            // [synchronized clocks: every game shows the same tick; 100 ticks per second]
+            java.util.List<String> files = new java.util.ArrayList<>();
+            for (int i = 1; i <= 4; i++) files.add("/Users/devang/Desktop/TrainingOutput_" + i + ".txt");
+            new PongReplayGrid(files, true, 100);
+        }
+        else if (false)
+        {
+            // USE THIS to archive Saved Games made with Python ML code and query them
+            // [games where the right (ML) paddle lost after 20+ volleys, in segments of 256 MB]
+            try (PongGameArchive archive = new PongGameArchive(java.nio.file.Paths.get("archive"), 256L << 20)) {
+                for (int i = 1; i <= 4; i++)
+                    archive.importSavedGame(java.nio.file.Paths.get("/Users/devang/Desktop/TrainingOutput_" + i + ".txt"), "python-dqn");
+                for (long id : archive.find(new PongGameArchive.Query().model("python-dqn").winner(1).minVolleys(20)))
+                {
+                    PongGameArchive.GameInfo info = archive.getInfo(id);
+                    System.out.println("game " + id + ": " + info.getVolleys() + " volleys, " + info.getFrames() + " frames");
+                }
+            }
+            catch (java.io.IOException ioe) {
+                System.err.println("archive: " + ioe);
+            }
+        }
         else if (true)
         {
             // USE THIS to play video of a Saved Game made with Python ML code
@@ -0,0 +1,25 @@
+/*
+ * PongBatchPolicy - a paddle policy that decides many paddles in one call
+ */
+package mlwithpong;
+
+/**
+ * PongBatchPolicy<br>
+ * - a model (e.g. the weights of a network trained in Python) that maps
+ *   observations to paddle moves, evaluated for a batch of observations
+ *   at once, which is how a model runs fastest<br>
+ * - every observation is seen from the right paddle, as the models are
+ *   trained; PongSelfPlay mirrors the view of the left paddle
+ */
+public interface PongBatchPolicy {
+
+    /**
+     * choosePaddleMoves: the paddle moves for a batch of observations
+     *
+     * @param observations count observations of size floats, one after the other
+     * @param size floats per observation
+     * @param count number of observations
+     * @param moves array to write count moves to: -1 up, 1 down, 0 stay
+     */
+    void choosePaddleMoves(float[] observations, int size, int count, int[] moves);
+}
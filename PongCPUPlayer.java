@@ -0,0 +1,31 @@
+/*
+ * PongCPUPlayer - the algorithmic CPU players as PongPlayers
+ */
+package mlwithpong;
+
+/**
+ * PongCPUPlayer<br>
+ * - the simple (follows the ball) or forecasting (predicts where the ball
+ *   will reach the paddle) CPU of PongGame, as a PongPlayer, so it can be
+ *   registered next to other policies, e.g. in a PongTournament
+ */
+public class PongCPUPlayer implements PongPlayer {
+
+    private final boolean simple;
+
+    /**
+     * PongCPUPlayer Constructor
+     *
+     * @param simple true for the simple CPU, false for the forecasting CPU
+     */
+    public PongCPUPlayer(boolean simple)
+    {
+        this.simple = simple;
+    }
+
+    @Override
+    public int choosePaddleMove(PongGame pongGame, int player)
+    {
+        return pongGame.algorithmicCPUMove(player, simple);
+    }
+}
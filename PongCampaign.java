@@ -0,0 +1,326 @@
+/*
+ * PongCampaign - a long, seeded simulation campaign that survives crashes
+ */
+package mlwithpong;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PongCampaign: plays numMatches seeded matches of the simulated CPUs on
+ * numThreads threads, checkpointing its progress to a PongCheckpointFile<br>
+ * - match m is played with serve seed (seed + m), so every match is the
+ *   same whichever thread plays it, and the totals do not depend on the
+ *   number of threads or on interruptions<br>
+ * - a checkpoint holds the finished matches, their merged statistics and,
+ *   for every match in progress, its engine snapshot between two points,
+ *   the position of its serve sequence and its statistics so far<br>
+ * - resuming continues from the last good checkpoint: matches in progress
+ *   continue from their snapshot, the others are played from the start,
+ *   and the totals are identical to those of an uninterrupted campaign<br>
+ * <p>
+ * Checkpoints are a consistent cut made without stopping the simulation:
+ * the checkpoint thread raises a request, and every simulation thread
+ * answers it at its next point boundary by encoding its match in progress
+ * (a few hundred bytes) or, if it finishes a match first, by handing over
+ * the finished match. The checkpoint thread copies the cut, encodes it
+ * outside the campaign lock and appends it to the file asynchronously; no
+ * simulation thread waits for another one, for the encoding or for the disk.
+ * <p>
+ * Matches are handed out in order, so the finished matches are nearly a
+ * prefix: a checkpoint stores the length of the finished prefix and the
+ * few finished matches after it, and stays small however long the campaign.
+ */
+public class PongCampaign {
+
+    private final int numMatches;
+    private final int numThreads;
+    private final long seed;
+
+    // guarded by this
+    private final BitSet finished = new BitSet();
+    private final ArrayDeque<byte[]> resumed = new ArrayDeque<>();   // matches in progress at the last checkpoint
+    private final BitSet started = new BitSet();                     // finished, resumed or being played
+    private PongStatistics.Counts totals;
+    private Slot[] slots;
+    private long requestedCut = 0;
+    private int nextMatch = 0;
+    private int paddleHeight;
+    private String configuration;
+
+    /**
+     * PongCampaign Constructor
+     *
+     * @param numMatches matches to play
+     * @param numThreads threads to play them on
+     * @param seed seed of the campaign (match m serves with seed + m)
+     */
+    public PongCampaign(int numMatches, int numThreads, long seed)
+    {
+        this.numMatches = numMatches;
+        this.numThreads = numThreads;
+        this.seed = seed;
+    }
+
+    /**
+     * run: plays the campaign (or what is left of it), checkpointing every
+     * checkpointMillis and once more at the end
+     *
+     * @param checkpoints file to checkpoint to (resumes from its last checkpoint), or null
+     * @param checkpointMillis time between checkpoints
+     * @return PongStatistics statistics of all numMatches matches
+     * @throws IOException if the checkpoint cannot be read or written
+     * @throws InterruptedException if interrupted while playing
+     */
+    public PongStatistics run(PongCheckpointFile checkpoints, long checkpointMillis) throws IOException, InterruptedException
+    {
+        PongGame pongGame = new PongGame();
+        configuration = pongGame.describeConfiguration();
+        paddleHeight = pongGame.getAttribute(GameAttributes.PADDLE_HEIGHT);
+        totals = new PongStatistics.Counts(paddleHeight);
+        slots = new Slot[numThreads];
+        for (int t = 0; t < numThreads; t++) slots[t] = new Slot();
+        if (checkpoints != null && checkpoints.getLastCheckpoint() != null) restore(checkpoints.getLastCheckpoint());
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++)
+        {
+            Slot slot = slots[t];
+            Thread thread = new Thread(() -> play(slot), "pong-campaign-" + t);
+            thread.start();
+            threads.add(thread);
+        }
+        long interval = TimeUnit.MILLISECONDS.toNanos(checkpointMillis);
+        long next = System.nanoTime() + interval;
+        for (Thread thread : threads)
+        {
+            while (thread.isAlive())
+            {
+                long wait = next - System.nanoTime();
+                if (wait > 0) TimeUnit.NANOSECONDS.timedJoin(thread, wait);
+                if (checkpoints != null && System.nanoTime() - next >= 0)
+                {
+                    checkpoints.append(checkpoint());
+                    next = System.nanoTime() + interval;
+                }
+                else if (checkpoints == null)
+                {
+                    next = System.nanoTime() + interval;
+                }
+            }
+        }
+        if (checkpoints != null)
+        {
+            checkpoints.append(checkpoint());
+            checkpoints.flush();
+        }
+
+        PongStatistics statistics = new PongStatistics(configuration, paddleHeight);
+        statistics.add(totals);
+        return statistics;
+    }
+
+    // a simulation thread: plays matches until none are left
+    private void play(Slot slot)
+    {
+        byte[] state;
+        int match;
+        while (true)
+        {
+            synchronized (this)
+            {
+                state = resumed.poll();
+                if (state == null)
+                {
+                    while (nextMatch < numMatches && started.get(nextMatch)) nextMatch++;
+                    if (nextMatch >= numMatches)
+                    {
+                        slot.idle = true;
+                        notifyAll();
+                        return;
+                    }
+                    started.set(nextMatch);
+                }
+                match = (state == null) ? nextMatch : -1;
+            }
+
+            PongGame pongGame = new PongGame();
+            pongGame.setVerbose(false);
+            pongGame.setFastForward(true);
+            PongStatistics statistics = new PongStatistics(configuration, paddleHeight);
+            pongGame.setStatistics(statistics);
+            if (state == null)
+            {
+                pongGame.setRandomSeed(seed + match);
+            }
+            else
+            {
+                match = restoreMatch(state, pongGame, statistics);
+            }
+
+            while (!pongGame.isMatchOver())
+            {
+                pongGame.playSimulatedPoint();
+                long cut = requestedCut();
+                if (slot.cut < cut && !pongGame.isMatchOver())
+                {
+                    byte[] encoded = encodeMatch(match, pongGame, statistics.getTotals());
+                    synchronized (this)
+                    {
+                        slot.state = encoded;
+                        slot.cut = cut;
+                        notifyAll();
+                    }
+                }
+            }
+            PongStatistics.Counts counts = statistics.getTotals();
+            synchronized (this)
+            {
+                totals.add(counts);
+                finished.set(match);
+                slot.state = null;
+                slot.cut = requestedCut;
+                notifyAll();
+            }
+        }
+    }
+
+    private synchronized long requestedCut()
+    {
+        return requestedCut;
+    }
+
+    // raises a cut, waits for every thread to answer it, copies it, and encodes the copy
+    private byte[] checkpoint() throws IOException, InterruptedException
+    {
+        int prefix;
+        int[] after;
+        PongStatistics.Counts counts = new PongStatistics.Counts(paddleHeight);
+        List<byte[]> inProgress;
+        synchronized (this)
+        {
+            long cut = ++requestedCut;
+            while (true)
+            {
+                boolean answered = true;
+                for (Slot slot : slots) answered &= (slot.idle || slot.cut >= cut);
+                if (answered) break;
+                wait();
+            }
+            prefix = finished.nextClearBit(0);
+            after = finished.stream().filter(m -> m > prefix).toArray();
+            counts.add(totals);
+            inProgress = new ArrayList<>(resumed);   // (states are never modified once handed over)
+            for (Slot slot : slots) if (!slot.idle && slot.state != null) inProgress.add(slot.state);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        VarInts.writeVarint(out, numMatches);
+        VarInts.writeVarlong(out, seed);
+        VarInts.writeVarint(out, prefix);            // matches 0..prefix-1 are finished
+        VarInts.writeVarint(out, after.length);      // then the finished matches after the prefix,
+        int previous = prefix;                       // as gaps from the one before
+        for (int match : after)
+        {
+            VarInts.writeVarint(out, match - previous);
+            previous = match;
+        }
+        counts.write(out);
+        VarInts.writeVarint(out, inProgress.size());
+        for (byte[] state : inProgress)
+        {
+            VarInts.writeVarint(out, state.length);
+            out.write(state);
+        }
+        return out.toByteArray();
+    }
+
+    // loads the last checkpoint (before the threads start)
+    private void restore(byte[] checkpoint) throws IOException
+    {
+        InputStream in = new ByteArrayInputStream(checkpoint);
+        if (VarInts.readVarint(in) != numMatches || VarInts.readVarlong(in) != seed)
+        {
+            throw new IOException("the checkpoint is of a different campaign");
+        }
+        int prefix = VarInts.readVarint(in);
+        int after = VarInts.readVarint(in);
+        if (prefix > numMatches) throw new IOException("bad finished matches in checkpoint");
+        finished.set(0, prefix);
+        int match = prefix;
+        for (int i = 0; i < after; i++)
+        {
+            match += VarInts.readVarint(in);
+            if (match >= numMatches) throw new IOException("bad finished matches in checkpoint");
+            finished.set(match);
+        }
+        started.or(finished);
+        totals.read(in);
+        int inProgress = VarInts.readVarint(in);
+        for (int i = 0; i < inProgress; i++)
+        {
+            byte[] state = new byte[VarInts.readVarint(in)];
+            if (in.read(state) != state.length) throw new IOException("truncated checkpoint");
+            started.set(matchOf(state));
+            resumed.add(state);
+        }
+    }
+
+    // a match in progress, between two points: match, scores, serve draws, statistics
+    private byte[] encodeMatch(int match, PongGame pongGame, PongStatistics.Counts counts)
+    {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+            VarInts.writeVarint(out, match);
+            VarInts.writeVarint(out, pongGame.getAttribute(GameAttributes.PLAYER_ONE_SCORE));
+            VarInts.writeVarint(out, pongGame.getAttribute(GameAttributes.PLAYER_TWO_SCORE));
+            VarInts.writeVarlong(out, pongGame.getRandomDraws());
+            counts.write(out);
+            return out.toByteArray();
+        }
+        catch (IOException ioe) {
+            throw new IllegalStateException(ioe);   // (a byte array does not fail)
+        }
+    }
+
+    private int restoreMatch(byte[] state, PongGame pongGame, PongStatistics statistics)
+    {
+        try {
+            InputStream in = new ByteArrayInputStream(state);
+            int match = VarInts.readVarint(in);
+            PongGameSnapshot snapshot = pongGame.snapshot(false);
+            snapshot.playerOneScore = VarInts.readVarint(in);
+            snapshot.playerTwoScore = VarInts.readVarint(in);
+            pongGame.restore(snapshot);
+            pongGame.setRandomSeed(seed + match, VarInts.readVarlong(in));
+            PongStatistics.Counts counts = new PongStatistics.Counts(paddleHeight);
+            counts.read(in);
+            statistics.add(counts);
+            return match;
+        }
+        catch (IOException ioe) {
+            throw new IllegalStateException("bad match in checkpoint", ioe);
+        }
+    }
+
+    private static int matchOf(byte[] state) throws IOException
+    {
+        return VarInts.readVarint(new ByteArrayInputStream(state));
+    }
+
+    /**
+     * Slot: what one simulation thread answered to the latest cut (guarded by the campaign)
+     */
+    private static final class Slot {
+        long cut = 0;
+        byte[] state = null;         // match in progress at cut, or null
+        boolean idle = false;        // no matches left for this thread
+    }
+}
@@ -15,19 +15,46 @@ import java.awt.Font;
 import java.awt.event.KeyListener;
 import java.awt.event.KeyEvent;
 
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * PongCanvas<br>
  * -handles screen drawing and keyboard input<br>
  * -supported by GameAttributes, which conveniently enables access to Game Variables<br>
- *  such as screen size and other dimensions necessary for a Pong Game
+ *  such as screen size and other dimensions necessary for a Pong Game<br>
+ * <p>
+ * Keyboard input is event-driven: every press and release of A, Z, UP and
+ * DOWN is put on a lock-free queue, and each paddle tick (updatePaddles, or
+ * getPlayerOneInput / getPlayerTwoInput) drains the whole queue once, when
+ * its timer fires. A key that was down at any moment since the previous
+ * tick moves its paddle once, so a tap shorter than a tick is never lost.
+ * That is all the queue changes about play: events are applied by the tick
+ * that drains them, not placed at the moment within the tick they were made.<br>
+ * Each event is also stamped with the time it was made (from getWhen, to the
+ * millisecond), only to measure input latency: F3 shows a debug overlay with
+ * the time from a key press to the tick that applied it, and to the end of
+ * the first paint that shows it.
  */
 public class PongCanvas extends Canvas implements KeyListener {
 
     private PongGame pongGame;
+    // key state after the drained events (tick thread)
     private boolean  keyDownPressed = false;
     private boolean  keyUpPressed   = false;
     private boolean  keyAPressed    = false;
     private boolean  keyZPressed    = false;
+    // a key went down since its player's last tick, even if it is up again (tick thread)
+    private boolean  keyDownTapped  = false;
+    private boolean  keyUpTapped    = false;
+    private boolean  keyATapped     = false;
+    private boolean  keyZTapped     = false;
+    
+    private final ConcurrentLinkedQueue<KeyInput> inputQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong displayPending = new AtomicLong();  // time of the oldest press not yet painted, or 0
+    private final LogHistogram tickLatency    = new LogHistogram();    // microseconds, guarded by itself
+    private final LogHistogram displayLatency = new LogHistogram();    // microseconds, guarded by itself
+    private volatile boolean latencyOverlay = false;
     
     private final int gameWidth;
     private final int gameHeight;
@@ -36,6 +63,10 @@ public class PongCanvas extends Canvas implements KeyListener {
     private final int ballHeight;
     private final int paddleWidth;
     private final int paddleHeight;
+    
+    private final Font overlayFont = new Font(Font.MONOSPACED, Font.PLAIN, 9);
+    
+    private final PongFlightEvents.SlowPaint slowPaintEvent = new PongFlightEvents.SlowPaint();
 
     /**
      * PongCanvas Constructor: Sets up dimensions and listeners<br>
@@ -59,6 +90,21 @@ public class PongCanvas extends Canvas implements KeyListener {
     
     @Override // standard Canvas painting method
     public void paint(Graphics g) {
+        // flight recorder: reports paints slower than the pong.jfc threshold
+        slowPaintEvent.begin();
+        paintGame(g);
+        if (latencyOverlay) paintLatencyOverlay(g);
+        long pressed = displayPending.getAndSet(0);
+        if (pressed != 0) record(displayLatency, System.nanoTime() - pressed);
+        slowPaintEvent.end();
+        if (slowPaintEvent.shouldCommit())
+        {
+            slowPaintEvent.configuration = pongGame.describeConfiguration();
+            slowPaintEvent.commit();
+        }
+    }
+    
+    private void paintGame(Graphics g) {
         
         // get the game state variables like positions and scores
         int playerOneY     = pongGame.getAttribute(GameAttributes.PLAYER_ONE_Y);
@@ -121,79 +167,217 @@ public class PongCanvas extends Canvas implements KeyListener {
         }
     }
     
+    private void paintLatencyOverlay(Graphics g)
+    {   // p50/p99 of key->tick and key->display, in milliseconds
+        String tick;
+        String display;
+        synchronized (tickLatency)
+        {
+            tick = String.format("tick %.1f/%.1f", tickLatency.getValueAtPercentile(50.0)/1000.0,
+                                 tickLatency.getValueAtPercentile(99.0)/1000.0);
+        }
+        synchronized (displayLatency)
+        {
+            display = String.format("draw %.1f/%.1f", displayLatency.getValueAtPercentile(50.0)/1000.0,
+                                    displayLatency.getValueAtPercentile(99.0)/1000.0);
+        }
+        g.setColor(Color.YELLOW);
+        g.setFont(overlayFont);
+        g.drawString("key ms p50/p99", 16, gameHeight - 24);
+        g.drawString(tick, 16, gameHeight - 14);
+        g.drawString(display, 16, gameHeight - 4);
+    }
+    
+    /**
+     * setLatencyOverlay: shows (or hides) the input latency overlay, as F3 does
+     * 
+     * @param latencyOverlay true to show it
+     */
+    public void setLatencyOverlay(boolean latencyOverlay)
+    {
+        this.latencyOverlay = latencyOverlay;
+    }
+    
     /**
-     * updatePaddles: updates the positions of both paddles<br>
+     * getTickLatency: time from key events to the ticks that applied them
+     * 
+     * @return String summary of the histogram, in microseconds
+     */
+    public String getTickLatency()
+    {
+        synchronized (tickLatency)
+        {
+            return tickLatency.toString();
+        }
+    }
+    
+    /**
+     * getDisplayLatency: time from key presses to the end of the first paint after their tick
+     * 
+     * @return String summary of the histogram, in microseconds
+     */
+    public String getDisplayLatency()
+    {
+        synchronized (displayLatency)
+        {
+            return displayLatency.toString();
+        }
+    }
+    
+    /**
+     * updatePaddles: updates the positions of both paddles (one paddle tick)<br>
+     * - a human paddle that moved is repainted at once, rather than at the
+     *   next screen refresh
      * 
      * @param isPlayerOneHuman True if Player-1 is Human, False for CPU controlled player
      * @param isPlayerTwoHuman True if Player-2 is Human, False for CPU controlled player
      */
     public void updatePaddles(boolean isPlayerOneHuman, boolean isPlayerTwoHuman)
     {
+        drainInput(System.nanoTime());
+        boolean moved = false;
         if (isPlayerOneHuman)
         {
-            updatePlayerOneY();
+            moved |= updatePlayerOneY();
         }
-        else 
+        else
         {
             boolean isCPUSimple = false;
             if (GameAttributes.SIMPLE_PLAYER_1_CPU.get() == 1)
                 isCPUSimple = true;
-            pongGame.playerOneAlgorithmicCPUMovePaddle(isCPUSimple);
+            pongGame.moveCPUPaddle(1, isCPUSimple);
         }
         
         if (isPlayerTwoHuman)
         {
-            updatePlayerTwoY();
+            moved |= updatePlayerTwoY();
         }
         else
         {
             boolean isCPUSimple = false;
             if (GameAttributes.SIMPLE_PLAYER_2_CPU.get() == 1)
                 isCPUSimple = true;
-            pongGame.playerTwoAlgorithmicCPUMovePaddle(isCPUSimple);
+            pongGame.moveCPUPaddle(2, isCPUSimple);
         }
+        if (moved) repaint();
     }
     
-    private void updatePlayerTwoY()
+    /**
+     * getPlayerOneInput: the paddle input of the A, Z keys for this tick
+     * (drains the queued key events)
+     * 
+     * @return int -1 to move up, 1 to move down, 0 to stay
+     */
+    public int getPlayerOneInput()
+    {
+        drainInput(System.nanoTime());
+        return playerOneInput();
+    }
+    
+    /**
+     * getPlayerTwoInput: the paddle input of the UP, DOWN keys for this tick
+     * (drains the queued key events)
+     * 
+     * @return int -1 to move up, 1 to move down, 0 to stay
+     */
+    public int getPlayerTwoInput()
+    {
+        drainInput(System.nanoTime());
+        return playerTwoInput();
+    }
+    
+    private int playerOneInput()
+    {   // the A, Z keys since the last tick of player one (after drainInput)
+        boolean up   = keyAPressed || keyATapped;
+        boolean down = keyZPressed || keyZTapped;
+        keyATapped = false;
+        keyZTapped = false;
+        if (up && !down) return -1;
+        if (!up && down) return 1;
+        return 0;
+    }
+    
+    private int playerTwoInput()
+    {   // the UP, DOWN keys since the last tick of player two (after drainInput)
+        boolean up   = keyUpPressed || keyUpTapped;
+        boolean down = keyDownPressed || keyDownTapped;
+        keyUpTapped = false;
+        keyDownTapped = false;
+        if (up && !down) return -1;
+        if (!up && down) return 1;
+        return 0;
+    }
+    
+    private boolean updatePlayerTwoY()
     {
         // pixel distance to move paddles
         int dy = pongGame.getAttribute(GameAttributes.PADDLE_DY);
         
-        // move player two paddle up
-        if (keyUpPressed && !keyDownPressed) pongGame.movePlayerTwoPaddle(-1*dy);
-        
-        // move player two paddle down
-        if (!keyUpPressed && keyDownPressed) pongGame.movePlayerTwoPaddle(dy);
+        // move player two paddle up or down
+        int input = playerTwoInput();
+        if (input != 0) pongGame.movePlayerTwoPaddle(input*dy);
+        return input != 0;
     }
    
-    private void updatePlayerOneY()
+    private boolean updatePlayerOneY()
     {
         // pixel distance to move paddles
         int dy = pongGame.getAttribute(GameAttributes.PADDLE_DY);
         
-        // move player one paddle up
-        if (keyAPressed && !keyZPressed) pongGame.movePlayerOnePaddle(-1*dy);
-        
-        // move player one paddle down
-        if (!keyAPressed && keyZPressed) pongGame.movePlayerOnePaddle(dy);
+        // move player one paddle up or down
+        int input = playerOneInput();
+        if (input != 0) pongGame.movePlayerOnePaddle(input*dy);
+        return input != 0;
+    }
+    
+    // applies the queued key events to the key state (events queued while it runs wait for the next tick)
+    private void drainInput(long tickNanos)
+    {
+        KeyInput input;
+        while ((input = inputQueue.peek()) != null && input.nanos - tickNanos <= 0)
+        {
+            inputQueue.poll();
+            boolean down = input.pressed;
+            boolean wasDown = false;
+            if (input.key == KeyEvent.VK_DOWN) { wasDown = keyDownPressed; keyDownPressed = down; keyDownTapped |= down; }
+            if (input.key == KeyEvent.VK_UP)   { wasDown = keyUpPressed;   keyUpPressed   = down; keyUpTapped   |= down; }
+            if (input.key == KeyEvent.VK_A)    { wasDown = keyAPressed;    keyAPressed    = down; keyATapped    |= down; }
+            if (input.key == KeyEvent.VK_Z)    { wasDown = keyZPressed;    keyZPressed    = down; keyZTapped    |= down; }
+            if (down && !wasDown)
+            {   // latency of a new press only (auto-repeat sends more presses of a held key)
+                record(tickLatency, tickNanos - input.nanos);
+                displayPending.compareAndSet(0, input.nanos);
+            }
+        }
+    }
+    
+    private static void record(LogHistogram histogram, long nanos)
+    {
+        synchronized (histogram)
+        {
+            histogram.record(nanos/1000);
+        }
+    }
+    
+    // queues a key event, stamped with the time it was made (on the System.nanoTime() clock)
+    private void queueInput(KeyEvent event, boolean pressed)
+    {
+        int key = event.getKeyCode();
+        if (key != KeyEvent.VK_DOWN && key != KeyEvent.VK_UP && key != KeyEvent.VK_A && key != KeyEvent.VK_Z) return;
+        long now = System.nanoTime();
+        long age = Math.max(0, System.currentTimeMillis() - event.getWhen());   // (getWhen is in milliseconds of the wall clock)
+        inputQueue.add(new KeyInput(key, pressed, now - age*1000000L));
     }
     
     @Override // standard KeyListener method for KeyEvents
     public void keyPressed(KeyEvent event) {
-        int key = event.getKeyCode();
-        if (key == KeyEvent.VK_DOWN) keyDownPressed = true;
-        if (key == KeyEvent.VK_UP)   keyUpPressed   = true;
-        if (key == KeyEvent.VK_A)    keyAPressed    = true;
-        if (key == KeyEvent.VK_Z)    keyZPressed    = true;
+        if (event.getKeyCode() == KeyEvent.VK_F3) latencyOverlay = !latencyOverlay;
+        queueInput(event, true);
     }
 
     @Override // standard KeyListener method for KeyEvents
     public void keyReleased(KeyEvent event) {
-        int key = event.getKeyCode();
-        if (key == KeyEvent.VK_DOWN) keyDownPressed = false;
-        if (key == KeyEvent.VK_UP)   keyUpPressed   = false;
-        if (key == KeyEvent.VK_A)    keyAPressed    = false;
-        if (key == KeyEvent.VK_Z)    keyZPressed    = false;
+        queueInput(event, false);
     }
 
     @Override // standard KeyListener method for KeyEvents
@@ -201,4 +385,19 @@ public class PongCanvas extends Canvas implements KeyListener {
         // do nothing: this demands that the key be pressed
     }
     
+    /**
+     * KeyInput: a press or release of a game key, and when it was made
+     */
+    private static final class KeyInput {
+        final int key;
+        final boolean pressed;
+        final long nanos;
+        
+        KeyInput(int key, boolean pressed, long nanos)
+        {
+            this.key = key;
+            this.pressed = pressed;
+            this.nanos = nanos;
+        }
+    }
 }
@@ -0,0 +1,285 @@
+/*
+ * PongCheckpointFile - append-only, checksummed checkpoints of long campaigns
+ */
+package mlwithpong;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * PongCheckpointFile<br>
+ * - a file of checkpoint records, each appended after the last and never
+ *   overwritten: a crash while writing can only tear the newest record<br>
+ * - every record carries its length and a CRC32C of its payload; opening
+ *   a file for resuming scans it, keeps the last record that checks out
+ *   and truncates whatever follows it<br>
+ * - append() hands the payload to a writer thread and returns at once;
+ *   if the previous checkpoint is still being written, a newer one
+ *   replaces the one waiting (only the newest checkpoint matters), so
+ *   simulation threads never wait for the disk<br>
+ * - each record is forced to the disk before the next one is written<br>
+ * - once the records older than the newest one (forced) add up to more than
+ *   COMPACT_BYTES and more than the newest record, the file is rewritten
+ *   with the newest record only: a copy is forced and then renamed over the
+ *   file, so the file always holds a good newest checkpoint<br>
+ * <p>
+ * The payload is up to the campaign (PongSimulatedGame, PongESTrainer);
+ * they write varints, so a checkpoint is a few kilobytes plus any model.
+ * <p>
+ * Format: int MAGIC, byte VERSION, then records of
+ * int MAGIC, int payload length, int CRC32C of the payload, payload
+ */
+public class PongCheckpointFile implements Closeable {
+
+    public static final int  MAGIC   = 0x50434B50; // "PCKP"
+    public static final byte VERSION = 1;
+
+    private static final int HEADER_BYTES = 5;
+    private static final int RECORD_BYTES = 12;
+    private static final long COMPACT_BYTES = 1 << 20;
+
+    private final Path file;
+    private FileChannel channel;                 // replaced by the writer thread when it compacts
+    private final byte[] lastCheckpoint;
+    private final Thread writerThread;
+
+    // guarded by this
+    private byte[] pending = null;
+    private boolean writing = false;
+    private boolean closed = false;
+    private long written = 0;
+    private long replaced = 0;
+    private IOException failure = null;
+
+    /**
+     * PongCheckpointFile Constructor: opens (or creates) a checkpoint file
+     * and starts its writer thread
+     *
+     * @param file checkpoint file
+     * @param resume true to keep the checkpoints in the file, false to start it over
+     * @throws IOException if the file cannot be opened, or is not a checkpoint file
+     */
+    public PongCheckpointFile(Path file, boolean resume) throws IOException
+    {
+        this.file = file;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        byte[] last = null;
+        if (resume && channel.size() > 0)
+        {
+            last = scan();
+        }
+        else
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).put(VERSION);
+            header.flip();
+            channel.truncate(0);
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        channel.position(channel.size());
+        lastCheckpoint = last;
+        writerThread = new Thread(this::writeLoop, "pong-checkpoint");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * getLastCheckpoint: the newest good checkpoint in the file when it was
+     * opened (for resuming)
+     *
+     * @return byte[] payload of the checkpoint, or null if there is none
+     */
+    public byte[] getLastCheckpoint()
+    {
+        return lastCheckpoint;
+    }
+
+    /**
+     * append: queues a checkpoint to be written (the payload must not be
+     * modified afterwards)
+     *
+     * @param payload the checkpoint
+     * @throws IOException if an earlier checkpoint failed to be written
+     */
+    public synchronized void append(byte[] payload) throws IOException
+    {
+        if (failure != null) throw failure;
+        if (closed) throw new IOException("checkpoint file is closed");
+        if (pending != null) replaced++;
+        pending = payload;
+        notifyAll();
+    }
+
+    /**
+     * flush: waits until the queued checkpoint is on the disk
+     *
+     * @throws IOException if a checkpoint failed to be written
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void flush() throws IOException, InterruptedException
+    {
+        while ((pending != null || writing) && failure == null) wait();
+        if (failure != null) throw failure;
+    }
+
+    public synchronized long getWritten()
+    {
+        return written;
+    }
+
+    /**
+     * getReplaced: checkpoints replaced by a newer one before they were written
+     *
+     * @return long number of skipped checkpoints
+     */
+    public synchronized long getReplaced()
+    {
+        return replaced;
+    }
+
+    /**
+     * close: writes the queued checkpoint and closes the file
+     *
+     * @throws IOException if a checkpoint failed to be written
+     */
+    @Override
+    public void close() throws IOException
+    {
+        try {
+            flush();
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            synchronized (this)
+            {
+                closed = true;
+                notifyAll();
+            }
+            channel.close();
+        }
+    }
+
+    // the writer thread: writes the newest pending checkpoint, then waits for the next
+    private void writeLoop()
+    {
+        CRC32C crc = new CRC32C();
+        while (true)
+        {
+            byte[] payload;
+            synchronized (this)
+            {
+                while (pending == null && !closed)
+                {
+                    try {
+                        wait();
+                    }
+                    catch (InterruptedException ie) {
+                        return;
+                    }
+                }
+                if (pending == null) return;
+                payload = pending;
+                pending = null;
+                writing = true;
+            }
+            IOException error = null;
+            try {
+                crc.reset();
+                crc.update(payload, 0, payload.length);
+                ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES + payload.length);
+                record.putInt(MAGIC).putInt(payload.length).putInt((int)crc.getValue()).put(payload);
+                record.flip();
+                while (record.hasRemaining()) channel.write(record);
+                channel.force(false);
+                long older = channel.size() - HEADER_BYTES - record.capacity();
+                if (older > COMPACT_BYTES && older > record.capacity()) compact(record);
+            }
+            catch (IOException ioe) {
+                error = ioe;
+            }
+            synchronized (this)
+            {
+                writing = false;
+                if (error != null) failure = error;
+                else written++;
+                notifyAll();
+            }
+        }
+    }
+
+    // rewrites the file with only the newest record (already forced in the old file)
+    private void compact(ByteBuffer record) throws IOException
+    {
+        Path copy = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(copy, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).put(VERSION);
+            header.flip();
+            record.rewind();
+            while (header.hasRemaining()) out.write(header);
+            while (record.hasRemaining()) out.write(record);
+            out.force(true);
+        }
+        Files.move(copy, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        channel.close();
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        Path directory = file.toAbsolutePath().getParent();
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ))
+        {
+            dir.force(true);                          // the rename itself
+        }
+        catch (IOException ioe) {
+            // not every platform can force a directory; the rename still happened
+        }
+    }
+
+    // finds the last good record and cuts off anything torn after it
+    private byte[] scan() throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.get() != VERSION)
+        {
+            throw new IOException("not a checkpoint file");
+        }
+        long size = channel.size();
+        long position = HEADER_BYTES;
+        byte[] last = null;
+        CRC32C crc = new CRC32C();
+        ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_BYTES);
+        while (position + RECORD_BYTES <= size)
+        {
+            recordHeader.clear();
+            channel.read(recordHeader, position);
+            recordHeader.flip();
+            int magic = recordHeader.getInt();
+            int length = recordHeader.getInt();
+            int checksum = recordHeader.getInt();
+            if (magic != MAGIC || length < 0 || position + RECORD_BYTES + length > size) break;
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            while (payload.hasRemaining())
+            {
+                if (channel.read(payload, position + RECORD_BYTES + payload.position()) < 0) break;
+            }
+            crc.reset();
+            crc.update(payload.array(), 0, length);
+            if ((int)crc.getValue() != checksum) break;
+            last = payload.array();
+            position += RECORD_BYTES + length;
+        }
+        channel.truncate(position);
+        return last;
+    }
+}
@@ -0,0 +1,390 @@
+/*
+ * PongCoordinator - hands simulation jobs to worker processes over loopback
+ */
+package mlwithpong;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PongCoordinator<br>
+ * - a queue of jobs (sweep points, tournament pairings, rollout batches;
+ *   see PongWorker for the job kinds) served to PongWorker processes over
+ *   a loopback TCP port, so a simulation can use more than one JVM<br>
+ * - a worker leases one job at a time per connection; the lease lasts
+ *   leaseMillis and every heartbeat of the connection renews it<br>
+ * - a job goes back to the queue when its connection closes (the worker
+ *   died) or its lease expires (the worker hangs); the first result of a
+ *   job wins and later duplicates are ignored, so jobs must be
+ *   deterministic (seeded) for a re-leased job to give the same result<br>
+ * - a job leased MAX_ATTEMPTS times without a result is given up<br>
+ * <p>
+ * Every connection has its own thread, which reads the worker's messages
+ * and answers its lease requests; workers are few and long-lived, and a
+ * result is a handful of varints, so the coordinator is never the
+ * bottleneck.
+ * <p>
+ * Protocol (one TCP connection per worker thread):<br>
+ *   hello:     worker sends int MAGIC, byte VERSION;
+ *              coordinator answers int MAGIC, byte VERSION, varint heartbeat millis<br>
+ *   lease:     worker sends byte MSG_LEASE; coordinator answers with one of<br>
+ *              byte MSG_JOB, varlong jobId, varint kind, varint count, zigzag varlong per argument<br>
+ *              byte MSG_WAIT, varint millis before asking again (queue empty)<br>
+ *              byte MSG_DONE (coordinator closed: the worker disconnects)<br>
+ *   result:    worker sends byte MSG_RESULT, varlong jobId, varint count, zigzag varlong per value<br>
+ *   heartbeat: worker sends byte MSG_HEARTBEAT (no answer)
+ */
+public class PongCoordinator implements Closeable {
+
+    public static final int  DEFAULT_PORT  = 5858;
+    public static final int  MAGIC         = 0x504F4E47; // "PONG"
+    public static final byte VERSION       = 1;
+    public static final byte MSG_LEASE     = 1;
+    public static final byte MSG_JOB       = 2;
+    public static final byte MSG_WAIT      = 3;
+    public static final byte MSG_DONE      = 4;
+    public static final byte MSG_RESULT    = 5;
+    public static final byte MSG_HEARTBEAT = 6;
+    public static final int  MAX_ATTEMPTS  = 3;
+
+    private static final int WAIT_MILLIS = 50;          // worker back-off when the queue is empty
+
+    private final ServerSocket serverSocket;
+    private final long leaseNanos;
+    private final int heartbeatMillis;
+    private final Thread acceptThread;
+
+    // guarded by this
+    private final ArrayDeque<Job> queue = new ArrayDeque<>();
+    private final Map<Long, Job> leased = new HashMap<>();
+    private final Map<Long, long[]> results = new LinkedHashMap<>();
+    private final List<Long> failed = new ArrayList<>();
+    private long nextJobId = 1;
+    private int releases = 0;
+    private boolean closed = false;
+
+    /**
+     * PongCoordinator Constructor: listens on a loopback port and starts
+     * accepting workers
+     *
+     * @param port TCP port on 127.0.0.1, or 0 for any free port
+     * @param leaseMillis how long a job stays leased without a heartbeat
+     * @throws IOException if the port cannot be opened
+     */
+    public PongCoordinator(int port, long leaseMillis) throws IOException
+    {
+        serverSocket = new ServerSocket(port, 64, InetAddress.getLoopbackAddress());
+        leaseNanos = TimeUnit.MILLISECONDS.toNanos(leaseMillis);
+        heartbeatMillis = (int)Math.max(1, leaseMillis/4);
+        acceptThread = new Thread(this::accept, "pong-coordinator");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    public int getPort()
+    {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * submit: queues a job
+     *
+     * @param kind job kind (PongWorker.JOB_MATCHES, ...)
+     * @param args arguments of the job
+     * @return long id of the job
+     */
+    public synchronized long submit(int kind, long... args)
+    {
+        if (closed) throw new IllegalStateException("coordinator is closed");
+        Job job = new Job(nextJobId++, kind, args.clone());
+        queue.add(job);
+        return job.id;
+    }
+
+    /**
+     * awaitResults: waits until every job submitted so far has a result
+     * or was given up, re-leasing expired leases while it waits
+     *
+     * @return Map results by job id, in order of completion
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized Map<Long, long[]> awaitResults() throws InterruptedException
+    {
+        while (!closed && results.size() + failed.size() < nextJobId - 1)
+        {
+            expireLeases();
+            wait(heartbeatMillis);
+        }
+        return new LinkedHashMap<>(results);
+    }
+
+    public synchronized long[] getResult(long jobId)
+    {
+        return results.get(jobId);
+    }
+
+    /**
+     * getFailedJobs: jobs given up after MAX_ATTEMPTS leases
+     *
+     * @return List ids of the failed jobs
+     */
+    public synchronized List<Long> getFailedJobs()
+    {
+        return new ArrayList<>(failed);
+    }
+
+    /**
+     * getReleases: how many times a leased job went back to the queue
+     *
+     * @return int number of re-leased jobs
+     */
+    public synchronized int getReleases()
+    {
+        return releases;
+    }
+
+    /**
+     * launchWorkers: starts PongWorker processes on this machine, with the
+     * classpath and java of this JVM
+     *
+     * @param processes worker processes to start
+     * @param threadsPerWorker job threads of every worker
+     * @return List the processes (their output goes to this process's)
+     * @throws IOException if a process cannot be started
+     */
+    public List<Process> launchWorkers(int processes, int threadsPerWorker) throws IOException
+    {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<Process> workers = new ArrayList<>();
+        for (int p = 0; p < processes; p++)
+        {
+            workers.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                                           PongWorker.class.getName(), Integer.toString(getPort()),
+                                           Integer.toString(threadsPerWorker))
+                            .inheritIO().start());
+        }
+        return workers;
+    }
+
+    /**
+     * close: stops accepting workers; connected workers are told MSG_DONE
+     * at their next lease request and jobs still queued are dropped
+     */
+    @Override
+    public void close()
+    {
+        synchronized (this)
+        {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            serverSocket.close();
+        }
+        catch (IOException ioe) {
+            // already closed
+        }
+    }
+
+    private void accept()
+    {
+        while (!serverSocket.isClosed())
+        {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread thread = new Thread(() -> serve(socket), "pong-coordinator-" + socket.getPort());
+                thread.setDaemon(true);
+                thread.start();
+            }
+            catch (IOException ioe) {
+                // server socket closed
+            }
+        }
+    }
+
+    // the thread of one worker connection
+    private void serve(Socket socket)
+    {
+        Connection connection = new Connection();
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream())))
+        {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) return;
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            VarInts.writeVarint(out, heartbeatMillis);
+            out.flush();
+
+            while (true)
+            {
+                byte type = in.readByte();
+                if (type == MSG_HEARTBEAT)
+                {
+                    renew(connection);
+                }
+                else if (type == MSG_RESULT)
+                {
+                    long jobId = VarInts.readVarlong(in);
+                    long[] values = new long[VarInts.readVarint(in)];
+                    for (int i = 0; i < values.length; i++) values[i] = VarInts.unZigZag(VarInts.readVarlong(in));
+                    complete(jobId, values);
+                }
+                else if (type == MSG_LEASE)
+                {
+                    Job job = lease(connection);
+                    if (job != null)
+                    {
+                        out.writeByte(MSG_JOB);
+                        VarInts.writeVarlong(out, job.id);
+                        VarInts.writeVarint(out, job.kind);
+                        VarInts.writeVarint(out, job.args.length);
+                        for (long a : job.args) VarInts.writeVarlong(out, VarInts.zigZag(a));
+                    }
+                    else if (isClosed())
+                    {
+                        out.writeByte(MSG_DONE);
+                        out.flush();
+                        return;
+                    }
+                    else
+                    {
+                        out.writeByte(MSG_WAIT);
+                        VarInts.writeVarint(out, WAIT_MILLIS);
+                    }
+                    out.flush();
+                }
+                else
+                {
+                    return;                      // not a worker: drop the connection
+                }
+            }
+        }
+        catch (IOException ioe) {
+            // the worker disconnected (or died): its jobs are re-leased below
+        }
+        finally {
+            release(connection);
+        }
+    }
+
+    private synchronized boolean isClosed()
+    {
+        return closed;
+    }
+
+    private synchronized Job lease(Connection connection)
+    {
+        expireLeases();
+        if (closed) return null;
+        Job job = queue.poll();
+        if (job == null) return null;
+        job.attempts++;
+        job.owner = connection;
+        job.deadline = System.nanoTime() + leaseNanos;
+        leased.put(job.id, job);
+        return job;
+    }
+
+    private synchronized void renew(Connection connection)
+    {
+        long deadline = System.nanoTime() + leaseNanos;
+        for (Job job : leased.values())
+        {
+            if (job.owner == connection) job.deadline = deadline;
+        }
+    }
+
+    private synchronized void complete(long jobId, long[] values)
+    {
+        Job job = leased.remove(jobId);
+        if (job == null)
+        {
+            // a late result of a re-leased job: the first result wins
+            if (results.containsKey(jobId) || failed.contains(jobId)) return;
+            queue.removeIf(j -> j.id == jobId);
+        }
+        results.put(jobId, values);
+        notifyAll();
+    }
+
+    // puts the jobs of a closed connection back in the queue
+    private synchronized void release(Connection connection)
+    {
+        for (Iterator<Job> jobs = leased.values().iterator(); jobs.hasNext(); )
+        {
+            Job job = jobs.next();
+            if (job.owner != connection) continue;
+            jobs.remove();
+            requeue(job);
+        }
+        notifyAll();
+    }
+
+    // puts jobs whose lease expired back in the queue (caller holds the lock)
+    private void expireLeases()
+    {
+        long now = System.nanoTime();
+        for (Iterator<Job> jobs = leased.values().iterator(); jobs.hasNext(); )
+        {
+            Job job = jobs.next();
+            if (now - job.deadline < 0) continue;
+            jobs.remove();
+            requeue(job);
+        }
+    }
+
+    private void requeue(Job job)
+    {
+        job.owner = null;
+        if (job.attempts >= MAX_ATTEMPTS)
+        {
+            failed.add(job.id);
+            return;
+        }
+        releases++;
+        queue.addFirst(job);
+    }
+
+    /**
+     * Job: one unit of work (guarded by the coordinator)
+     */
+    private static final class Job {
+        final long id;
+        final int kind;
+        final long[] args;
+        int attempts = 0;
+        Connection owner;
+        long deadline;
+
+        Job(long id, int kind, long[] args)
+        {
+            this.id = id;
+            this.kind = kind;
+            this.args = args;
+        }
+    }
+
+    /**
+     * Connection: identity of one worker connection, owner of its leases
+     */
+    private static final class Connection {
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * PongDPPlayer - CPU player that plays a solved dynamic programming policy
+ */
+package mlwithpong;
+
+/**
+ * PongDPPlayer<br>
+ * - plays a PongDPSolver.Policy: every decision is one table lookup<br>
+ * - while the ball comes towards the paddle, the move is read from the
+ *   policy; after a hit, the paddle heads for the policy's target y for
+ *   that hit, and for the middle after a serve
+ */
+public class PongDPPlayer implements PongPlayer {
+
+    private final PongDPSolver.Policy[] policies = new PongDPSolver.Policy[3];   // by player
+    private int awayTarget;
+
+    /**
+     * PongDPPlayer Constructor
+     *
+     * @param policy a policy solved for the side this player will play
+     */
+    public PongDPPlayer(PongDPSolver.Policy policy)
+    {
+        policies[policy.getPlayer()] = policy;
+    }
+
+    /**
+     * PongDPPlayer Constructor: a player for either side
+     *
+     * @param playerOnePolicy policy solved for player 1
+     * @param playerTwoPolicy policy solved for player 2
+     */
+    public PongDPPlayer(PongDPSolver.Policy playerOnePolicy, PongDPSolver.Policy playerTwoPolicy)
+    {
+        policies[1] = playerOnePolicy;
+        policies[2] = playerTwoPolicy;
+    }
+
+    @Override
+    public int choosePaddleMove(PongGame pongGame, int player)
+    {
+        PongDPSolver.Policy policy = policies[player];
+        if (policy == null || policy.getPlayer() != player)
+        {
+            throw new IllegalArgumentException("no policy solved for player " + player);
+        }
+        int x  = pongGame.getAttribute(GameAttributes.BALL_X);
+        int y  = pongGame.getAttribute(GameAttributes.BALL_Y);
+        int dx = pongGame.getAttribute(GameAttributes.BALL_DX);
+        int dy = pongGame.getAttribute(GameAttributes.BALL_DY);
+        int paddleY = pongGame.getAttribute((player == 1) ? GameAttributes.PLAYER_ONE_Y : GameAttributes.PLAYER_TWO_Y);
+
+        boolean approaching = (player == 1) ? dx < 0 : dx > 0;
+        if (approaching) return policy.getApproachMove(x, y, dy, paddleY);
+
+        int width = pongGame.getAttribute(GameAttributes.GAME_WIDTH);
+        if (x == ((player == 1) ? 1 : width - 1))
+        {
+            awayTarget = policy.getAwayTarget(y, dy);     // the tick of the hit
+        }
+        else if (pongGame.getAttribute(GameAttributes.NUM_VOLLEYS) == 0)
+        {
+            awayTarget = pongGame.getAttribute(GameAttributes.GAME_HEIGHT)/2;   // served away
+        }
+        return Integer.compare(awayTarget, paddleY);
+    }
+}
@@ -0,0 +1,527 @@
+/*
+ * PongDPSolver - value iteration for the optimal paddle policy
+ */
+package mlwithpong;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.stream.IntStream;
+
+/**
+ * PongDPSolver: Dynamic Programming (value iteration) for one paddle<br>
+ * - solves the paddle policy that maximizes the (discounted) chance of
+ *   winning the point against a fixed opponent: the forecasting CPU<br>
+ * - every transition is the real engine: a scratch PongGame is restored to
+ *   the state, the paddle is moved, and updateBall() is called<br>
+ * <p>
+ * State space:<br>
+ * - while the ball comes towards the solved paddle, the state is
+ *   (ball x, ball y, ball dy, own paddle y); ball dx only changes sign, so
+ *   its direction is implied. This is the part of the game where the
+ *   paddle's moves matter, and it has width*height*10*87 states in the small
+ *   125x100 arena (11M)<br>
+ * - once the ball is hit, it flies to the opponent; that flight depends only
+ *   on where it was hit (ball y and dy after the hit). The opponent is
+ *   assumed level with the ball at the moment of the hit (the forecasting
+ *   CPU tracks the intercept on our side while the ball comes to us), and
+ *   plays forecasting from there. The engine plays each of these
+ *   height*10 flights once: either the opponent misses (the point is won)
+ *   or it returns the ball, which starts a new approach T ticks later,
+ *   during which our paddle can move to any y within reach<br>
+ * - the approach states are swept in the order of the ball's travel, so one
+ *   sweep solves a whole approach exactly; sweeps repeat until the values
+ *   of whole rallies (hit, return, hit...) converge<br>
+ * - sweeps run in parallel over ball y; values are a flat float array, or
+ *   off-heap when the arena is too large for one<br>
+ * <p>
+ * The result is a Policy: 2 bits per approach state plus a target paddle y
+ * per hit, which PongDPPlayer queries in O(1).
+ */
+public class PongDPSolver {
+
+    public static final double DISCOUNT  = 0.995;   // per ball tick: prefers winning sooner
+    public static final int    MAX_SWEEPS = 200;
+    public static final double TOLERANCE = 1e-5;
+
+    private static final long OFF_HEAP_STATES = 64L*1024*1024;  // larger tables go off-heap
+    private static final int  MAX_FLIGHT_TICKS = 10000;
+
+    private final PongGame template;
+    private final int player;                  // 1 left, 2 right
+    private final int paddleMovesPerBallTick;
+    private final int width;
+    private final int height;
+    private final int dyPaddle;
+    private final int minDY;
+    private final int maxDY;
+    private final int numDY;                   // dy in [-maxDY,-minDY] and [minDY,maxDY]
+    private final int minPaddleY;
+    private final int maxPaddleY;
+    private final int numPaddleY;
+    private final int speedX;                  // |dx| (the serve speed, never changes)
+    private final long numStates;
+
+    private final ValueTable values;
+    private final Flight[] flights;            // [y*numDY + dyIndex] after a hit
+    private final ThreadLocal<PongGame> scratch;
+
+    /**
+     * PongDPSolver Constructor: sets up the state space of a game configuration
+     *
+     * @param pongGame a game with the configuration to solve (it is not modified)
+     * @param player 1 to solve the left paddle, 2 to solve the right paddle
+     * @param paddleMovesPerBallTick paddle moves per ball tick (1 in startSimulatedMatch)
+     */
+    public PongDPSolver(PongGame pongGame, int player, int paddleMovesPerBallTick)
+    {
+        this.template = pongGame.fork();
+        this.player = player;
+        this.paddleMovesPerBallTick = paddleMovesPerBallTick;
+        width      = pongGame.getAttribute(GameAttributes.GAME_WIDTH);
+        height     = pongGame.getAttribute(GameAttributes.GAME_HEIGHT);
+        dyPaddle   = pongGame.getAttribute(GameAttributes.PADDLE_DY);
+        minDY      = GameAttributes.MIN_DY.get();
+        maxDY      = GameAttributes.MAX_DY.get();
+        numDY      = 2*(maxDY - minDY + 1);
+        int paddleHeight = pongGame.getAttribute(GameAttributes.PADDLE_HEIGHT);
+        minPaddleY = paddleHeight/2;
+        maxPaddleY = height - paddleHeight/2;
+        numPaddleY = maxPaddleY - minPaddleY + 1;
+        speedX     = GameAttributes.MIN_DX.get() + (GameAttributes.MAX_DX.get() - GameAttributes.MIN_DX.get())/2;
+        numStates  = (long)(width + 1)*height*numDY*numPaddleY;
+
+        values  = new ValueTable(numStates);
+        flights = new Flight[height*numDY];
+        scratch = ThreadLocal.withInitial(template::fork);
+    }
+
+    public long getNumStates()
+    {
+        return numStates;
+    }
+
+    /**
+     * solve: runs value iteration to convergence
+     *
+     * @return Policy the optimal policy for the solved paddle
+     */
+    public Policy solve()
+    {
+        IntStream.range(0, height).parallel().forEach(this::computeFlights);
+
+        for (int sweep = 1; sweep <= MAX_SWEEPS; sweep++)
+        {
+            double change = sweep();
+            System.out.println("value iteration sweep " + sweep + ": max change " + change);
+            if (change < TOLERANCE) break;
+        }
+        return extractPolicy();
+    }
+
+    /**
+     * getValue: value of an approach state after solve()
+     *
+     * @return float discounted chance of winning the point
+     */
+    public float getValue(int x, int y, int dy, int paddleY)
+    {
+        return values.get(index(x, y, dyIndex(dy), paddleY - minPaddleY));
+    }
+
+    // one sweep: x in the order the ball travels towards the paddle, so every
+    // approach transition reads a value already updated in this sweep
+    private double sweep()
+    {
+        double maxChange = 0.0;
+        for (int step = 0; step <= width; step++)
+        {
+            int x = (player == 1) ? step : width - step;
+            double change = IntStream.range(0, height).parallel()
+                                     .mapToDouble(y -> updateSlice(x, y))
+                                     .max().orElse(0.0);
+            maxChange = Math.max(maxChange, change);
+        }
+        return maxChange;
+    }
+
+    private double updateSlice(int x, int y)
+    {
+        PongGame game = scratch.get();
+        PongGameSnapshot state = new PongGameSnapshot();
+        double maxChange = 0.0;
+        for (int d = 0; d < numDY; d++)
+        {
+            for (int p = 0; p < numPaddleY; p++)
+            {
+                double best = 0.0;
+                for (int action = -1; action <= 1; action++)
+                {
+                    best = Math.max(best, actionValue(game, state, x, y, d, p, action));
+                }
+                long i = index(x, y, d, p);
+                maxChange = Math.max(maxChange, Math.abs(best - values.get(i)));
+                values.set(i, (float)best);
+            }
+        }
+        return maxChange;
+    }
+
+    private double actionValue(PongGame game, PongGameSnapshot state, int x, int y, int d, int p, int action)
+    {
+        setApproachState(state, x, y, dyValue(d), minPaddleY + p);
+        game.restore(state);
+        for (int m = 0; m < paddleMovesPerBallTick && action != 0; m++)
+        {
+            if (player == 1) game.movePlayerOnePaddle(action*dyPaddle);
+            else game.movePlayerTwoPaddle(action*dyPaddle);
+        }
+        game.updateBall();
+        int nx = game.getAttribute(GameAttributes.BALL_X);
+        int ny = game.getAttribute(GameAttributes.BALL_Y);
+        int ndx = game.getAttribute(GameAttributes.BALL_DX);
+        int ndy = game.getAttribute(GameAttributes.BALL_DY);
+        int ownY = game.getAttribute((player == 1) ? GameAttributes.PLAYER_ONE_Y : GameAttributes.PLAYER_TWO_Y);
+
+        if (nx < 0 || nx > width) return 0.0;                       // missed: point lost
+        if (approaching(ndx))                                          // still coming
+        {
+            return DISCOUNT*values.get(index(nx, ny, dyIndex(ndy), ownY - minPaddleY));
+        }
+        return DISCOUNT*flightValue(flights[ny*numDY + dyIndex(ndy)], ownY);  // hit
+    }
+
+    private double flightValue(Flight flight, int ownY)
+    {
+        double discount = Math.pow(DISCOUNT, flight.ticks);
+        if (flight.won) return discount;
+        int reach = flight.ticks*paddleMovesPerBallTick*dyPaddle;
+        int from = Math.max(0, ownY - minPaddleY - reach);
+        int to   = Math.min(numPaddleY - 1, ownY - minPaddleY + reach);
+        long base = index(flight.returnX, flight.returnY, flight.returnDYIndex, 0);
+        float best = 0.0f;
+        for (int p = from; p <= to; p++)
+        {
+            best = Math.max(best, values.get(base + p));
+        }
+        return discount*best;
+    }
+
+    // plays the flight of the ball from our hit, through the opponent, back to us
+    private void computeFlights(int y)
+    {
+        PongGame game = scratch.get();
+        PongGameSnapshot state = new PongGameSnapshot();
+        int opponentY = Math.max(minPaddleY, Math.min(maxPaddleY, y));
+        for (int d = 0; d < numDY; d++)
+        {
+            setApproachState(state, (player == 1) ? 1 : width - 1, y, dyValue(d), height/2);
+            state.dx = -state.dx;                 // moving away from us
+            if (player == 1) state.playerTwoY = opponentY;
+            else state.playerOneY = opponentY;
+            game.restore(state);
+
+            Flight flight = new Flight();
+            for (flight.ticks = 1; flight.ticks <= MAX_FLIGHT_TICKS; flight.ticks++)
+            {
+                for (int m = 0; m < paddleMovesPerBallTick; m++)
+                {
+                    if (player == 1) game.playerTwoAlgorithmicCPUMovePaddle(false);
+                    else game.playerOneAlgorithmicCPUMovePaddle(false);
+                }
+                game.updateBall();
+                int nx = game.getAttribute(GameAttributes.BALL_X);
+                if (nx < 0 || nx > width)
+                {
+                    flight.won = true;
+                    break;
+                }
+                if (approaching(game.getAttribute(GameAttributes.BALL_DX)))
+                {
+                    flight.returnX = nx;
+                    flight.returnY = game.getAttribute(GameAttributes.BALL_Y);
+                    flight.returnDYIndex = dyIndex(game.getAttribute(GameAttributes.BALL_DY));
+                    break;
+                }
+            }
+            flights[y*numDY + d] = flight;
+        }
+    }
+
+    private Policy extractPolicy()
+    {
+        Policy policy = new Policy(player, width, height, minDY, maxDY, minPaddleY, maxPaddleY, numStates);
+        int statesPerX = height*numDY*numPaddleY;
+        byte[] best = new byte[statesPerX];      // one x at a time, packed below
+        for (int x = 0; x <= width; x++)
+        {
+            int bx = x;
+            IntStream.range(0, height).parallel().forEach(y -> {
+                PongGame game = scratch.get();
+                PongGameSnapshot state = new PongGameSnapshot();
+                for (int d = 0; d < numDY; d++)
+                {
+                    for (int p = 0; p < numPaddleY; p++)
+                    {
+                        int bestAction = 0;
+                        double bestValue = actionValue(game, state, bx, y, d, p, 0);
+                        for (int action = -1; action <= 1; action += 2)
+                        {
+                            double value = actionValue(game, state, bx, y, d, p, action);
+                            if (value > bestValue + 1e-7)
+                            {
+                                bestValue = value;
+                                bestAction = action;
+                            }
+                        }
+                        best[(int)(index(0, y, d, p))] = (byte)bestAction;
+                    }
+                }
+            });
+            long base = index(x, 0, 0, 0);
+            for (int i = 0; i < statesPerX; i++) policy.setAction(base + i, best[i]);
+        }
+
+        // target paddle y while each flight is away: the best reachable return position
+        for (int f = 0; f < flights.length; f++)
+        {
+            Flight flight = flights[f];
+            int target = height/2;
+            if (!flight.won)
+            {
+                long base = index(flight.returnX, flight.returnY, flight.returnDYIndex, 0);
+                float bestValue = -1.0f;
+                for (int p = 0; p < numPaddleY; p++)
+                {
+                    float value = values.get(base + p);
+                    // ties: the position nearest the middle
+                    if (value > bestValue || (value == bestValue && Math.abs(minPaddleY + p - height/2) < Math.abs(target - height/2)))
+                    {
+                        bestValue = value;
+                        target = minPaddleY + p;
+                    }
+                }
+            }
+            policy.awayTargets[f] = (short)target;
+        }
+        return policy;
+    }
+
+    private void setApproachState(PongGameSnapshot state, int x, int y, int dy, int ownY)
+    {
+        state.x = x;
+        state.y = y;
+        state.dx = (player == 1) ? -speedX : speedX;
+        state.dy = dy;
+        state.playerOneY = (player == 1) ? ownY : height/2;
+        state.playerTwoY = (player == 2) ? ownY : height/2;
+        state.numVolleys = 0;
+        state.numTicks = 0;
+        state.gameOver = false;
+        state.hasFrames = false;
+    }
+
+    private boolean approaching(int dx)
+    {
+        return (player == 1) ? dx < 0 : dx > 0;
+    }
+
+    private long index(int x, int y, int dyIndex, int paddleIndex)
+    {
+        return (((long)x*height + y)*numDY + dyIndex)*numPaddleY + paddleIndex;
+    }
+
+    private int dyIndex(int dy)
+    {
+        int magnitude = Math.max(minDY, Math.min(maxDY, Math.abs(dy)));
+        return (dy < 0) ? magnitude - minDY : (maxDY - minDY + 1) + magnitude - minDY;
+    }
+
+    private int dyValue(int dyIndex)
+    {
+        int half = maxDY - minDY + 1;
+        return (dyIndex < half) ? -(minDY + dyIndex) : minDY + dyIndex - half;
+    }
+
+    /**
+     * Flight: what happens after a hit, until the ball comes back
+     */
+    private static class Flight {
+        boolean won = false;    // the opponent missed
+        int ticks;              // ball ticks until the point is won or the ball is returned
+        int returnX;            // state of the returned ball
+        int returnY;
+        int returnDYIndex;
+    }
+
+    /**
+     * ValueTable: flat float values, on-heap when they fit in one array
+     */
+    private static class ValueTable {
+        private final float[] heap;
+        private final FloatBuffer[] offHeap;
+        private static final int CHUNK = 1 << 28;   // floats per off-heap buffer (1 GB)
+
+        ValueTable(long size)
+        {
+            if (size < OFF_HEAP_STATES)
+            {
+                heap = new float[(int)size];
+                offHeap = null;
+            }
+            else
+            {
+                heap = null;
+                offHeap = new FloatBuffer[(int)((size + CHUNK - 1)/CHUNK)];
+                for (int c = 0; c < offHeap.length; c++)
+                {
+                    long floats = Math.min(CHUNK, size - (long)c*CHUNK);
+                    offHeap[c] = ByteBuffer.allocateDirect((int)floats*4).asFloatBuffer();
+                }
+            }
+        }
+
+        float get(long i)
+        {
+            return (heap != null) ? heap[(int)i] : offHeap[(int)(i/CHUNK)].get((int)(i%CHUNK));
+        }
+
+        void set(long i, float value)
+        {
+            if (heap != null) heap[(int)i] = value;
+            else offHeap[(int)(i/CHUNK)].put((int)(i%CHUNK), value);
+        }
+    }
+
+    /**
+     * Policy: the solved paddle policy<br>
+     * - 2 bits per approach state: 0 stay, 1 up, 2 down<br>
+     * - a target paddle y per hit (ball y and dy after the hit), used while
+     *   the ball is away
+     */
+    public static class Policy {
+        final int player;
+        final int width;
+        final int height;
+        final int minDY;
+        final int maxDY;
+        final int numDY;
+        final int minPaddleY;
+        final int maxPaddleY;
+        final int numPaddleY;
+        final byte[] actions;          // 4 states per byte
+        final short[] awayTargets;     // [y*numDY + dyIndex]
+
+        Policy(int player, int width, int height, int minDY, int maxDY, int minPaddleY, int maxPaddleY, long numStates)
+        {
+            this.player = player;
+            this.width = width;
+            this.height = height;
+            this.minDY = minDY;
+            this.maxDY = maxDY;
+            this.numDY = 2*(maxDY - minDY + 1);
+            this.minPaddleY = minPaddleY;
+            this.maxPaddleY = maxPaddleY;
+            this.numPaddleY = maxPaddleY - minPaddleY + 1;
+            this.actions = new byte[(int)((numStates + 3)/4)];
+            this.awayTargets = new short[height*numDY];
+        }
+
+        public int getPlayer()
+        {
+            return player;
+        }
+
+        /**
+         * getApproachMove: the optimal move while the ball comes towards the paddle
+         *
+         * @return int -1 up, 0 stay, 1 down
+         */
+        public int getApproachMove(int x, int y, int dy, int paddleY)
+        {
+            x = Math.max(0, Math.min(width, x));
+            y = Math.max(0, Math.min(height - 1, y));
+            paddleY = Math.max(minPaddleY, Math.min(maxPaddleY, paddleY));
+            long i = ((((long)x*height + y)*numDY + dyIndex(dy))*numPaddleY + paddleY - minPaddleY);
+            int code = (actions[(int)(i >>> 2)] >>> ((i & 3)*2)) & 3;
+            return (code == 1) ? -1 : (code == 2) ? 1 : 0;
+        }
+
+        /**
+         * getAwayTarget: where the paddle should wait after hitting the ball
+         *
+         * @param y ball y right after the hit
+         * @param dy ball dy right after the hit
+         * @return int target paddle y
+         */
+        public int getAwayTarget(int y, int dy)
+        {
+            y = Math.max(0, Math.min(height - 1, y));
+            return awayTargets[y*numDY + dyIndex(dy)];
+        }
+
+        /**
+         * save: writes the policy in a compact binary form
+         *
+         * @param stream stream to write to (not closed)
+         * @throws IOException if writing fails
+         */
+        public void save(OutputStream stream) throws IOException
+        {
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(player);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(minDY);
+            out.writeInt(maxDY);
+            out.writeInt(minPaddleY);
+            out.writeInt(maxPaddleY);
+            out.writeInt(actions.length);
+            out.write(actions);
+            for (short target : awayTargets) out.writeShort(target);
+            out.flush();
+        }
+
+        /**
+         * load: reads a policy written by save()
+         *
+         * @param stream stream to read from (not closed)
+         * @return Policy the policy
+         * @throws IOException if reading fails
+         */
+        public static Policy load(InputStream stream) throws IOException
+        {
+            DataInputStream in = new DataInputStream(stream);
+            int player = in.readInt();
+            int width = in.readInt();
+            int height = in.readInt();
+            int minDY = in.readInt();
+            int maxDY = in.readInt();
+            int minPaddleY = in.readInt();
+            int maxPaddleY = in.readInt();
+            int numBytes = in.readInt();
+            Policy policy = new Policy(player, width, height, minDY, maxDY, minPaddleY, maxPaddleY, 4L*numBytes);
+            in.readFully(policy.actions);
+            for (int t = 0; t < policy.awayTargets.length; t++) policy.awayTargets[t] = in.readShort();
+            return policy;
+        }
+
+        void setAction(long i, int action)
+        {
+            int code = (action < 0) ? 1 : (action > 0) ? 2 : 0;
+            int b = (int)(i >>> 2);
+            int shift = (int)(i & 3)*2;
+            actions[b] = (byte)((actions[b] & ~(3 << shift)) | (code << shift));
+        }
+
+        private int dyIndex(int dy)
+        {
+            int magnitude = Math.max(minDY, Math.min(maxDY, Math.abs(dy)));
+            return (dy < 0) ? magnitude - minDY : (maxDY - minDY + 1) + magnitude - minDY;
+        }
+    }
+}
@@ -0,0 +1,406 @@
+/*
+ * PongDatasetWriter - training data sets in NumPy .npy chunks
+ */
+package mlwithpong;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * PongDatasetWriter: writes (observation, action, reward, done, episode)
+ * records for offline training in Python<br>
+ * - columnar: every column of a chunk is its own .npy file, so in Python
+ *   np.load(file, mmap_mode='r') maps it without parsing:<br>
+ *   observations (rows, size) float32, actions (rows,) int8 (-1 up, 0 stay,
+ *   1 down), rewards (rows,) float32, dones (rows,) bool, episodes (rows,)
+ *   int64<br>
+ * - chunked: a chunk holds at most chunkRows records; manifest.json lists
+ *   every chunk with its files and number of rows<br>
+ * - sharded: every simulator thread writes its own Shard (its own files
+ *   and buffers), so parallel writers never wait for each other; only
+ *   finishing a chunk takes a lock, to add it to the manifest<br>
+ * - sequential: records are collected in large direct buffers and written
+ *   with one channel write per buffer; the .npy header is written with
+ *   room for the final shape and rewritten when the chunk is closed
+ */
+public class PongDatasetWriter {
+
+    public static final String MANIFEST = "manifest.json";
+
+    private static final int HEADER_BYTES = 128;                  // .npy preamble + header dict, 64-byte aligned
+    private static final int OBSERVATION_BUFFER_BYTES = 8 << 20;
+    private static final int COLUMN_BUFFER_BYTES = 1 << 20;
+    private static final String[] COLUMNS = {"observations", "actions", "rewards", "dones", "episodes"};
+    private static final String[] DESCRS  = {"<f4", "|i1", "<f4", "|b1", "<i8"};
+
+    private final Path directory;
+    private final int observationSize;
+    private final long chunkRows;
+    private final List<String> chunks = new ArrayList<>();   // manifest entries
+    private final AtomicLong episodes = new AtomicLong();
+    private int numShards = 0;
+    private long rows = 0;
+    private int decisionInterval = 0;      // of the recorded paddle, see PongGame.setDecisionInterval
+    private int paddleMovesPerTick = 1;
+
+    /**
+     * PongDatasetWriter Constructor
+     *
+     * @param directory directory to write the chunks and manifest to (created if needed)
+     * @param observationSize floats per observation
+     * @param chunkRows most records in one chunk
+     * @throws IOException if the directory cannot be created
+     */
+    public PongDatasetWriter(Path directory, int observationSize, long chunkRows) throws IOException
+    {
+        this.directory = directory;
+        this.observationSize = observationSize;
+        this.chunkRows = chunkRows;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * setDecisionInterval: ball ticks per decision of the recorded paddle<br>
+     * - 0 by default (a decision every paddle move); one record is written
+     *   per decision, as the policy would be queried when deployed with
+     *   pongGame.setDecisionInterval(player, ticks)
+     *
+     * @param ticks ball ticks per decision, or 0
+     */
+    public void setDecisionInterval(int ticks)
+    {
+        this.decisionInterval = ticks;
+    }
+
+    /**
+     * setPaddleMovesPerTick: paddle moves per ball tick of the recorded games
+     *
+     * @param moves paddle moves per updateBall(), 1 by default
+     */
+    public void setPaddleMovesPerTick(int moves)
+    {
+        this.paddleMovesPerTick = moves;
+    }
+
+    /**
+     * newShard: a writer of records for one thread
+     *
+     * @return Shard a new shard
+     */
+    public synchronized Shard newShard()
+    {
+        return new Shard(numShards++);
+    }
+
+    /**
+     * newEpisode: a new episode id, unique in this data set
+     *
+     * @return long episode id
+     */
+    public long newEpisode()
+    {
+        return episodes.getAndIncrement();
+    }
+
+    public synchronized long getRows()
+    {
+        return rows;
+    }
+
+    /**
+     * writeManifest: (over)writes manifest.json with the chunks closed so far
+     *
+     * @throws IOException if the manifest cannot be written
+     */
+    public synchronized void writeManifest() throws IOException
+    {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"format\": \"npy\",\n  \"rows\": ").append(rows);
+        json.append(",\n  \"observation_size\": ").append(observationSize);
+        json.append(",\n  \"columns\": {");
+        for (int c = 0; c < COLUMNS.length; c++)
+        {
+            json.append(c == 0 ? "" : ", ").append('"').append(COLUMNS[c]).append("\": \"").append(DESCRS[c]).append('"');
+        }
+        json.append("},\n  \"chunks\": [\n");
+        for (int i = 0; i < chunks.size(); i++)
+        {
+            json.append("    ").append(chunks.get(i)).append(i + 1 < chunks.size() ? ",\n" : "\n");
+        }
+        json.append("  ]\n}\n");
+        Files.write(directory.resolve(MANIFEST), json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * generate: plays points on numThreads threads and records one paddle's decisions<br>
+     * - the recorded paddle follows the policy, with a random move instead
+     *   with probability epsilon; the other paddle is the forecasting CPU<br>
+     * - both paddles move through PongGame.moveCPUPaddle, following the
+     *   decision interval and paddle moves per tick set on this writer<br>
+     * - one episode per point: reward 0 until the point is scored, then 1
+     *   if the recorded paddle won it and -1 if it lost it (with done set)<br>
+     * - writes the manifest when all threads are done
+     *
+     * @param numPoints points to play, over all threads
+     * @param numThreads simulator threads, one shard each
+     * @param observation what is recorded (observationSize floats)
+     * @param player 1 to record the left paddle, 2 the right paddle
+     * @param policy makes the policy of the recorded paddle, once per thread
+     * @param epsilon probability of a random move
+     * @param seed seed of the games and the random moves
+     * @throws InterruptedException if interrupted while waiting for the threads
+     * @throws IOException if a chunk or the manifest cannot be written
+     */
+    public void generate(long numPoints, int numThreads, PongObservation observation, int player,
+                         Supplier<PongPlayer> policy, double epsilon, long seed) throws InterruptedException, IOException
+    {
+        AtomicLong points = new AtomicLong();
+        List<IOException> failures = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        for (int t = 0; t < numThreads; t++)
+        {
+            long threadSeed = seed + t*0x9e3779b97f4a7c15L;
+            executor.execute(() -> {
+                try (Shard shard = newShard())
+                {
+                    PongGame pongGame = new PongGame();
+                    pongGame.setVerbose(false);
+                    pongGame.setRandomSeed(threadSeed);
+                    pongGame.addObservation(observation);
+                    pongGame.setDecisionInterval(player, decisionInterval);
+                    pongGame.setPaddleMovesPerTick(paddleMovesPerTick);
+                    Recorder recorder = new Recorder(policy.get(), observation, new SplittableRandom(threadSeed),
+                                                     epsilon, paddleMovesPerTick);
+                    if (player == 1) pongGame.setCPUPlayers(recorder, null);
+                    else pongGame.setCPUPlayers(null, recorder);
+                    pongGame.startNewGame();
+                    float[] obs = new float[observationSize];
+                    while (points.getAndIncrement() < numPoints)
+                    {
+                        playPoint(pongGame, shard, recorder, obs, player);
+                    }
+                }
+                catch (IOException ioe) {
+                    synchronized (failures) { failures.add(ioe); }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        writeManifest();
+        if (!failures.isEmpty()) throw failures.get(0);
+    }
+
+    // one episode: records every decision until the point is scored
+    // (the newest decision is held back in obs/move, as it may be the one that ends the point)
+    private void playPoint(PongGame pongGame, Shard shard, Recorder recorder, float[] obs, int player) throws IOException
+    {
+        int width = pongGame.getAttribute(GameAttributes.GAME_WIDTH);
+        int opponent = 3 - player;
+        long episode = newEpisode();
+        boolean pending = false;
+        int move = 0;
+        while (true)
+        {
+            for (int m = 0; m < pongGame.getPaddleMovesPerTick(); m++)
+            {
+                pongGame.moveCPUPaddle(player, false);
+                pongGame.moveCPUPaddle(opponent, false);
+            }
+            for (int d = 0; d < recorder.count; d++)
+            {
+                if (pending) shard.add(obs, 0, move, 0.0f, false, episode);
+                System.arraycopy(recorder.observations, d*observationSize, obs, 0, observationSize);
+                move = recorder.moves[d];
+                pending = true;
+            }
+            recorder.count = 0;
+            pongGame.updateBall();
+
+            int x = pongGame.getAttribute(GameAttributes.BALL_X);
+            if (x > width || x < 0)
+            {
+                boolean won = (x > width) == (player == 1);
+                if (pending) shard.add(obs, 0, move, won ? 1.0f : -1.0f, true, episode);
+                if (pongGame.isGameOver()) pongGame.startNewGame();
+                return;
+            }
+        }
+    }
+
+    private synchronized void chunkClosed(int shard, int chunk, long chunkRowCount)
+    {
+        StringBuilder entry = new StringBuilder("{\"shard\": ").append(shard).append(", \"chunk\": ").append(chunk);
+        entry.append(", \"rows\": ").append(chunkRowCount);
+        for (String column : COLUMNS)
+        {
+            entry.append(", \"").append(column).append("\": \"").append(fileName(column, shard, chunk)).append('"');
+        }
+        chunks.add(entry.append('}').toString());
+        rows += chunkRowCount;
+    }
+
+    private static String fileName(String column, int shard, int chunk)
+    {
+        return String.format("%s-%03d-%05d.npy", column, shard, chunk);
+    }
+
+    // the .npy preamble and header dict, padded to HEADER_BYTES
+    private static ByteBuffer npyHeader(String descr, long rows, int columns)
+    {
+        String shape = (columns == 0) ? "(" + rows + ",)" : "(" + rows + ", " + columns + ")";
+        StringBuilder dict = new StringBuilder("{'descr': '" + descr + "', 'fortran_order': False, 'shape': " + shape + ", }");
+        while (dict.length() < HEADER_BYTES - 10 - 1) dict.append(' ');
+        dict.append('\n');
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put((byte)0x93).put("NUMPY".getBytes(StandardCharsets.US_ASCII)).put((byte)1).put((byte)0);
+        header.putShort((short)(HEADER_BYTES - 10));
+        header.put(dict.toString().getBytes(StandardCharsets.US_ASCII));
+        header.flip();
+        return header;
+    }
+
+    /**
+     * Recorder: the recorded paddle of one thread<br>
+     * - called by the game at every decision: observes, then follows the
+     *   policy or moves at random, and keeps both until playPoint writes them
+     */
+    private final class Recorder implements PongPlayer {
+        final PongPlayer paddle;
+        final PongObservation observation;
+        final SplittableRandom random;
+        final double epsilon;
+        final float[] observations;   // [decision*observationSize], decisions of the current ball tick
+        final int[] moves;
+        int count = 0;
+
+        Recorder(PongPlayer paddle, PongObservation observation, SplittableRandom random, double epsilon, int maxDecisions)
+        {
+            this.paddle = paddle;
+            this.observation = observation;
+            this.random = random;
+            this.epsilon = epsilon;
+            this.observations = new float[maxDecisions*observationSize];
+            this.moves = new int[maxDecisions];
+        }
+
+        @Override
+        public int choosePaddleMove(PongGame pongGame, int player)
+        {
+            pongGame.observe(observation, observations, count*observationSize);
+            int move = (random.nextDouble() < epsilon) ? random.nextInt(3) - 1 : paddle.choosePaddleMove(pongGame, player);
+            moves[count++] = move;
+            return move;
+        }
+    }
+
+    /**
+     * Shard: the records of one thread, in its own chunk files<br>
+     * - not thread-safe; close() it to finish its last chunk
+     */
+    public final class Shard implements AutoCloseable {
+        private final int shard;
+        private final FileChannel[] channels = new FileChannel[COLUMNS.length];
+        private final ByteBuffer[] buffers = new ByteBuffer[COLUMNS.length];
+        private int chunk = -1;
+        private long chunkRowCount = 0;
+
+        private Shard(int shard)
+        {
+            this.shard = shard;
+            int recordBytes = 4*observationSize;
+            int observationBytes = Math.max(recordBytes, OBSERVATION_BUFFER_BYTES/recordBytes*recordBytes);
+            buffers[0] = ByteBuffer.allocateDirect(observationBytes).order(ByteOrder.LITTLE_ENDIAN);
+            for (int c = 1; c < COLUMNS.length; c++)
+            {
+                buffers[c] = ByteBuffer.allocateDirect(COLUMN_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+
+        /**
+         * add: appends one record
+         *
+         * @param observation array holding the observation
+         * @param offset index of the observation's first float
+         * @param action -1 up, 0 stay, 1 down
+         * @param reward reward after the action
+         * @param done true if the episode ended with this record
+         * @param episode episode id (see newEpisode())
+         * @throws IOException if a full buffer cannot be written
+         */
+        public void add(float[] observation, int offset, int action, float reward, boolean done, long episode) throws IOException
+        {
+            if (chunk < 0 || chunkRowCount == chunkRows) startChunk();
+            if (buffers[0].remaining() < 4*observationSize) flush(0);
+            if (buffers[4].remaining() < 8) flushColumns();
+            buffers[0].asFloatBuffer().put(observation, offset, observationSize);
+            buffers[0].position(buffers[0].position() + 4*observationSize);
+            buffers[1].put((byte)action);
+            buffers[2].putFloat(reward);
+            buffers[3].put(done ? (byte)1 : (byte)0);
+            buffers[4].putLong(episode);
+            chunkRowCount++;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (chunk >= 0) finishChunk();
+            chunk = -1;
+        }
+
+        private void startChunk() throws IOException
+        {
+            if (chunk >= 0) finishChunk();
+            chunk++;
+            chunkRowCount = 0;
+            for (int c = 0; c < COLUMNS.length; c++)
+            {
+                channels[c] = FileChannel.open(directory.resolve(fileName(COLUMNS[c], shard, chunk)),
+                                               StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                               StandardOpenOption.TRUNCATE_EXISTING);
+                channels[c].position(HEADER_BYTES);
+            }
+        }
+
+        private void finishChunk() throws IOException
+        {
+            for (int c = 0; c < COLUMNS.length; c++)
+            {
+                flush(c);
+                ByteBuffer header = npyHeader(DESCRS[c], chunkRowCount, (c == 0) ? observationSize : 0);
+                while (header.hasRemaining()) channels[c].write(header, header.position());
+                channels[c].close();
+            }
+            chunkClosed(shard, chunk, chunkRowCount);
+        }
+
+        // the small columns fill at the same rate: the episodes column (8 bytes a row) first
+        private void flushColumns() throws IOException
+        {
+            for (int c = 1; c < COLUMNS.length; c++) flush(c);
+        }
+
+        private void flush(int c) throws IOException
+        {
+            ByteBuffer buffer = buffers[c];
+            buffer.flip();
+            while (buffer.hasRemaining()) channels[c].write(buffer);
+            buffer.clear();
+        }
+    }
+}
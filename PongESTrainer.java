@@ -0,0 +1,413 @@
+/*
+ * PongESTrainer - evolution strategies for the paddle policy network
+ */
+package mlwithpong;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PongESTrainer: trains a PongPolicyNetwork (the right paddle) by
+ * evolution strategies against the forecasting CPU<br>
+ * - shared noise table: one large table of Gaussian noise, made once from
+ *   a seed; a perturbation is an offset into the table, so a worker is
+ *   given (offset, sign) and gives back (offset, fitness): no parameter
+ *   vectors are exchanged<br>
+ * - antithetic sampling: every offset is evaluated as theta + sigma*eps
+ *   and theta - sigma*eps, on the same seeded serves<br>
+ * - the paddles move through PongGame.moveCPUPaddle, so the network is
+ *   evaluated at its decision interval and paddle moves per ball tick
+ *   (setDecisionInterval, setPaddleMovesPerTick), as it will be deployed<br>
+ * - fitness: points won minus points lost, plus a small bonus per return,
+ *   per point (so a population that loses every point still has a
+ *   gradient); shaped into centered ranks before the update<br>
+ * - evaluations run on a work-stealing ForkJoinPool, one task per
+ *   perturbation; each worker thread keeps its own network and game, so
+ *   the only shared writes are the fitness array slots, and throughput
+ *   grows with the cores<br>
+ * - checkpoints hold the parameters, the generation (which fixes the
+ *   position of the perturbation sequence) and the counters, so a
+ *   resumed training run makes the same updates as an uninterrupted one
+ */
+public class PongESTrainer {
+
+    private static final double RETURN_BONUS = 0.1;          // fitness per ball returned by the network
+    private static final int    MAX_TICKS_PER_POINT = 20000; // an endless rally counts as a draw
+    private static final int    NOISE_BLOCK = 1 << 20;
+
+    private final PongPolicyNetwork network;                 // theta, the mean of the population
+    private final float[] noise;
+    private final int dim;
+    private final int pairs;
+    private final double sigma;
+    private final double learningRate;
+    private final int pointsPerEvaluation;
+    private final ForkJoinPool pool;
+    private final long seed;
+    private final SplittableRandom random;
+    private final ThreadLocal<Worker> workers;
+
+    private final LongAdder points = new LongAdder();
+    private final LongAdder ticks = new LongAdder();
+    private int generation = 0;
+    private volatile int decisionInterval = 0;               // of the network, see PongGame.setDecisionInterval
+    private volatile int paddleMovesPerTick = 1;             // see PongGame.setPaddleMovesPerTick
+
+    /**
+     * PongESTrainer Constructor: makes the noise table (in parallel)
+     *
+     * @param network network to train (its parameters are the starting point)
+     * @param noiseTableSize floats in the shared noise table (at least the parameters)
+     * @param seed seed of the noise table, the perturbations and the serves
+     * @param pairs antithetic pairs per generation (population 2*pairs)
+     * @param sigma standard deviation of the perturbations
+     * @param learningRate step size of the parameter update
+     * @param pointsPerEvaluation points played per perturbation
+     * @param numThreads worker threads
+     * @throws InterruptedException if interrupted while making the noise table
+     */
+    public PongESTrainer(PongPolicyNetwork network, int noiseTableSize, long seed, int pairs, double sigma,
+                         double learningRate, int pointsPerEvaluation, int numThreads) throws InterruptedException
+    {
+        this.network = network;
+        this.dim = network.getParameters().length;
+        this.pairs = pairs;
+        this.sigma = sigma;
+        this.learningRate = learningRate;
+        this.pointsPerEvaluation = pointsPerEvaluation;
+        this.pool = new ForkJoinPool(numThreads);
+        this.seed = seed;
+        this.random = new SplittableRandom(seed);
+        this.workers = ThreadLocal.withInitial(() -> new Worker(new PongPolicyNetwork(network)));
+
+        noise = new float[Math.max(noiseTableSize, dim)];
+        List<Callable<Void>> blocks = new ArrayList<>();
+        for (int start = 0; start < noise.length; start += NOISE_BLOCK)
+        {
+            int from = start;
+            blocks.add(() -> {
+                SplittableRandom blockRandom = new SplittableRandom(seed ^ (from*0x9e3779b97f4a7c15L));
+                int to = Math.min(noise.length, from + NOISE_BLOCK);
+                for (int i = from; i < to; i++) noise[i] = (float)blockRandom.nextGaussian();
+                return null;
+            });
+        }
+        invokeAll(blocks);
+    }
+
+    /**
+     * setDecisionInterval: ball ticks per decision of the network while training<br>
+     * - 0 by default (a decision every paddle move); deploy with
+     *   pongGame.setDecisionInterval(2, ticks) to play as trained
+     *
+     * @param ticks ball ticks per decision, or 0
+     */
+    public void setDecisionInterval(int ticks)
+    {
+        this.decisionInterval = ticks;
+    }
+
+    /**
+     * setPaddleMovesPerTick: paddle moves per ball tick of the evaluation games<br>
+     * - 1 by default, as in startSimulatedMatch; PongPlayableGame.PADDLE_MOVES_PER_TICK
+     *   to train for a playable game
+     *
+     * @param moves paddle moves per updateBall()
+     */
+    public void setPaddleMovesPerTick(int moves)
+    {
+        this.paddleMovesPerTick = moves;
+    }
+
+    /**
+     * train: runs generations, printing one line per generation
+     *
+     * @param generations generations to run
+     * @param out where to print progress, or null
+     * @throws InterruptedException if interrupted while evaluating
+     */
+    public void train(int generations, PrintStream out) throws InterruptedException
+    {
+        long start = System.nanoTime();
+        long startPoints = points.sum(), startTicks = ticks.sum();
+        for (int g = 0; g < generations; g++)
+        {
+            double[] fitness = generation();
+            if (out == null) continue;
+            double seconds = (System.nanoTime() - start)/1e9;
+            out.printf("generation %d  fitness mean %.3f max %.3f  points/s %.0f  ticks/s %.0f  %.1f s%n",
+                       generation, mean(fitness), Arrays.stream(fitness).max().orElse(0.0),
+                       (points.sum() - startPoints)/seconds, (ticks.sum() - startTicks)/seconds, seconds);
+        }
+    }
+
+    /**
+     * train: runs generations until the network has trained for the given
+     * number in total, resuming from the last checkpoint in the file and
+     * checkpointing every checkpointEvery generations and at the end
+     *
+     * @param generations total generations to train for
+     * @param out where to print progress, or null
+     * @param checkpoints file to resume from and checkpoint to
+     * @param checkpointEvery generations between checkpoints
+     * @throws IOException if the checkpoint cannot be read or written
+     * @throws InterruptedException if interrupted while evaluating
+     */
+    public void train(int generations, PrintStream out, PongCheckpointFile checkpoints, int checkpointEvery)
+        throws IOException, InterruptedException
+    {
+        if (checkpoints.getLastCheckpoint() != null)
+        {
+            restore(checkpoints.getLastCheckpoint());
+            if (out != null) out.println("resumed at generation " + generation);
+        }
+        while (generation < generations)
+        {
+            train(1, out);
+            if (generation % checkpointEvery == 0) checkpoints.append(checkpoint());
+        }
+        checkpoints.append(checkpoint());
+        checkpoints.flush();
+    }
+
+    /**
+     * checkpoint: the state of the training run, for PongCheckpointFile<br>
+     * - the parameter array is copied here, on the training thread; the
+     *   file is written by the checkpoint file's own thread
+     *
+     * @return byte[] seed, generation, counters and parameters
+     */
+    public byte[] checkpoint()
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + 4*dim);
+        try (DataOutputStream out = new DataOutputStream(bytes))
+        {
+            VarInts.writeVarlong(out, seed);
+            VarInts.writeVarint(out, dim);
+            VarInts.writeVarint(out, generation);
+            VarInts.writeVarlong(out, points.sum());
+            VarInts.writeVarlong(out, ticks.sum());
+            for (float p : network.getParameters()) out.writeFloat(p);
+        }
+        catch (IOException ioe) {
+            throw new IllegalStateException(ioe);   // (a byte array does not fail)
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * restore: continues from a checkpoint of a trainer made with the same
+     * seed and network shape
+     *
+     * @param checkpoint a checkpoint()
+     * @throws IOException if the checkpoint is of a different training run
+     */
+    public void restore(byte[] checkpoint) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(checkpoint));
+        if (VarInts.readVarlong(in) != seed || VarInts.readVarint(in) != dim)
+        {
+            throw new IOException("the checkpoint is of a different training run");
+        }
+        int restoredGeneration = VarInts.readVarint(in);
+        if (restoredGeneration < generation) throw new IOException("the checkpoint is older than this trainer");
+        points.add(VarInts.readVarlong(in) - points.sum());
+        ticks.add(VarInts.readVarlong(in) - ticks.sum());
+        float[] theta = network.getParameters();
+        for (int p = 0; p < dim; p++) theta[p] = in.readFloat();
+        int[] offsets = new int[pairs];
+        while (generation < restoredGeneration)
+        {
+            drawPerturbations(offsets);          // the random draws of the generations already run
+            generation++;
+        }
+    }
+
+    /**
+     * generation: evaluates one population and updates the network
+     *
+     * @return double[] fitness of every member ([2i] = +eps, [2i+1] = -eps of pair i)
+     * @throws InterruptedException if interrupted while evaluating
+     */
+    public double[] generation() throws InterruptedException
+    {
+        int[] offsets = new int[pairs];
+        long gameSeed = drawPerturbations(offsets);
+
+        // workers get (offset, sign) and fill in the fitness
+        double[] fitness = new double[2*pairs];
+        float[] theta = network.getParameters();
+        List<Callable<Void>> evaluations = new ArrayList<>();
+        for (int m = 0; m < 2*pairs; m++)
+        {
+            int member = m;
+            evaluations.add(() -> {
+                fitness[member] = evaluate(theta, offsets[member/2], (member % 2 == 0) ? sigma : -sigma, gameSeed);
+                return null;
+            });
+        }
+        invokeAll(evaluations);
+
+        // theta += learningRate/(2 pairs sigma) * sum (rank+ - rank-) eps, in parallel over parameter blocks
+        double[] ranks = centeredRanks(fitness);
+        float[] weights = new float[pairs];
+        for (int i = 0; i < pairs; i++)
+        {
+            weights[i] = (float)((ranks[2*i] - ranks[2*i + 1])*learningRate/(2*pairs*sigma));
+        }
+        List<Callable<Void>> updates = new ArrayList<>();
+        int block = Math.max(1024, (dim + pool.getParallelism() - 1)/pool.getParallelism());
+        for (int from = 0; from < dim; from += block)
+        {
+            int start = from, end = Math.min(dim, from + block);
+            updates.add(() -> {
+                for (int i = 0; i < pairs; i++)
+                {
+                    float w = weights[i];
+                    int offset = offsets[i];
+                    for (int p = start; p < end; p++) theta[p] += w*noise[offset + p];
+                }
+                return null;
+            });
+        }
+        invokeAll(updates);
+        generation++;
+        return fitness;
+    }
+
+    public PongPolicyNetwork getNetwork()
+    {
+        return network;
+    }
+
+    public int getGeneration()
+    {
+        return generation;
+    }
+
+    public long getPoints()
+    {
+        return points.sum();
+    }
+
+    /**
+     * shutdown: stops the worker threads
+     */
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+
+    // the offsets of the perturbations of one generation, and the seed of its serves
+    private long drawPerturbations(int[] offsets)
+    {
+        for (int i = 0; i < pairs; i++) offsets[i] = random.nextInt(noise.length - dim + 1);
+        return random.nextLong();
+    }
+
+    // plays pointsPerEvaluation points with theta + scale*noise[offset..]
+    private double evaluate(float[] theta, int offset, double scale, long gameSeed)
+    {
+        Worker worker = workers.get();
+        float[] parameters = worker.network.getParameters();
+        float s = (float)scale;
+        for (int p = 0; p < dim; p++) parameters[p] = theta[p] + s*noise[offset + p];
+
+        PongGame pongGame = worker.game;
+        pongGame.setRandomSeed(gameSeed);
+        pongGame.setDecisionInterval(2, decisionInterval);
+        pongGame.setPaddleMovesPerTick(paddleMovesPerTick);
+        int width = pongGame.getAttribute(GameAttributes.GAME_WIDTH);
+        double total = 0.0;
+        long pointTicks = 0;
+        for (int point = 0; point < pointsPerEvaluation; point++)
+        {
+            pongGame.startNewGame();
+            for (int t = 0; t < MAX_TICKS_PER_POINT; t++, pointTicks++)
+            {
+                int dx = pongGame.getAttribute(GameAttributes.BALL_DX);
+                pongGame.updateBall();
+                int x = pongGame.getAttribute(GameAttributes.BALL_X);
+                if (x < 0) { total += 1.0; break; }         // past the CPU (left paddle)
+                if (x > width) { total -= 1.0; break; }
+                if (dx > 0 && pongGame.getAttribute(GameAttributes.BALL_DX) < 0) total += RETURN_BONUS;
+                for (int m = 0; m < pongGame.getPaddleMovesPerTick(); m++)
+                {
+                    pongGame.moveCPUPaddle(1, false);
+                    pongGame.moveCPUPaddle(2, false);
+                }
+            }
+        }
+        points.add(pointsPerEvaluation);
+        ticks.add(pointTicks);
+        return total/pointsPerEvaluation;
+    }
+
+    private void invokeAll(List<Callable<Void>> tasks) throws InterruptedException
+    {
+        for (Future<Void> future : pool.invokeAll(tasks))
+        {
+            try {
+                future.get();
+            }
+            catch (ExecutionException ee) {
+                throw new IllegalStateException("evolution strategies task failed", ee.getCause());
+            }
+        }
+    }
+
+    // ranks scaled to [-0.5, 0.5]; tied values share their average rank
+    private static double[] centeredRanks(double[] values)
+    {
+        int n = values.length;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+        double[] ranks = new double[n];
+        for (int i = 0; i < n; )
+        {
+            int j = i;
+            while (j + 1 < n && values[order[j + 1]] == values[order[i]]) j++;
+            double rank = (i + j)/2.0;
+            for (int k = i; k <= j; k++) ranks[order[k]] = (n > 1) ? rank/(n - 1) - 0.5 : 0.0;
+            i = j + 1;
+        }
+        return ranks;
+    }
+
+    private static double mean(double[] values)
+    {
+        double sum = 0.0;
+        for (double v : values) sum += v;
+        return sum/values.length;
+    }
+
+    /**
+     * Worker: the network and game of one worker thread
+     */
+    private static final class Worker {
+        final PongPolicyNetwork network;
+        final PongGame game = new PongGame();
+
+        Worker(PongPolicyNetwork network)
+        {
+            this.network = network;
+            game.setVerbose(false);
+            game.addObservation(network.getObservation());
+            game.setCPUPlayers(null, network);
+        }
+    }
+}
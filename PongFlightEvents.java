@@ -0,0 +1,105 @@
+/*
+ * PongFlightEvents - JDK Flight Recorder events for matches, games and slow ticks
+ */
+package mlwithpong;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * PongFlightEvents<br>
+ * - custom JFR events, so a stutter in a simulation or the playable game
+ *   can be lined up against GC and JIT activity in the same recording<br>
+ * - every event is disabled by default; pong.jfc turns them on:<br>
+ *   java -XX:StartFlightRecording:settings=default,settings=pong.jfc,filename=pong.jfr ...<br>
+ * - while an event is disabled, begin()/commit() are empty and the JIT
+ *   removes the event object entirely, so not recording costs next to nothing
+ */
+public final class PongFlightEvents {
+
+    private PongFlightEvents()
+    {
+    }
+
+    /**
+     * Match: from the first serve of a match until a player reaches the winning score
+     */
+    @Name("mlwithpong.Match")
+    @Label("Pong Match")
+    @Category("MLWithPong")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class Match extends Event {
+        @Label("Configuration")
+        public String configuration;
+
+        @Label("Winner")
+        @Description("1 for the left player, 2 for the right player")
+        public int winner;
+
+        @Label("Player One Score")
+        public int playerOneScore;
+
+        @Label("Player Two Score")
+        public int playerTwoScore;
+    }
+
+    /**
+     * Game: from the serve until a player scores
+     */
+    @Name("mlwithpong.Game")
+    @Label("Pong Game")
+    @Category("MLWithPong")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class Game extends Event {
+        @Label("Configuration")
+        public String configuration;
+
+        @Label("Winner")
+        @Description("1 for the left player, 2 for the right player")
+        public int winner;
+
+        @Label("Volleys")
+        public int volleys;
+
+        @Label("Ticks")
+        public int ticks;
+    }
+
+    /**
+     * SlowTick: an updateBall() call that took longer than the threshold
+     */
+    @Name("mlwithpong.SlowTick")
+    @Label("Slow Pong Tick")
+    @Category("MLWithPong")
+    @Enabled(false)
+    @Threshold("1 ms")
+    public static class SlowTick extends Event {
+        @Label("Configuration")
+        public String configuration;
+
+        @Label("Tick")
+        @Description("updateBall() ticks into the current game")
+        public int tick;
+    }
+
+    /**
+     * SlowPaint: a PongCanvas.paint() call that took longer than the threshold
+     */
+    @Name("mlwithpong.SlowPaint")
+    @Label("Slow Pong Paint")
+    @Category("MLWithPong")
+    @Enabled(false)
+    @Threshold("5 ms")
+    public static class SlowPaint extends Event {
+        @Label("Configuration")
+        public String configuration;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * PongFrameView - debug views of the pixel frames of a PongGame
+ */
+package mlwithpong;
+
+import java.awt.Canvas;
+import java.awt.Color;
+import java.awt.Frame;
+import java.awt.Graphics;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+
+/**
+ * PongFrameView: draws the pixel array representation of a game frame<br>
+ * - this is useful to spot-check a frame to make sure the pixel array
+ *   representation of a graphics game frame is accurate and can be
+ *   properly used when training an ML model<br>
+ * - the rendering side of PongGame's pixel frames (PongGame itself does
+ *   not use AWT, so headless simulations do not load it)
+ *
+ * @author devang
+ */
+public class PongFrameView {
+
+    private PongFrameView()
+    {
+    }
+
+    /**
+     * showGame: opens a window that draws the current frame of a game
+     * whenever it is repainted
+     *
+     * @param pongGame game to draw
+     * @return Frame the window
+     */
+    public static Frame showGame(PongGame pongGame)
+    {
+        int pWidth  = pongGame.getAttribute(GameAttributes.GAME_WIDTH);
+        int pHeight = pongGame.getAttribute(GameAttributes.GAME_HEIGHT);
+        PongObservation pixels = PongObservations.pixels();
+        float[] pArray = new float[pWidth*pHeight];
+        Canvas pCanvas = new Canvas() {
+            @Override
+            public void paint(Graphics g) {
+                pongGame.observe(pixels, pArray, 0);
+                setBackground(Color.DARK_GRAY);
+                g.setColor(Color.ORANGE);
+                for (int h = 0; h < pHeight; h++)
+                {
+                    for (int w = 0; w < pWidth; w++)
+                    {
+                        if (pArray[pWidth*h + w] > 0)
+                            g.drawLine(w+1,h,w+1,h);
+                    }
+                }
+            }
+        };
+        return showCanvas(pCanvas, pWidth, pHeight);
+    }
+
+    /**
+     * showPixels: opens a window that draws one frame from an array of pixels
+     *
+     * @param pArray pixels in raster order (see PongGame.getGamePixelFrames)
+     * @param pWidth width of the frame
+     * @param pHeight height of the frame
+     * @return Frame the window
+     */
+    public static Frame showPixels(int[] pArray, int pWidth, int pHeight)
+    {
+        Canvas pCanvas = new Canvas() {
+            @Override
+            public void paint(Graphics g) {
+                setBackground(Color.DARK_GRAY);
+                g.setColor(Color.ORANGE);
+                for (int h = 0; h < pHeight; h++)
+                {
+                    for (int w = 0; w < pWidth; w++)
+                    {
+                        if (pArray[pWidth*h + w] > 0)
+                            g.drawLine(w+1,h,w+1,h);
+                    }
+                }
+            }
+        };
+        return showCanvas(pCanvas, pWidth, pHeight);
+    }
+
+    private static Frame showCanvas(Canvas pCanvas, int pWidth, int pHeight)
+    {
+        pCanvas.setSize(pWidth, pHeight);
+
+        // initialize a frame in which to place the canvas
+        Frame frame = new Frame("SingleFrameFromPixelArray");
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent evt) {
+                System.exit(0);
+            }
+        });
+
+        frame.setLocation(200,200);
+        frame.add(pCanvas);
+        frame.pack();
+        frame.setResizable(false);
+        frame.setVisible(true);
+        return frame;
+    }
+}
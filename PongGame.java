@@ -3,12 +3,7 @@
  */
 package mlwithpong;
 
-import java.awt.Frame;
-import java.awt.event.WindowAdapter;
-import java.awt.event.WindowEvent;
-import java.awt.Canvas;
-import java.awt.Color;
-import java.awt.Graphics;
+import java.util.SplittableRandom;
 import static mlwithpong.GameAttributes.*;
 
 /**
@@ -18,12 +13,11 @@ import static mlwithpong.GameAttributes.*;
  *   parameters of that ML model, and implement the ML model back in this PongGame<br>
  * - supported by GameAttributes, which conveniently enables access to Game Variables<br>
  *   without requiring extra code that would not be relevant for porting to Python<br>
+ * - no AWT: drawing is done by PongCanvas and the PongFrameView debug
+ *   views, so a headless simulation never loads java.desktop classes<br>
  * @author devang
  */
 public class PongGame {
-    int tempCount = 0;
-    Canvas pCanvas;
-    Frame frame;
     
     private boolean gameOver = false;
         
@@ -31,22 +25,18 @@ public class PongGame {
     private final int height        = getParameter(GAME_HEIGHT); // height of game screen
     private int numHistoryFrames    = 4;    // number of most recent frames to
                                             // use per iteration of training
-    private int[][] gamePixels      = new int[numHistoryFrames][width*height];
-                                            // most recent 4 frames for input
-                                            // as training set to Neural Network
-                                            // - exact pixel values from a
-                                            //   monochrome game
-                                            // - this array is size width*height
-                                            //   as in raster order
-    private int[][] gamePositions   = new int[numHistoryFrames][4];
-                                            // most recent 4 game updates
-                                            // as training set to Neural Network
-                                            // - position data instead of pixel
-                                            //   values. The ball x, y and the
-                                            //   y values of each paddle
-                                            // - this array is size 4
-                                            // - compare accuracy and training time
-                                            //   with pixel data of gameFrames
+                                            // the frame history itself is
+                                            // kept in positionHistory (see
+                                            // getGamePositionFrames)
+    private int observationFrames   = 1;    // frames the registered PongObservations read
+    private int[] positionHistory   = null; // ring of {x,y,paddle1-y,paddle2-y} of past
+                                            // ticks, only if observationFrames > 1
+    private int historyHead         = 0;    // ring slot of the most recent past frame
+    private int historyCount        = 0;    // past frames recorded in this game
+    private int decisionFrameTick   = -1;   // tick of the last decision frame (-1: none this game)
+    private final int[] decisionFrame = new int[4]; // positions at that decision, the next frame 1
+    private final int[] framePositions = new int[4]; // scratch of getGamePixel/getGamePosition
+    private final int[] observationScratch = new int[4]; // scratch of PongObservations reads
     private final int dividerWidth  = getParameter(DIVIDER_WIDTH); // width of center dividing line (3)
     private final int ballWidth     = getParameter(BALL_WIDTH);    // width of ball (ML:2)
     private final int ballHeight    = getParameter(BALL_HEIGHT);   // height of ball (ML:2)
@@ -74,6 +64,24 @@ public class PongGame {
     private final int maxdy = getParameter(MAX_DY); // is moving left or down (10)
 
     private int numVolleys = 0;
+    private int numTicks   = 0;     // number of updateBall() ticks in current game
+    private int serveToPlayer = 0;  // 1 if ball was served towards player 1, 2 for player 2
+    
+    private boolean verbose = true;              // print game/match results to stdout
+    private boolean fastForward = false;         // event-driven startSimulatedMatch
+    private SplittableRandom random = null;      // serves: Math.random() unless seeded
+    private long randomSeed = 0;                 // seed of random, if seeded
+    private long randomDraws = 0;                // values drawn from random since it was seeded
+    private PongStatistics statistics = null;    // optional: records points, volleys, hits
+    private PongReplay.Recorder replayRecorder = null;   // optional: records serves, ticks and paddle moves
+    
+    // flight recorder events (reused: begin/commit are no-ops unless recording)
+    private final PongFlightEvents.Match    matchEvent    = new PongFlightEvents.Match();
+    private final PongFlightEvents.Game     gameEvent     = new PongFlightEvents.Game();
+    private final PongFlightEvents.SlowTick slowTickEvent = new PongFlightEvents.SlowTick();
+    private boolean matchEventStarted = false;
+    
+    private PongTickListener[] tickListeners = new PongTickListener[0]; // notified after every updateBall()
     
     private int numVolleysToStart = getParameter(NUM_VOLLEYS_TO_START); // start game after this many volleys
                                                          // either 3 -or- 0 works well
@@ -81,6 +89,13 @@ public class PongGame {
     
     private boolean playerOneHuman = false;
     private boolean playerTwoHuman = false;
+    private PongPlayer playerOneCPU = null;    // CPU policies that replace the
+    private PongPlayer playerTwoCPU = null;    // algorithmic CPU when set
+    
+    private int paddleMovesPerTick = 1;                 // CPU paddle moves per updateBall() in startSimulatedMatch
+    private final int[] decisionInterval = new int[3];  // [player]: ticks per CPU decision, 0 for every paddle move
+    private final int[] decisionTick     = new int[3];  // [player]: tick of the last decision (-1: none this game)
+    private final int[] decidedMove      = new int[3];  // [player]: move repeated until the next decision
     
     /**
      * PongGame: Default Constructor<br>
@@ -106,45 +121,229 @@ public class PongGame {
      * - initializes variables, sizes, dimensions and velocities for a new game
      */
     public void startNewGame()
+    {
+        if (replayRecorder != null) replayRecorder.serve();
+        serve();
+    }
+    
+    private void serve()
     {
         // initialize game state variables
         gameOver = false;
         x = width/2;
         y = height/2;
         numVolleys = 0;
+        numTicks = 0;
         playerOneY = height/2;
         playerTwoY = height/2;
         
-        // initialize training set of most recent frames to all zeroes
-        // - position values:
-        for (int f = 0; f < numHistoryFrames; f++)
-        {
-            for (int p = 0; p < 4; p++)
-            {
-                gamePositions[f][p] = 0;
-            }
-        }
-        
-        // initialize training set of most recent frames to all zeroes
-        // - pixel values:
-        for (int f = 0; f < numHistoryFrames; f++)
-        {
-            for (int p = 0; p < width*height; p++)
-            {
-                gamePixels[f][p] = 0;
-            }
-        }
+        historyCount = 0;   // observations: no past frames before the serve
+        decisionFrameTick = -1;
+        decisionTick[1] = -1;   // CPU players decide at the serve
+        decisionTick[2] = -1;
         
         // initialize speed of ball at serving
         dx = mindx + (int)((maxdx-mindx)/2);
-        dy = (int)(Math.random()*(maxdy-mindy) + mindy);
+        dy = (int)(nextRandom()*(maxdy-mindy) + mindy);
         
         // initialize direction of ball at serving
-        if ((Math.random()-0.5)<=0.0) dx = -1*Math.abs(dx);
+        if ((nextRandom()-0.5)<=0.0) dx = -1*Math.abs(dx);
         else dx = Math.abs(dx);
         
-        if ((Math.random()-0.5)<=0.0) dy = -1*Math.abs(dy);
+        if ((nextRandom()-0.5)<=0.0) dy = -1*Math.abs(dy);
         else dy = Math.abs(dy);
+        
+        serveToPlayer = (dx < 0) ? 1 : 2;
+        
+        // flight recorder: the first serve of a match also starts the match
+        if (!matchEventStarted)
+        {
+            matchEvent.begin();
+            matchEventStarted = true;
+        }
+        gameEvent.begin();
+    }
+    
+    /**
+     * setStatistics: attaches a statistics collector to this game<br>
+     * - points, volleys per rally, serve outcomes, paddle-hit offsets and
+     *   ticks per game are recorded as they happen<br>
+     * - null (the default) records nothing
+     * 
+     * @param statistics collector to record into, or null
+     */
+    public void setStatistics(PongStatistics statistics)
+    {
+        this.statistics = statistics;
+    }
+    
+    /**
+     * setReplayRecorder: attaches an input log recorder to this game<br>
+     * - see PongReplay.record(); fast-forwarding is off while recording
+     * 
+     * @param recorder recorder to notify, or null
+     */
+    void setReplayRecorder(PongReplay.Recorder recorder)
+    {
+        this.replayRecorder = recorder;
+    }
+    
+    /**
+     * addTickListener: calls a listener at the end of every updateBall()<br>
+     * - used by observers of a running game, such as PongSpectatorServer
+     * 
+     * @param listener listener to add
+     */
+    public void addTickListener(PongTickListener listener)
+    {
+        PongTickListener[] listeners = java.util.Arrays.copyOf(tickListeners, tickListeners.length + 1);
+        listeners[tickListeners.length] = listener;
+        tickListeners = listeners;
+    }
+    
+    /**
+     * removeTickListener: stops calling a listener added with addTickListener()
+     * 
+     * @param listener listener to remove
+     */
+    public void removeTickListener(PongTickListener listener)
+    {
+        for (int l = 0; l < tickListeners.length; l++)
+        {
+            if (tickListeners[l] != listener) continue;
+            PongTickListener[] listeners = new PongTickListener[tickListeners.length - 1];
+            System.arraycopy(tickListeners, 0, listeners, 0, l);
+            System.arraycopy(tickListeners, l + 1, listeners, l, listeners.length - l);
+            tickListeners = listeners;
+            return;
+        }
+    }
+    
+    /**
+     * setVerbose: turns the per-game and per-match stdout messages on or off<br>
+     * - headless simulations of many matches should turn these off
+     * 
+     * @param verbose true to print game and match results
+     */
+    public void setVerbose(boolean verbose)
+    {
+        this.verbose = verbose;
+    }
+    
+    /**
+     * setFastForward: plays startSimulatedMatch with fastForwardPoint()<br>
+     * - for evaluation runs and sweeps, where only scores matter: the
+     *   frame history is not updated, tick listeners are not called, and
+     *   instrumentation does not sample ticks<br>
+     * - ignored while a side has a PongPlayer or a decision interval, the
+     *   paddles move more than once per tick, a tick listener is attached
+     *   or an observation of past frames is registered
+     * 
+     * @param fastForward true to jump between collisions
+     */
+    public void setFastForward(boolean fastForward)
+    {
+        this.fastForward = fastForward;
+    }
+    
+    /**
+     * setDecisionInterval: how often a CPU player decides its paddle move<br>
+     * - 0 (the default): the PongPlayer or algorithmic CPU decides every
+     *   paddle move, as before<br>
+     * - k: it decides on the first paddle move of every k-th ball tick of
+     *   a game (and at the serve), and the move is repeated in between.
+     *   The same in startSimulatedMatch, playable games (where the paddles
+     *   move on their own timer) and the tournament, so a policy is
+     *   queried, and reads its observation, k times less often<br>
+     * - while a player has an interval, past frames of observations are
+     *   the frames of earlier decision ticks, not of every tick
+     * 
+     * @param player 1 for the left paddle, 2 for the right paddle
+     * @param ticks ball ticks per decision, or 0
+     */
+    public void setDecisionInterval(int player, int ticks)
+    {
+        decisionInterval[player] = ticks;
+    }
+    
+    public int getDecisionInterval(int player)
+    {
+        return decisionInterval[player];
+    }
+    
+    /**
+     * setPaddleMovesPerTick: CPU paddle moves per ball tick in startSimulatedMatch<br>
+     * - 1 by default; the refresh rate of the paddles out-of-proportion with
+     *   the refresh rate of the ball (paddle_ball_refresh_ratio in Python)
+     * 
+     * @param moves paddle moves per updateBall()
+     */
+    public void setPaddleMovesPerTick(int moves)
+    {
+        this.paddleMovesPerTick = moves;
+    }
+    
+    public int getPaddleMovesPerTick()
+    {
+        return paddleMovesPerTick;
+    }
+    
+    /**
+     * setRandomSeed: makes the serves of this game a repeatable sequence<br>
+     * - two games with the same configuration, seed and players play the
+     *   same match
+     * 
+     * @param seed seed of the serve directions and speeds
+     */
+    public void setRandomSeed(long seed)
+    {
+        setRandomSeed(seed, 0);
+    }
+    
+    /**
+     * setRandomSeed: seeds the serves and skips the values already drawn<br>
+     * - with getRandomDraws(), restores the serve sequence of a checkpointed
+     *   game (three values per serve, so skipping is cheap)
+     * 
+     * @param seed seed of the serve directions and speeds
+     * @param draws values to skip (getRandomDraws() of the checkpointed game)
+     */
+    public void setRandomSeed(long seed, long draws)
+    {
+        this.random = new SplittableRandom(seed);
+        this.randomSeed = seed;
+        for (long d = 0; d < draws; d++) random.nextDouble();
+        this.randomDraws = draws;
+    }
+    
+    /**
+     * getRandomDraws: values drawn from the seeded serve sequence so far
+     * 
+     * @return long number of draws since setRandomSeed
+     */
+    public long getRandomDraws()
+    {
+        return randomDraws;
+    }
+    
+    private double nextRandom()
+    {
+        if (random == null) return Math.random();
+        randomDraws++;
+        return random.nextDouble();
+    }
+    
+    /**
+     * describeConfiguration: short name of the rules/dimensions of this game<br>
+     * - games with the same description are directly comparable
+     * 
+     * @return String e.g. "125x100 paddle15 dy1 spin4 dx2-6 dy2-6 win21"
+     */
+    public String describeConfiguration()
+    {
+        return width + "x" + height + " paddle" + paddleHeight + " dy" + dyPaddle
+             + " spin" + maxSpinInc + " dx" + mindx + "-" + maxdx
+             + " dy" + mindy + "-" + maxdy + " win" + winningScore;
     }
     
     /**
@@ -154,64 +353,81 @@ public class PongGame {
      */
     public void startSimulatedMatch() throws InterruptedException
     {
-        playerOneScore = 0;
-        playerTwoScore = 0;
+        startMatch();
         // int numGames = 0; startNewGame();
-        // initDrawingFrame();
+        // PongFrameView.showGame(this);
         while (!isMatchOver())
         {
-            startNewGame();
-            while (!isGameOver())
+            playSimulatedPoint();
+            if (verbose)
             {
-                if (numVolleys >= numVolleysToStart)
-                {
-                    tempCount++;
-                    updateGamePixelFrames();
-                    updateGamePositionFrames();
-                }
-                updateBall();
-                 // change [1] to [5] to increase refresh rate of paddles
-                 // out-of-proportion with refresh rate of screen-drawings
-                for (int m = 0; m < 1 /* 5 */; m++)
-                {
-                    boolean isPlayerOneSimple = false;
-                    if (GameAttributes.SIMPLE_PLAYER_1_CPU.get() == 0) isPlayerOneSimple = true;
-                    playerOneAlgorithmicCPUMovePaddle(isPlayerOneSimple);
-                    
-                    boolean isPlayerTwoSimple = false;
-                    if (GameAttributes.SIMPLE_PLAYER_2_CPU.get() == 0) isPlayerTwoSimple = true;
-                    playerTwoAlgorithmicCPUMovePaddle(isPlayerTwoSimple);
-                }
+                System.out.println("Game Over: ");
+                System.out.println("  number of volleys in game: " + numVolleys);
+                System.out.println("  " + playerOneScore + " - " + playerTwoScore);
             }
-            System.out.println("Game Over: ");
-            System.out.println("  number of volleys in game: " + tempCount);
-            System.out.println("  " + playerOneScore + " - " + playerTwoScore);
         }
+        if (PongInstrumentation.ENABLED) PongInstrumentation.countMatch();
+        if (!verbose) return;
         if (playerOneScore >= winningScore) System.out.println("Player 1 wins match");
         if (playerTwoScore >= winningScore) System.out.println("Player 2 wins match");
     }
+    
     /**
-     * updateGamePixelFrames: updates the most recent pixel values per game frame<br>
-     * - These frames are the x-training input into an ML-model<br>
-     * - This method puts the most recent frame's values at the top, and
-     *   knocks off the oldest frame
-     * 
+     * startMatch: sets the scores of a new match to 0
      */
-    public void updateGamePixelFrames()
+    void startMatch()
     {
-        int numFrames = numHistoryFrames;
-        for (int p = numFrames-1; p > 0; p--)
+        if (replayRecorder != null) replayRecorder.startMatch();
+        playerOneScore = 0;
+        playerTwoScore = 0;
+    }
+    
+    /**
+     * playSimulatedPoint<br>
+     * - serves and plays one game (point) of startSimulatedMatch<br>
+     * - nothing but the scores and the serve sequence carries over from
+     *   one point to the next, so a match can be checkpointed between points
+     */
+    public void playSimulatedPoint()
+    {
+        startNewGame();
+        if (fastForward && playerOneCPU == null && playerTwoCPU == null && paddleMovesPerTick == 1
+            && decisionInterval[1] == 0 && decisionInterval[2] == 0
+            && tickListeners.length == 0 && positionHistory == null && replayRecorder == null)
         {
-            gamePixels[p] = gamePixels[p-1];
+            while (!isGameOver()) fastForwardPoint();
+        }
+        else while (!isGameOver())
+        {
+            // instrumentation: times the phases of a sampled tick
+            boolean sampled = PongInstrumentation.ENABLED && PongInstrumentation.tick();
+            long t = sampled ? PongInstrumentation.startSample() : 0;
+            
+            // frames are not captured here: consumers pull them through
+            // PongObservation, and pay only for what they read
+            updateBall();
+            if (sampled) t = PongInstrumentation.endPhase(PongInstrumentation.UPDATE_BALL, t);
+             // setPaddleMovesPerTick(5) increases refresh rate of paddles
+             // out-of-proportion with refresh rate of screen-drawings
+            for (int m = 0; m < paddleMovesPerTick; m++)
+            {
+                boolean isPlayerOneSimple = false;
+                if (GameAttributes.SIMPLE_PLAYER_1_CPU.get() == 0) isPlayerOneSimple = true;
+                moveCPUPaddle(1, isPlayerOneSimple);
+                
+                boolean isPlayerTwoSimple = false;
+                if (GameAttributes.SIMPLE_PLAYER_2_CPU.get() == 0) isPlayerTwoSimple = true;
+                moveCPUPaddle(2, isPlayerTwoSimple);
+            }
+            if (sampled)
+            {
+                PongInstrumentation.endPhase(PongInstrumentation.CPU_PADDLES, t);
+                PongInstrumentation.endSample();
+            }
         }
-        gamePixels[0] = getPixelArray();
     }
-    
     /**
-     * updateGamePositionFrames: updates the most recent position values per game frame<br>
-     * - This method puts the most recent frame's values at the top, and
-     *   knocks off the oldest frame<br>
-     * - Training starts with 4 frames (as in the private-int: numHistoryFrames)<br>
+     * getGamePositionFrames: returns the most recent positions of frame history<br>
      * - the position values are the x,y values of the ball and y-values of the paddles<br>
      * - when most people train an ML model for a pong game, the exact pixel
      *   values of the game are used, after a Convolution filter, to train an
@@ -220,49 +436,303 @@ public class PongGame {
      *   quicker. And then I compare that model with a model that
      *   does not use the pixel values, but rather the only properties of the
      *   the game that change: the ball position (x,y) and the paddle positions(y)<br>
-     * - I compare the accuracy and training-time of a model using pixel values
-     *   and a model using these 4 position values.
+     * - a copy read from getPositions: frames the registered observations
+     *   do not keep (see addObservation) are all zeroes
+     * 
+     * @return int[][] 2-D array of the numHistoryFrames most recent position values
      */
-    public void updateGamePositionFrames()
+    public int[][] getGamePositionFrames()
     {
-        int numFrames = numHistoryFrames;
-        for (int p = numFrames-1; p > 0; p--)
+        int[][] gamePositions = new int[numHistoryFrames][4];
+        for (int f = 0; f < numHistoryFrames; f++)
         {
-            gamePositions[p] = gamePositions[p-1];
+            getPositions(f, gamePositions[f]);
         }
-        gamePositions[0] = getPositionArray();
+        return gamePositions;
     }
     
     /**
-     * getGamePositionFrames: returns the most recent positions of frame history<br>
+     * getGamePixelFrames: returns the most recent pixels of frame history<br>
+     * - rasterized from getGamePositionFrames; a frame not kept is all zeroes
      * 
-     * @return int[][] 2-D array of most recent position values
+     * @return int[][] 2-D array of most recent pixels of frames, in raster order
      */
-    public int[][] getGamePositionFrames()
+    public int[][] getGamePixelFrames()
     {
-        return gamePositions;
+        int[][] gamePixels = new int[numHistoryFrames][];
+        for (int f = 0; f < numHistoryFrames; f++)
+        {
+            gamePixels[f] = getPositions(f, framePositions) ? getPixelArray(framePositions) : new int[width*height];
+        }
+        return gamePixels;
+    }
+
+    /**
+     * getGamePixel: one pixel of a frame, as either side sees it<br>
+     * - the pixel is computed from the positions of the frame (getPositions),
+     *   so no raster is kept or copied; mirrored reads column width-1-w
+     *   (see getMirrorArray)
+     *
+     * @param frame 0 for the current frame, f for f ticks ago (as far back
+     *        as the registered observations keep, see addObservation)
+     * @param w column, from the left of the (mirrored) frame
+     * @param h row
+     * @param mirrored true for the view of the other side
+     * @return int 1 for the ball or a paddle, 0 for the background (or a frame not kept)
+     */
+    public int getGamePixel(int frame, int w, int h, boolean mirrored)
+    {
+        if (!getPositions(frame, framePositions)) return 0;
+        int column = mirrored ? width-1-w : w;
+        if (column == framePositions[0] && h == framePositions[1]) return 1;
+        int paddleY = (column == 0) ? framePositions[2] : (column == width-1) ? framePositions[3] : Integer.MIN_VALUE;
+        if (paddleY == Integer.MIN_VALUE) return 0;
+        return (h >= paddleY - paddleHeight/2 && h < paddleY + paddleHeight/2) ? 1 : 0;
+    }
+
+    /**
+     * getGamePosition: one position value of a frame, as either side sees it<br>
+     * - mirrored: the ball x is width-1-x and the two paddles swap
+     *
+     * @param frame 0 for the current frame, f for f ticks ago (see getPositions)
+     * @param p 0 ball x, 1 ball y, 2 paddle1-y, 3 paddle2-y (of the mirrored frame)
+     * @param mirrored true for the view of the other side
+     * @return int the position value, 0 for a frame not kept
+     */
+    public int getGamePosition(int frame, int p, boolean mirrored)
+    {
+        if (!getPositions(frame, framePositions)) return 0;
+        if (!mirrored) return framePositions[p];
+        if (p == 0) return width-1 - framePositions[0];
+        if (p == 2 || p == 3) return framePositions[5 - p];
+        return framePositions[p];
+    }
+
+    /**
+     * addObservation: registers an observation that will be read from this game<br>
+     * - the game keeps only the position history the registered observations
+     *   need (nothing, for observations of the current frame only); pixels,
+     *   differences and stacks are computed from it when they are read
+     * 
+     * @param observation observation a consumer will read with observe()
+     */
+    public void addObservation(PongObservation observation)
+    {
+        int frames = observation.getHistoryFrames();
+        if (frames <= observationFrames) return;
+        observationFrames = frames;
+        positionHistory = new int[(frames - 1)*4];
+        historyHead = 0;
+        historyCount = 0;
     }
     
     /**
-     * getGamePixelFrames: returns the most recent pixels of frame history<br>
+     * observe: reads an observation of the current game
      * 
-     * @return int[][] 2-D array of most recent pixels of frames, in raster order
+     * @param observation observation to read (registered with addObservation()
+     *        if it reads past frames)
+     * @param out array to write the observation to
+     * @param offset index of out to write the first value to
      */
-    public int[][] getGamePixelFrames()
+    public void observe(PongObservation observation, float[] out, int offset)
     {
-        return gamePixels;
+        if (PongInstrumentation.ENABLED && PongInstrumentation.sample())
+        {
+            long t = System.nanoTime();
+            observation.read(this, out, offset);
+            PongInstrumentation.endPhase(PongInstrumentation.OBSERVATIONS, t);
+            return;
+        }
+        observation.read(this, out, offset);
     }
     
-    private int[] getPositionArray()
-    {   // returns the position parameters of the most recent frame
-        // - only the 4 changable parameters:
-        //   {x,y,paddle1-y,paddle2-y}
-        int[] positionArray = new int[] {x,y,playerOneY,playerTwoY};
-        return positionArray;
+    // scratch positions for the PongObservations reading this game (on its thread)
+    int[] getObservationScratch()
+    {
+        return observationScratch;
     }
     
-    private int[] getPixelArray()
-    {   // returns thes rasterized pixel values of the most recent frame
+    /**
+     * getPositions: the ball x, y and paddle positions of a frame<br>
+     * - frame 0 is the current state; frame f is the state f ticks ago
+     * 
+     * @param framesAgo 0 for the current frame
+     * @param positions array of 4 to write {x,y,paddle1-y,paddle2-y} to
+     * @return boolean false (and zeroes) if the frame was before the serve
+     *         or is older than the registered observations keep
+     */
+    public boolean getPositions(int framesAgo, int[] positions)
+    {
+        if (framesAgo == 0)
+        {
+            positions[0] = x;
+            positions[1] = y;
+            positions[2] = playerOneY;
+            positions[3] = playerTwoY;
+            return true;
+        }
+        if (framesAgo > historyCount || framesAgo >= observationFrames)
+        {
+            java.util.Arrays.fill(positions, 0, 4, 0);
+            return false;
+        }
+        int slots = observationFrames - 1;
+        int slot = Math.floorMod(historyHead - (framesAgo - 1), slots);
+        System.arraycopy(positionHistory, slot*4, positions, 0, 4);
+        return true;
+    }
+    
+    private void recordPositionHistory(int ballX, int ballY, int paddleOneY, int paddleTwoY)
+    {   // the given state becomes frame 1
+        int slots = observationFrames - 1;
+        historyHead = (historyHead + 1) % slots;
+        int i = historyHead*4;
+        positionHistory[i]     = ballX;
+        positionHistory[i + 1] = ballY;
+        positionHistory[i + 2] = paddleOneY;
+        positionHistory[i + 3] = paddleTwoY;
+        if (historyCount < slots) historyCount++;
+    }
+    
+    private void recordDecisionFrame()
+    {   // the first decision of a tick: the previous decision's frame becomes frame 1
+        if (decisionFrameTick == numTicks) return;
+        if (decisionFrameTick >= 0) recordPositionHistory(decisionFrame[0], decisionFrame[1], decisionFrame[2], decisionFrame[3]);
+        decisionFrame[0] = x;
+        decisionFrame[1] = y;
+        decisionFrame[2] = playerOneY;
+        decisionFrame[3] = playerTwoY;
+        decisionFrameTick = numTicks;
+    }
+    
+    /**
+     * snapshot: copies the state of the game into a new snapshot<br>
+     * - see snapshot(PongGameSnapshot, boolean)
+     * 
+     * @param includeFrames true to also copy the observation history and the CPU decisions in progress
+     * @return PongGameSnapshot the copied state
+     */
+    public PongGameSnapshot snapshot(boolean includeFrames)
+    {
+        PongGameSnapshot snapshot = new PongGameSnapshot();
+        snapshot(snapshot, includeFrames);
+        return snapshot;
+    }
+    
+    /**
+     * snapshot: copies the state of the game into an existing snapshot<br>
+     * - the state is a handful of ints: ball x, y, dx, dy, paddle Ys, scores,
+     *   volleys, ticks, serve direction and game-over<br>
+     * - with frames, also the position history ring the registered
+     *   observations read and the decisions the CPU players are repeating,
+     *   so a restored or branched game observes and plays on as this one<br>
+     * - reusing a snapshot allocates nothing (the history array is
+     *   allocated the first time a snapshot includes frames)
+     * 
+     * @param snapshot snapshot to overwrite
+     * @param includeFrames true to also copy the observation history and the CPU decisions in progress
+     */
+    public void snapshot(PongGameSnapshot snapshot, boolean includeFrames)
+    {
+        snapshot.x = x;
+        snapshot.y = y;
+        snapshot.dx = dx;
+        snapshot.dy = dy;
+        snapshot.playerOneY = playerOneY;
+        snapshot.playerTwoY = playerTwoY;
+        snapshot.playerOneScore = playerOneScore;
+        snapshot.playerTwoScore = playerTwoScore;
+        snapshot.numVolleys = numVolleys;
+        snapshot.numTicks = numTicks;
+        snapshot.serveToPlayer = serveToPlayer;
+        snapshot.gameOver = gameOver;
+        snapshot.hasFrames = includeFrames;
+        if (includeFrames) snapshot.copyFrames(positionHistory, historyHead, historyCount, decisionFrameTick,
+                                               decisionFrame, decisionTick, decidedMove);
+    }
+    
+    /**
+     * restore: sets the state of the game back to a snapshot<br>
+     * - the snapshot may come from a different game with the same configuration<br>
+     * - a snapshot without frames starts the observation history and the
+     *   CPU decisions over, as a serve does; so does a snapshot whose history
+     *   was kept for other observations than this game's<br>
+     * - allocates nothing
+     * 
+     * @param snapshot snapshot to restore
+     */
+    public void restore(PongGameSnapshot snapshot)
+    {
+        x = snapshot.x;
+        y = snapshot.y;
+        dx = snapshot.dx;
+        dy = snapshot.dy;
+        playerOneY = snapshot.playerOneY;
+        playerTwoY = snapshot.playerTwoY;
+        playerOneScore = snapshot.playerOneScore;
+        playerTwoScore = snapshot.playerTwoScore;
+        numVolleys = snapshot.numVolleys;
+        numTicks = snapshot.numTicks;
+        serveToPlayer = snapshot.serveToPlayer;
+        gameOver = snapshot.gameOver;
+        historyCount = 0;
+        decisionFrameTick = -1;
+        decisionTick[1] = -1;
+        decisionTick[2] = -1;
+        if (!snapshot.hasFrames) return;
+        if (positionHistory != null && snapshot.history != null && snapshot.history.length == positionHistory.length)
+        {
+            System.arraycopy(snapshot.history, 0, positionHistory, 0, positionHistory.length);
+            historyHead = snapshot.historyHead;
+            historyCount = snapshot.historyCount;
+            decisionFrameTick = snapshot.decisionFrameTick;
+            System.arraycopy(snapshot.decisionFrame, 0, decisionFrame, 0, 4);
+        }
+        System.arraycopy(snapshot.decisionTick, 0, decisionTick, 0, 3);
+        System.arraycopy(snapshot.decidedMove, 0, decidedMove, 0, 3);
+    }
+    
+    /**
+     * fork: a new, independent game in the same state as this one<br>
+     * - for search-based players and what-if analysis: the fork can be
+     *   played forward without affecting this game<br>
+     * - the fork plays as this game does: same serve sequence (a seeded
+     *   game's fork is seeded at the same draw), paddle moves per tick,
+     *   decision intervals and decisions in progress, and fast-forward<br>
+     * - the fork is quiet and has no statistics, listeners or windows, and
+     *   does not copy the frame history; use restore() into a reused game
+     *   to branch many times without allocating
+     * 
+     * @return PongGame the forked game
+     */
+    public PongGame fork()
+    {
+        PongGame forked = new PongGame(playerOneHuman, playerTwoHuman);
+        forked.verbose = false;
+        forked.x = x;
+        forked.y = y;
+        forked.dx = dx;
+        forked.dy = dy;
+        forked.playerOneY = playerOneY;
+        forked.playerTwoY = playerTwoY;
+        forked.playerOneScore = playerOneScore;
+        forked.playerTwoScore = playerTwoScore;
+        forked.numVolleys = numVolleys;
+        forked.numTicks = numTicks;
+        forked.serveToPlayer = serveToPlayer;
+        forked.gameOver = gameOver;
+        forked.matchEventStarted = true;   // the forked match is not a new match
+        if (random != null) forked.setRandomSeed(randomSeed, randomDraws);
+        forked.paddleMovesPerTick = paddleMovesPerTick;
+        forked.fastForward = fastForward;
+        System.arraycopy(decisionInterval, 0, forked.decisionInterval, 0, 3);
+        System.arraycopy(decisionTick, 0, forked.decisionTick, 0, 3);
+        System.arraycopy(decidedMove, 0, forked.decidedMove, 0, 3);
+        return forked;
+    }
+    
+    private int[] getPixelArray(int[] positions)
+    {   // returns thes rasterized pixel values of a frame's {x,y,paddle1-y,paddle2-y}
         // - the game is monochrome, so a pixel is:
         //   1 for the ball or the paddles, and
         //   0 for everything else like the black background
@@ -274,12 +744,13 @@ public class PongGame {
                 pixelArray[width*h + w] = 0;
             }
         }
-        pixelArray[width*y + x] = 1;
-        for (int p = Math.max(0, playerOneY - paddleHeight/2); p < Math.min(height, playerOneY + paddleHeight/2); p++)
+        int ballX = positions[0], ballY = positions[1];
+        if (ballX >= 0 && ballX < width && ballY >= 0 && ballY < height) pixelArray[width*ballY + ballX] = 1;
+        for (int p = Math.max(0, positions[2] - paddleHeight/2); p < Math.min(height, positions[2] + paddleHeight/2); p++)
         {
             pixelArray[width*p] = 1;
         }
-        for (int p = Math.max(0, playerTwoY - paddleHeight/2); p < Math.min(height, playerTwoY + paddleHeight/2); p++)
+        for (int p = Math.max(0, positions[3] - paddleHeight/2); p < Math.min(height, positions[3] + paddleHeight/2); p++)
         {
             pixelArray[width*p + width-1] = 1;
         }
@@ -292,6 +763,8 @@ public class PongGame {
         // - this is used to swap the side of a paddle, so that
         //   a trained ML model can be swapped to play from the left
         //   side instead of the right-side
+        // - getGamePixel(..., true) and PongObservations.mirrored()
+        //   read the same view without copying the frame
         int[] newArray = new int[pWidth*pHeight];
         for (int h = 0; h < pHeight; h++)
         {
@@ -303,86 +776,71 @@ public class PongGame {
         return newArray;
     }
 
-    private void initDrawingFrame()
-    {   // draws a single frame,canvas,game-screen from an array of pixels
-        // - this is useful to spot-check a frame to make sue the pixel
-        //   array representation of a graphics game frame is accurate
-        //   and can be properly used when training an ML model
-        int pWidth  = width;
-        int pHeight = height;
-        pCanvas = new Canvas() {
-            @Override
-            public void paint(Graphics g) {
-                int[] pArray = getPixelArray();
-                setBackground(Color.DARK_GRAY);
-                g.setColor(Color.ORANGE);
-                for (int h = 0; h < pHeight; h++)
-                {
-                    for (int w = 0; w < pWidth; w++)
-                    {
-                        if (pArray[pWidth*h + w] > 0)
-                            g.drawLine(w+1,h,w+1,h);
-                    }
-                }
-            }
-        };
-        pCanvas.setSize(pWidth, pHeight);
-
-        // initialize a frame in which to place the canvas
-        frame = new Frame("SingleFrameFromPixelArray");
-        frame.addWindowListener(new WindowAdapter() {
-            @Override
-            public void windowClosing(WindowEvent evt) {
-                System.exit(0);
-            }
-        });
-
-        frame.setLocation(200,200);
-        frame.add(pCanvas);
-        frame.pack();
-        frame.setResizable(false);
-        frame.setVisible(true);
-    }
-    
-    private void drawSingleFrame(int[] pArray)
-    {   // draws a single frame,canvas,game-screen from an array of pixels
-        // - this is useful to spot-check a frame to make sue the pixel
-        //   array representation of a graphics game frame is accurate
-        //   and can be properly used when training an ML model
-        int pWidth = width;
-        int pHeight = height;
-        pCanvas = new Canvas() {
-            @Override
-            public void paint(Graphics g) {
-                // int[] pArray = getPixelArray();
-                setBackground(Color.DARK_GRAY);
-                g.setColor(Color.ORANGE);
-                for (int h = 0; h < pHeight; h++)
-                {
-                    for (int w = 0; w < pWidth; w++)
-                    {
-                        if (pArray[pWidth*h + w] > 0)
-                            g.drawLine(w+1,h,w+1,h);
-                    }
-                }
-            }
-        };
-        pCanvas.setSize(pWidth, pHeight);
-
-        // initialize a frame in which to place the canvas
-        frame = new Frame("SingleFrameFromPixelArray");
-        frame.addWindowListener(new WindowAdapter() {
-            @Override
-            public void windowClosing(WindowEvent evt) {
-                System.exit(0);
-            }
-        });
-
-        frame.setLocation(200,200);
-        frame.add(pCanvas);
-        frame.pack();
-        frame.setResizable(false);
-        frame.setVisible(true);
+    /**
+     * setCPUPlayers: sets the policies of CPU controlled paddles<br>
+     * - a null player keeps the algorithmic CPU for that side
+     * 
+     * @param playerOne policy for the left paddle, or null
+     * @param playerTwo policy for the right paddle, or null
+     */
+    public void setCPUPlayers(PongPlayer playerOne, PongPlayer playerTwo)
+    {
+        this.playerOneCPU = playerOne;
+        this.playerTwoCPU = playerTwo;
+    }
+    
+    /**
+     * moveCPUPlayerPaddle: moves a paddle by its PongPlayer, if it has one
+     * 
+     * @param player 1 for the left paddle, 2 for the right paddle
+     * @return boolean true if the paddle has a PongPlayer and was moved by it
+     */
+    public boolean moveCPUPlayerPaddle(int player)
+    {
+        PongPlayer cpu = (player == 1) ? playerOneCPU : playerTwoCPU;
+        if (cpu == null) return false;
+        movePaddle(player, nextCPUMove(player, cpu, false));
+        return true;
+    }
+    
+    /**
+     * moveCPUPaddle: moves a CPU controlled paddle by its PongPlayer, or by
+     * the algorithmic CPU if it has none<br>
+     * - follows the decision interval of the player (setDecisionInterval)
+     * 
+     * @param player 1 for the left paddle, 2 for the right paddle
+     * @param simple True if an algorithmic CPU should follow the ball, False if it should forecast
+     */
+    public void moveCPUPaddle(int player, boolean simple)
+    {
+        PongPlayer cpu = (player == 1) ? playerOneCPU : playerTwoCPU;
+        if (cpu == null && decisionInterval[player] == 0)
+        {   // the algorithmic CPU, deciding every paddle move
+            if (player == 1) playerOneAlgorithmicCPUMovePaddle(simple);
+            else playerTwoAlgorithmicCPUMovePaddle(simple);
+            return;
+        }
+        movePaddle(player, nextCPUMove(player, cpu, simple));
+    }
+    
+    private int nextCPUMove(int player, PongPlayer cpu, boolean simple)
+    {   // decides, or repeats the decision of an earlier tick of the interval
+        int interval = decisionInterval[player];
+        if (interval > 0 && decisionTick[player] >= 0 && numTicks - decisionTick[player] < interval)
+        {
+            return decidedMove[player];
+        }
+        if (interval > 0 && positionHistory != null) recordDecisionFrame();
+        decidedMove[player] = (cpu != null) ? cpu.choosePaddleMove(this, player) : algorithmicCPUMove(player, simple);
+        decisionTick[player] = numTicks;
+        return decidedMove[player];
+    }
+    
+    private void movePaddle(int player, int move)
+    {
+        if (move == 0) return;
+        if (player == 1) movePlayerOnePaddle(move*dyPaddle);
+        else movePlayerTwoPaddle(move*dyPaddle);
     }
     
     /**
@@ -453,6 +911,29 @@ public class PongGame {
         }
     }
     
+    /**
+     * algorithmicCPUMove: the move the algorithmic CPU would make, without making it<br>
+     * - the same decision as playerOneAlgorithmicCPUMovePaddle() and
+     *   playerTwoAlgorithmicCPUMovePaddle(), for policies that are played
+     *   through a PongPlayer (see PongCPUPlayer)
+     * 
+     * @param player 1 for the left paddle, 2 for the right paddle
+     * @param simple True if paddle should follow ball, False if paddle should forecast
+     * @return int -1 to move up, 1 to move down, 0 to stay
+     */
+    public int algorithmicCPUMove(int player, boolean simple)
+    {
+        int predicted_y = 0;
+        if (simple) {
+            if ((player == 1) ? (dx > 0) : (dx < 0)) return 0;
+            predicted_y = simplePredictYPosition();
+        }
+        else predicted_y = forecastPredictYPosition();
+        
+        int paddleY = (player == 1) ? playerOneY : playerTwoY;
+        return (paddleY >= predicted_y) ? -1 : 1;
+    }
+    
     private int simplePredictYPosition()
     {
         // constantly moves paddle to the current y-position of the ball
@@ -539,6 +1020,135 @@ public class PongGame {
         return predicted_y;
     }
     
+    /**
+     * fastForwardPoint: plays the algorithmic CPU players until the ball
+     * leaves the arena, jumping over straight-line flight<br>
+     * - gives exactly the state that ticking startSimulatedMatch (one paddle
+     *   move per ball tick) reaches, with far fewer updateBall() calls<br>
+     * - between two events the ball flies straight, the forecasting CPU's
+     *   target does not change, and the simple CPU's target (the ball)
+     *   moves linearly, so all positions after n ticks have a closed form;
+     *   an event is the ball reaching a paddle line or the top/bottom rows
+     *   (the rows where the real or the forecast ball bounces)<br>
+     * - the event tick itself is played with updateBall() and the CPU
+     *   moves, so paddle hits and spin go through the usual code<br>
+     * - tick listeners and per-tick frames are skipped over the jumps
+     */
+    public void fastForwardPoint()
+    {
+        boolean isPlayerOneSimple = (GameAttributes.SIMPLE_PLAYER_1_CPU.get() == 0);
+        boolean isPlayerTwoSimple = (GameAttributes.SIMPLE_PLAYER_2_CPU.get() == 0);
+        while (x >= 0 && x <= width)
+        {
+            int n = ticksToNextEvent() - 1;
+            if (n > 0)
+            {
+                // paddles first: targets depend on the ball before the jump
+                if (!isPlayerOneSimple) playerOneY = advanceCPUPaddle(playerOneY, n, forecastPredictYPosition(), 0);
+                else if (dx <= 0) playerOneY = advanceCPUPaddle(playerOneY, n, y, dy);
+                if (!isPlayerTwoSimple) playerTwoY = advanceCPUPaddle(playerTwoY, n, forecastPredictYPosition(), 0);
+                else if (dx >= 0) playerTwoY = advanceCPUPaddle(playerTwoY, n, y, dy);
+                x += n*dx;
+                y += n*dy;
+                numTicks += n;
+            }
+            updateBall();
+            playerOneAlgorithmicCPUMovePaddle(isPlayerOneSimple);
+            playerTwoAlgorithmicCPUMovePaddle(isPlayerTwoSimple);
+        }
+    }
+    
+    private int ticksToNextEvent()
+    {   // ticks until the ball reaches a paddle line (x <= 0, x >= width-1)
+        // or a row where the real or the forecast bounce rule applies
+        int top = Math.max(0, ballHeight/2);
+        int bottom = Math.min(height - 1, height - ballHeight/2);
+        int tx = Integer.MAX_VALUE;
+        int ty = Integer.MAX_VALUE;
+        if (dx > 0) tx = ceilDiv(width - 1 - x, dx);
+        if (dx < 0) tx = ceilDiv(x, -dx);
+        if (dy > 0) ty = (y + dy <= top) ? 1 : ceilDiv(bottom - y, dy);     // (leaving the top rows)
+        if (dy < 0) ty = (y + dy >= bottom) ? 1 : ceilDiv(y - top, -dy);
+        return Math.max(1, Math.min(tx, ty));
+    }
+    
+    private int advanceCPUPaddle(int paddleY, int n, int target0, int velocity)
+    {   // closed form of n algorithmic CPU moves: at tick j (1..n) the paddle
+        // moves up if paddleY >= target0 + velocity*j and down otherwise,
+        // clamped like movePlayerOnePaddle
+        int lo = paddleHeight/2;
+        int hi = height - paddleHeight/2;
+        int d = dyPaddle;
+        int j = 0;                        // ticks done
+        int cycleStartY = -1;             // oscillation around a fixed target
+        int cycleStartTick = 0;
+        int phases = 0;
+        while (j < n)
+        {
+            int target = target0 + velocity*j;    // target of tick j+i is target + velocity*i
+            boolean up = (paddleY >= target + velocity);
+            if (velocity == 0 && up)
+            {
+                if (paddleY == cycleStartY)
+                {
+                    int period = j - cycleStartTick;
+                    j += ((n - j)/period)*period;
+                    if (j >= n) break;
+                }
+                cycleStartY = paddleY;
+                cycleStartTick = j;
+            }
+            if (++phases > 16)
+            {   // a paddle tracking a slow ball flips every tick: step it
+                paddleY = up ? Math.max(lo, paddleY - d) : Math.min(hi, paddleY + d);
+                j++;
+                continue;
+            }
+            // i: first tick of this phase (counted from 1) that moves the other way
+            long fail;
+            if (up)
+            {   // holds while max(lo, paddleY - d*(i-1)) >= target + velocity*i
+                long unclamped = (paddleY - lo)/d + 1;
+                long k = d + velocity;
+                long c = (long)paddleY + d - target;
+                fail = (k > 0) ? Math.floorDiv(c, k) + 1 : Long.MAX_VALUE;
+                if (fail > unclamped)
+                {
+                    long first = unclamped + 1;
+                    if (lo < target + velocity*first) fail = first;
+                    else fail = (velocity > 0) ? Math.max(first, Math.floorDiv((long)lo - target, velocity) + 1) : Long.MAX_VALUE;
+                }
+            }
+            else
+            {   // holds while min(hi, paddleY + d*(i-1)) < target + velocity*i
+                long unclamped = (hi - paddleY)/d + 1;
+                long k = d - velocity;
+                long c = (long)target + d - paddleY;
+                fail = (k > 0) ? Math.max(1, ceilDiv(c, k)) : Long.MAX_VALUE;
+                if (fail > unclamped)
+                {
+                    long first = unclamped + 1;
+                    if (hi >= target + velocity*first) fail = first;
+                    else fail = (velocity < 0) ? Math.max(first, ceilDiv((long)target - hi, -velocity)) : Long.MAX_VALUE;
+                }
+            }
+            long moves = Math.min(fail - 1, n - j);
+            paddleY = up ? (int)Math.max(lo, paddleY - d*moves) : (int)Math.min(hi, paddleY + d*moves);
+            j += (int)moves;
+        }
+        return paddleY;
+    }
+    
+    private static int ceilDiv(int a, int b)
+    {
+        return -Math.floorDiv(-a, b);
+    }
+    
+    private static long ceilDiv(long a, long b)
+    {
+        return -Math.floorDiv(-a, b);
+    }
+    
     /**
      * updateBall: moves the ball one unit according to dx, dy<br>
      * - moves ball one screen-refresh unit (dx,dy)<br>
@@ -553,11 +1163,33 @@ public class PongGame {
      *   of the paddle if the ball hits the near side of the paddle
      */
     public void updateBall()
+    {
+        if (replayRecorder != null) replayRecorder.tick();
+        if (positionHistory != null && decisionInterval[1] == 0 && decisionInterval[2] == 0)
+        {   // the state before this tick becomes frame 1
+            recordPositionHistory(x, y, playerOneY, playerTwoY);
+        }
+        slowTickEvent.begin();
+        updateBallPosition();
+        slowTickEvent.end();
+        if (slowTickEvent.shouldCommit())
+        {
+            slowTickEvent.configuration = describeConfiguration();
+            slowTickEvent.tick = numTicks;
+            slowTickEvent.commit();
+        }
+        for (PongTickListener listener : tickListeners)
+        {
+            listener.tickCompleted(this);
+        }
+    }
+    
+    private void updateBallPosition()
     {
         /*
         if (tempCount == 125)
         {
-            drawSingleFrame(getGamePixelFrames()[0]);
+            PongFrameView.showPixels(getGamePixelFrames()[0], width, height);
             System.out.println(getGamePositionFrames()[0][3]);
             System.out.println(getGamePositionFrames()[1][2]);
             System.out.println(getGamePositionFrames()[2][1]);
@@ -565,6 +1197,8 @@ public class PongGame {
         }
         */
         
+        numTicks++;
+        
         // update position
         x += dx;
         y += dy;
@@ -617,6 +1251,7 @@ public class PongGame {
                 if (dy>=maxdy) dy = maxdy;
             }
             
+            if (statistics != null) statistics.recordPaddleHit(1, y - playerOneY);
             x = 1;
             dx = -1*dx;
             numVolleys++;
@@ -656,6 +1291,7 @@ public class PongGame {
                 if (dy>=maxdy) dy = maxdy;
             }
 
+            if (statistics != null) statistics.recordPaddleHit(2, y - playerTwoY);
             x = width - 1;
             dx = -1*dx;
             numVolleys++;
@@ -677,7 +1313,7 @@ public class PongGame {
         {
             if ((x > width) || (x < 0))
             {
-                startNewGame();
+                serve();            // (part of the tick: not a serve of the replay log)
                 return false;
             }
         }
@@ -686,18 +1322,49 @@ public class PongGame {
         { 
             gameOver = true;
             playerOneScore++;
-            System.out.println("player one wins game");
+            if (statistics != null) statistics.recordPoint(1, serveToPlayer, numVolleys, numTicks);
+            if (PongInstrumentation.ENABLED) PongInstrumentation.countGame();
+            commitFlightEvents(1);
+            if (verbose) System.out.println("player one wins game");
         }
         // did player two score?
         if (x < 0)
         {
             gameOver = true;
             playerTwoScore++;
-            System.out.println("player two wins game");
+            if (statistics != null) statistics.recordPoint(2, serveToPlayer, numVolleys, numTicks);
+            if (PongInstrumentation.ENABLED) PongInstrumentation.countGame();
+            commitFlightEvents(2);
+            if (verbose) System.out.println("player two wins game");
         }
         return gameOver;
     }
     
+    private void commitFlightEvents(int winner)
+    {   // flight recorder: ends the game event, and the match event if
+        // this point won the match
+        gameEvent.end();
+        if (gameEvent.shouldCommit())
+        {
+            gameEvent.configuration = describeConfiguration();
+            gameEvent.winner = winner;
+            gameEvent.volleys = numVolleys;
+            gameEvent.ticks = numTicks;
+            gameEvent.commit();
+        }
+        if (!isMatchOver()) return;
+        matchEventStarted = false;
+        matchEvent.end();
+        if (matchEvent.shouldCommit())
+        {
+            matchEvent.configuration = describeConfiguration();
+            matchEvent.winner = winner;
+            matchEvent.playerOneScore = playerOneScore;
+            matchEvent.playerTwoScore = playerTwoScore;
+            matchEvent.commit();
+        }
+    }
+    
     /**
      * isMatchOver: checks if match is over<br>
      * - match is over if either player has reached the winning score
@@ -719,6 +1386,7 @@ public class PongGame {
      */
     public void movePlayerOnePaddle(int py)
     {
+        if (replayRecorder != null) replayRecorder.move(1, py);
         playerOneY += py;
         if (playerOneY - paddleHeight/2 <= 0) playerOneY = paddleHeight/2;
         if (playerOneY + paddleHeight/2 >= height) playerOneY = height - paddleHeight/2;
@@ -734,11 +1402,33 @@ public class PongGame {
      */
     public void movePlayerTwoPaddle(int py)
     {
+        if (replayRecorder != null) replayRecorder.move(2, py);
         playerTwoY += py;
         if (playerTwoY - paddleHeight/2 <= 0) playerTwoY = paddleHeight/2;
         if (playerTwoY + paddleHeight/2 >= height) playerTwoY = height - paddleHeight/2;
     }
     
+    /**
+     * setPositions: overwrites the ball, paddle positions and scores<br>
+     * - used by a networked client, whose game state comes from the host
+     * 
+     * @param ballX ball x position
+     * @param ballY ball y position
+     * @param playerOneY player one paddle center position
+     * @param playerTwoY player two paddle center position
+     * @param playerOneScore player one score
+     * @param playerTwoScore player two score
+     */
+    public void setPositions(int ballX, int ballY, int playerOneY, int playerTwoY, int playerOneScore, int playerTwoScore)
+    {
+        this.x = ballX;
+        this.y = ballY;
+        this.playerOneY = playerOneY;
+        this.playerTwoY = playerTwoY;
+        this.playerOneScore = playerOneScore;
+        this.playerTwoScore = playerTwoScore;
+    }
+    
     /**
      * is the left-player human?
      * 
@@ -875,6 +1565,14 @@ public class PongGame {
                 return x;
             case BALL_Y:
                 return y;
+            case BALL_DX:
+                return dx;
+            case BALL_DY:
+                return dy;
+            case NUM_VOLLEYS:
+                return numVolleys;
+            case NUM_TICKS:
+                return numTicks;
             default:
                 return 0;
         }
@@ -0,0 +1,654 @@
+/*
+ * PongGameArchive - millions of recorded games in segment files, with a queryable index
+ */
+package mlwithpong;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.zip.CRC32C;
+
+/**
+ * PongGameArchive: an append-only store of recorded games (frames of x, y,
+ * playerOneY, playerTwoY, as in the txt files of the Python ML code) with
+ * an index of their metadata<br>
+ * - games are compressed one by one and appended to segment files of at
+ *   most segmentBytes; a game is a varint frame count, then per pair of
+ *   frames a byte of two 4-bit masks (which fields are not predicted) and
+ *   the zigzag varints of the fields that are not: every field is
+ *   predicted to keep its velocity (the delta of the delta), so a frame
+ *   of a straight flight and steady paddles costs half a byte<br>
+ * - the index holds, per game, its configuration, source model, winner,
+ *   volleys, length in frames and place in its segment; it is kept in
+ *   memory by columns, so find() scans millions of games without reading
+ *   a segment<br>
+ * - readers take no lock: a game is published by a volatile store of the
+ *   game count after its data and index entry are complete, index chunks
+ *   and segment lists are replaced (never changed) when they grow, and
+ *   games are read with positional reads, which do not move a channel's
+ *   position; append() is serialized with other appends only<br>
+ * - every game has a CRC32C, checked when it is read; every index entry
+ *   and string has its own CRC32C, and opening the archive cuts off a torn
+ *   tail of the index or the strings, and any game data after the last
+ *   indexed game<br>
+ * - appends are on the disk after sync() or close()
+ * <p>
+ * Files: segment-NNNNN.pga (int MAGIC_SEGMENT, byte VERSION, games),
+ * index.pga (int MAGIC_INDEX, byte VERSION, entries of INDEX_ENTRY_BYTES),
+ * strings.pga (int MAGIC_STRINGS, byte VERSION, then int length, UTF-8
+ * bytes, int CRC32C per configuration or model name)
+ */
+public class PongGameArchive implements Closeable {
+
+    public static final int  MAGIC_SEGMENT = 0x50474153; // "PGAS"
+    public static final int  MAGIC_INDEX   = 0x50474149; // "PGAI"
+    public static final int  MAGIC_STRINGS = 0x50474154; // "PGAT"
+    public static final byte VERSION       = 1;
+
+    public static final int ANY = -1;                   // Query: any winner
+
+    private static final int HEADER_BYTES      = 5;
+    private static final int INDEX_ENTRY_BYTES = 40;    // location, length, frames, volleys, winner, configuration, model, game CRC, entry CRC
+    private static final int CHUNK_BITS        = 16;
+    private static final int CHUNK_SIZE        = 1 << CHUNK_BITS;
+    private static final int OFFSET_BITS       = 40;    // location: segment << 40 | offset
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final FileChannel indexChannel;
+    private final FileChannel stringsChannel;
+
+    // published to readers (volatile count last)
+    private volatile Chunk[] chunks = new Chunk[0];
+    private volatile FileChannel[] segments = new FileChannel[0];
+    private volatile String[] strings = new String[0];
+    private volatile int count = 0;
+
+    // guarded by this (appends)
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private final CRC32C crc = new CRC32C();
+    private final ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+    private ByteBuffer encoded = ByteBuffer.allocate(1 << 16);
+    private long segmentPosition;
+    private boolean closed = false;
+
+    /**
+     * PongGameArchive Constructor: opens (or creates) an archive
+     *
+     * @param directory directory of the archive (created if needed)
+     * @param segmentBytes size at which a new segment file is started (e.g. 256 MB)
+     * @throws IOException if the archive cannot be opened, or is not an archive
+     */
+    public PongGameArchive(Path directory, long segmentBytes) throws IOException
+    {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        stringsChannel = open(directory.resolve("strings.pga"), MAGIC_STRINGS);
+        indexChannel   = open(directory.resolve("index.pga"), MAGIC_INDEX);
+        loadStrings();
+        List<FileChannel> found = new ArrayList<>();
+        for (int s = 0; Files.exists(segmentPath(s)); s++) found.add(open(segmentPath(s), MAGIC_SEGMENT));
+        if (found.isEmpty()) found.add(open(segmentPath(0), MAGIC_SEGMENT));
+        segments = found.toArray(new FileChannel[0]);
+        loadIndex();
+    }
+
+    /**
+     * append: compresses a game into the archive
+     *
+     * @param configuration configuration of the game (PongGame.describeConfiguration)
+     * @param model source of the game, e.g. the model that played it
+     * @param winner 1 or 2, or 0 if unknown
+     * @param volleys volleys played (paddle hits)
+     * @param frames x, y, playerOneY, playerTwoY of every frame
+     * @param numFrames frames in the array
+     * @return long id of the game
+     * @throws IOException if the archive cannot be written
+     */
+    public synchronized long append(String configuration, String model, int winner, int volleys,
+                                    int[] frames, int numFrames) throws IOException
+    {
+        if (closed) throw new IOException("archive is closed");
+        encode(frames, numFrames);
+        crc.reset();
+        crc.update(encoded.array(), 0, encoded.limit());
+        int gameCrc = (int)crc.getValue();
+
+        FileChannel[] current = segments;
+        if (segmentPosition + encoded.limit() > segmentBytes && segmentPosition > HEADER_BYTES)
+        {   // start a new segment (its list is replaced, not changed: readers may hold the old one)
+            current[current.length - 1].force(false);       // (sync() forces the newest segment only)
+            current = Arrays.copyOf(current, current.length + 1);
+            current[current.length - 1] = open(segmentPath(current.length - 1), MAGIC_SEGMENT);
+            segments = current;
+            segmentPosition = HEADER_BYTES;
+        }
+        int segment = current.length - 1;
+        long offset = segmentPosition;
+        writeFully(current[segment], encoded, offset);
+        segmentPosition += encoded.limit();
+
+        int configurationId = intern(configuration);
+        int modelId = intern(model);
+        long location = ((long)segment << OFFSET_BITS) | offset;
+        entry.clear();
+        entry.putLong(location).putInt(encoded.limit()).putInt(numFrames).putInt(volleys)
+             .putInt(winner).putInt(configurationId).putInt(modelId).putInt(gameCrc);
+        crc.reset();
+        crc.update(entry.array(), 0, INDEX_ENTRY_BYTES - 4);
+        entry.putInt((int)crc.getValue());
+        entry.flip();
+        int id = count;
+        writeFully(indexChannel, entry, HEADER_BYTES + (long)id*INDEX_ENTRY_BYTES);
+
+        add(id, location, encoded.limit(), numFrames, volleys, winner, configurationId, modelId, gameCrc);
+        count = id + 1;                     // publishes the game
+        return id;
+    }
+
+    /**
+     * importSavedGame: appends a txt file of the Python ML code
+     * (# width height paddleHeight dataCount, then one number per line)<br>
+     * - the winner is the side the ball did not leave by in the last frame,
+     *   and the volleys are counted as reversals of the ball's direction
+     *   (see countVolleys)
+     *
+     * @param file txt file of the game
+     * @param model source of the game
+     * @return long id of the game
+     * @throws IOException if the file cannot be read or the archive written
+     */
+    public long importSavedGame(Path file, String model) throws IOException
+    {
+        int width;
+        int height;
+        int paddleHeight;
+        int dataCount;
+        int[] frames;
+        try (BufferedReader reader = Files.newBufferedReader(file))
+        {
+            String header = reader.readLine();
+            try {
+                StringTokenizer tokenizer = new StringTokenizer(header, " ");
+                tokenizer.nextToken(); // #
+                width        = Integer.parseInt(tokenizer.nextToken());
+                height       = Integer.parseInt(tokenizer.nextToken());
+                paddleHeight = Integer.parseInt(tokenizer.nextToken());
+                dataCount    = Integer.parseInt(tokenizer.nextToken());
+                frames = new int[dataCount - dataCount % 4];
+                for (int i = 0; i < frames.length; i++) frames[i] = Integer.parseInt(reader.readLine().trim());
+            }
+            catch (RuntimeException re) {
+                throw new IOException(file + ": not a saved game (" + re + ")");
+            }
+        }
+        int numFrames = frames.length/4;
+        int winner = (numFrames == 0) ? 0 : (frames[4*(numFrames - 1)] < width/2) ? 2 : 1;
+        String configuration = width + "x" + height + " paddle" + paddleHeight;
+        return append(configuration, model, winner, countVolleys(frames, numFrames, width), frames, numFrames);
+    }
+
+    /**
+     * countVolleys: volleys of a recorded game, counted as the frames where
+     * the ball reverses its horizontal direction (a jump of a quarter of the
+     * width or more is a serve, not a volley)
+     *
+     * @param frames x, y, playerOneY, playerTwoY of every frame
+     * @param numFrames frames in the array
+     * @param width width of the game
+     * @return int volleys
+     */
+    public static int countVolleys(int[] frames, int numFrames, int width)
+    {
+        int volleys = 0;
+        int lastDx = 0;
+        for (int f = 1; f < numFrames; f++)
+        {
+            int dx = frames[4*f] - frames[4*(f - 1)];
+            if (Math.abs(dx) >= width/4)
+            {
+                lastDx = 0;
+                continue;
+            }
+            if (dx != 0)
+            {
+                if (lastDx != 0 && (dx > 0) != (lastDx > 0)) volleys++;
+                lastDx = dx;
+            }
+        }
+        return volleys;
+    }
+
+    /**
+     * getCount: games in the archive (ids 0 to count - 1)
+     *
+     * @return long number of games
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * getInfo: the index entry of a game
+     *
+     * @param id id of the game
+     * @return GameInfo its metadata
+     */
+    public GameInfo getInfo(long id)
+    {
+        int n = count;
+        if (id < 0 || id >= n) throw new IllegalArgumentException("no game " + id);
+        Chunk chunk = chunks[(int)(id >>> CHUNK_BITS)];
+        int i = (int)(id & (CHUNK_SIZE - 1));
+        String[] names = strings;
+        return new GameInfo(id, names[chunk.configuration[i]], names[chunk.model[i]], chunk.winner[i],
+                            chunk.volleys[i], chunk.frames[i], chunk.length[i]);
+    }
+
+    /**
+     * readFrames: decompresses a game (safe from any number of threads,
+     * during appends)
+     *
+     * @param id id of the game
+     * @return int[] x, y, playerOneY, playerTwoY of every frame
+     * @throws IOException if the game cannot be read or is damaged
+     */
+    public int[] readFrames(long id) throws IOException
+    {
+        int n = count;
+        if (id < 0 || id >= n) throw new IllegalArgumentException("no game " + id);
+        Chunk chunk = chunks[(int)(id >>> CHUNK_BITS)];
+        int i = (int)(id & (CHUNK_SIZE - 1));
+        long location = chunk.location[i];
+        FileChannel channel = segments[(int)(location >>> OFFSET_BITS)];
+        ByteBuffer data = ByteBuffer.allocate(chunk.length[i]);
+        long position = location & ((1L << OFFSET_BITS) - 1);
+        while (data.hasRemaining())
+        {
+            if (channel.read(data, position + data.position()) < 0) throw new IOException("game " + id + " is cut off");
+        }
+        CRC32C check = new CRC32C();
+        check.update(data.array(), 0, data.limit());
+        if ((int)check.getValue() != chunk.crc[i]) throw new IOException("game " + id + " is damaged (CRC mismatch)");
+        data.flip();
+        return decode(data);
+    }
+
+    /**
+     * find: ids of the games that match a query, in the order they were appended
+     *
+     * @param query the filters
+     * @return long[] ids of the matching games
+     */
+    public long[] find(Query query)
+    {
+        int n = count;                        // (the chunks and strings are at least this new)
+        Chunk[] snapshot = chunks;
+        int configurationId = (query.configuration == null) ? ANY : lookup(query.configuration);
+        int modelId = (query.model == null) ? ANY : lookup(query.model);
+        if ((query.configuration != null && configurationId == ANY) || (query.model != null && modelId == ANY))
+        {
+            return new long[0];               // a name no game has
+        }
+        long[] ids = new long[64];
+        int found = 0;
+        for (int c = 0; c*CHUNK_SIZE < n; c++)
+        {
+            Chunk chunk = snapshot[c];
+            int end = Math.min(CHUNK_SIZE, n - c*CHUNK_SIZE);
+            for (int i = 0; i < end; i++)
+            {
+                if (configurationId != ANY && chunk.configuration[i] != configurationId) continue;
+                if (modelId != ANY && chunk.model[i] != modelId) continue;
+                if (query.winner != ANY && chunk.winner[i] != query.winner) continue;
+                if (chunk.volleys[i] < query.minVolleys || chunk.volleys[i] > query.maxVolleys) continue;
+                if (chunk.frames[i] < query.minFrames || chunk.frames[i] > query.maxFrames) continue;
+                if (found == ids.length) ids = Arrays.copyOf(ids, 2*found);
+                ids[found++] = ((long)c << CHUNK_BITS) | i;
+            }
+        }
+        return Arrays.copyOf(ids, found);
+    }
+
+    /**
+     * sync: forces the appended games to the disk (data, then names, then index)
+     *
+     * @throws IOException if the archive cannot be written
+     */
+    public synchronized void sync() throws IOException
+    {
+        segments[segments.length - 1].force(false);
+        stringsChannel.force(false);
+        indexChannel.force(false);
+    }
+
+    /**
+     * getBytes: size of the compressed games
+     *
+     * @return long bytes in the segment files
+     * @throws IOException if a segment cannot be read
+     */
+    public long getBytes() throws IOException
+    {
+        long bytes = 0;
+        for (FileChannel segment : segments) bytes += segment.size() - HEADER_BYTES;
+        return bytes;
+    }
+
+    /**
+     * close: syncs and closes the archive (after its readers are done)
+     *
+     * @throws IOException if the archive cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if (closed) return;
+        sync();
+        closed = true;
+        for (FileChannel segment : segments) segment.close();
+        stringsChannel.close();
+        indexChannel.close();
+    }
+
+    // a pair of frames: one byte of two 4-bit masks of the fields that miss their prediction, then those fields
+    private void encode(int[] frames, int numFrames)
+    {
+        encoded.clear();
+        ensure(5);
+        VarInts.writeVarint(encoded, numFrames);
+        for (int f = 0; f < numFrames; f += 2)
+        {
+            ensure(1 + 2*4*5);
+            int maskAt = encoded.position();
+            encoded.put((byte)0);
+            int masks = 0;
+            for (int g = f; g < Math.min(f + 2, numFrames); g++)
+            {
+                int mask = 0;
+                for (int field = 0; field < 4; field++)
+                {
+                    int residual = frames[4*g + field] - predict(frames, g, field);
+                    if (residual != 0)
+                    {
+                        mask |= 1 << field;
+                        VarInts.writeVarint(encoded, VarInts.zigZag(residual));
+                    }
+                }
+                masks |= mask << (4*(g - f));
+            }
+            encoded.put(maskAt, (byte)masks);
+        }
+        encoded.flip();
+    }
+
+    private static int[] decode(ByteBuffer data)
+    {
+        int numFrames = VarInts.readVarint(data);
+        int[] frames = new int[4*numFrames];
+        for (int f = 0; f < numFrames; f += 2)
+        {
+            int masks = data.get() & 0xFF;
+            for (int g = f; g < Math.min(f + 2, numFrames); g++)
+            {
+                int mask = masks >>> (4*(g - f));
+                for (int field = 0; field < 4; field++)
+                {
+                    int residual = ((mask & (1 << field)) != 0) ? VarInts.unZigZag(VarInts.readVarint(data)) : 0;
+                    frames[4*g + field] = predict(frames, g, field) + residual;
+                }
+            }
+        }
+        return frames;
+    }
+
+    // every field keeps its velocity (a CPU paddle too: it follows the ball one step a tick)
+    private static int predict(int[] frames, int f, int field)
+    {
+        if (f == 0) return 0;
+        int last = frames[4*(f - 1) + field];
+        if (f == 1) return last;
+        return 2*last - frames[4*(f - 2) + field];
+    }
+
+    private void ensure(int bytes)
+    {
+        if (encoded.remaining() >= bytes) return;
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(2*encoded.capacity(), encoded.position() + bytes));
+        encoded.flip();
+        larger.put(encoded);
+        encoded = larger;
+    }
+
+    // id of a name, appending it to the strings file if it is new
+    private int intern(String name) throws IOException
+    {
+        Integer id = stringIds.get(name);
+        if (id != null) return id;
+        byte[] utf = name.getBytes(StandardCharsets.UTF_8);
+        crc.reset();
+        crc.update(utf, 0, utf.length);
+        ByteBuffer record = ByteBuffer.allocate(8 + utf.length);
+        record.putInt(utf.length).put(utf).putInt((int)crc.getValue());
+        record.flip();
+        writeFully(stringsChannel, record, stringsChannel.size());
+        String[] grown = Arrays.copyOf(strings, strings.length + 1);
+        grown[grown.length - 1] = name;
+        strings = grown;
+        stringIds.put(name, grown.length - 1);
+        return grown.length - 1;
+    }
+
+    private int lookup(String name)
+    {
+        String[] names = strings;
+        for (int s = 0; s < names.length; s++) if (names[s].equals(name)) return s;
+        return ANY;
+    }
+
+    private void add(int id, long location, int length, int frames, int volleys, int winner,
+                     int configuration, int model, int gameCrc)
+    {
+        int c = id >>> CHUNK_BITS;
+        if (c == chunks.length)
+        {   // a new chunk (the directory is replaced, not changed: readers may hold the old one)
+            Chunk[] grown = Arrays.copyOf(chunks, c + 1);
+            grown[c] = new Chunk();
+            chunks = grown;
+        }
+        Chunk chunk = chunks[c];
+        int i = id & (CHUNK_SIZE - 1);
+        chunk.location[i]      = location;
+        chunk.length[i]        = length;
+        chunk.frames[i]        = frames;
+        chunk.volleys[i]       = volleys;
+        chunk.winner[i]        = (byte)winner;
+        chunk.configuration[i] = configuration;
+        chunk.model[i]         = model;
+        chunk.crc[i]           = gameCrc;
+    }
+
+    private void loadStrings() throws IOException
+    {
+        long size = stringsChannel.size();
+        long position = HEADER_BYTES;
+        List<String> names = new ArrayList<>();
+        ByteBuffer length = ByteBuffer.allocate(4);
+        while (position + 8 <= size)
+        {
+            length.clear();
+            stringsChannel.read(length, position);
+            int n = length.getInt(0);
+            if (n < 0 || position + 8 + n > size) break;
+            ByteBuffer record = ByteBuffer.allocate(n + 4);
+            stringsChannel.read(record, position + 4);
+            crc.reset();
+            crc.update(record.array(), 0, n);
+            if ((int)crc.getValue() != record.getInt(n)) break;
+            String name = new String(record.array(), 0, n, StandardCharsets.UTF_8);
+            stringIds.put(name, names.size());
+            names.add(name);
+            position += 8 + n;
+        }
+        stringsChannel.truncate(position);
+        strings = names.toArray(new String[0]);
+    }
+
+    // reads the index up to its first bad entry, and cuts the files after the last good game
+    private void loadIndex() throws IOException
+    {
+        long size = indexChannel.size();
+        long[] segmentSizes = new long[segments.length];
+        for (int s = 0; s < segments.length; s++) segmentSizes[s] = segments[s].size();
+        ByteBuffer record = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+        int n = 0;
+        int lastSegment = 0;
+        long lastEnd = HEADER_BYTES;
+        while (HEADER_BYTES + (long)(n + 1)*INDEX_ENTRY_BYTES <= size)
+        {
+            record.clear();
+            indexChannel.read(record, HEADER_BYTES + (long)n*INDEX_ENTRY_BYTES);
+            crc.reset();
+            crc.update(record.array(), 0, INDEX_ENTRY_BYTES - 4);
+            if ((int)crc.getValue() != record.getInt(INDEX_ENTRY_BYTES - 4)) break;
+            long location = record.getLong(0);
+            int length = record.getInt(8);
+            int segment = (int)(location >>> OFFSET_BITS);
+            long offset = location & ((1L << OFFSET_BITS) - 1);
+            int configuration = record.getInt(24);
+            int model = record.getInt(28);
+            if (segment >= segments.length || offset + length > segmentSizes[segment]
+                || configuration >= strings.length || model >= strings.length) break;
+            add(n, location, length, record.getInt(12), record.getInt(16), record.getInt(20),
+                configuration, model, record.getInt(32));
+            lastSegment = segment;
+            lastEnd = offset + length;
+            n++;
+        }
+        indexChannel.truncate(HEADER_BYTES + (long)n*INDEX_ENTRY_BYTES);
+        // appends continue after the last indexed game (the data of an unindexed one is overwritten)
+        if (lastSegment < segments.length - 1)
+        {
+            for (int s = lastSegment + 1; s < segments.length; s++) segments[s].close();
+            for (int s = lastSegment + 1; s < segments.length; s++) Files.delete(segmentPath(s));
+            segments = Arrays.copyOf(segments, lastSegment + 1);
+        }
+        segments[segments.length - 1].truncate(lastEnd);
+        segmentPosition = lastEnd;
+        count = n;
+    }
+
+    private Path segmentPath(int segment)
+    {
+        return directory.resolve(String.format("segment-%05d.pga", segment));
+    }
+
+    private static FileChannel open(Path file, int magic) throws IOException
+    {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        if (channel.size() == 0)
+        {
+            header.putInt(magic).put(VERSION);
+            header.flip();
+            writeFully(channel, header, 0);
+        }
+        else
+        {
+            channel.read(header, 0);
+            if (header.position() < HEADER_BYTES || header.getInt(0) != magic || header.get(4) != VERSION)
+            {
+                channel.close();
+                throw new IOException(file + " is not a game archive file");
+            }
+        }
+        return channel;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) channel.write(buffer, position + buffer.position() - start);
+    }
+
+    /**
+     * Query: filters of find(); unset filters match every game
+     */
+    public static final class Query {
+        String configuration = null;
+        String model = null;
+        int winner = ANY;
+        int minVolleys = 0;
+        int maxVolleys = Integer.MAX_VALUE;
+        int minFrames = 0;
+        int maxFrames = Integer.MAX_VALUE;
+
+        public Query configuration(String configuration) { this.configuration = configuration; return this; }
+        public Query model(String model)                 { this.model = model; return this; }
+        public Query winner(int winner)                  { this.winner = winner; return this; }
+        public Query minVolleys(int volleys)             { this.minVolleys = volleys; return this; }
+        public Query maxVolleys(int volleys)             { this.maxVolleys = volleys; return this; }
+        public Query minFrames(int frames)               { this.minFrames = frames; return this; }
+        public Query maxFrames(int frames)               { this.maxFrames = frames; return this; }
+    }
+
+    /**
+     * GameInfo: the index entry of one game
+     */
+    public static final class GameInfo {
+        private final long id;
+        private final String configuration;
+        private final String model;
+        private final int winner;
+        private final int volleys;
+        private final int frames;
+        private final int bytes;
+
+        GameInfo(long id, String configuration, String model, int winner, int volleys, int frames, int bytes)
+        {
+            this.id = id;
+            this.configuration = configuration;
+            this.model = model;
+            this.winner = winner;
+            this.volleys = volleys;
+            this.frames = frames;
+            this.bytes = bytes;
+        }
+
+        public long   getId()            { return id; }
+        public String getConfiguration() { return configuration; }
+        public String getModel()         { return model; }
+        public int    getWinner()        { return winner; }
+        public int    getVolleys()       { return volleys; }
+        public int    getFrames()        { return frames; }
+        public int    getBytes()         { return bytes; }
+    }
+
+    /**
+     * Chunk: CHUNK_SIZE index entries, by column
+     */
+    private static final class Chunk {
+        final long[] location     = new long[CHUNK_SIZE];
+        final int[] length        = new int[CHUNK_SIZE];
+        final int[] frames        = new int[CHUNK_SIZE];
+        final int[] volleys       = new int[CHUNK_SIZE];
+        final byte[] winner       = new byte[CHUNK_SIZE];
+        final int[] configuration = new int[CHUNK_SIZE];
+        final int[] model         = new int[CHUNK_SIZE];
+        final int[] crc           = new int[CHUNK_SIZE];
+    }
+}
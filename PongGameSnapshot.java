@@ -0,0 +1,90 @@
+/*
+ * PongGameSnapshot - a copy of the state of a PongGame
+ */
+package mlwithpong;
+
+/**
+ * PongGameSnapshot<br>
+ * - the state of a PongGame at one tick, made by PongGame.snapshot() and
+ *   put back with PongGame.restore()<br>
+ * - a few ints, plus (optionally) a copy of the observation history and
+ *   of the CPU decisions in progress; the history array is allocated once
+ *   and reused, so taking snapshots into the same object again allocates
+ *   nothing
+ */
+public class PongGameSnapshot {
+
+    int x;
+    int y;
+    int dx;
+    int dy;
+    int playerOneY;
+    int playerTwoY;
+    int playerOneScore;
+    int playerTwoScore;
+    int numVolleys;
+    int numTicks;
+    int serveToPlayer;
+    boolean gameOver;
+
+    boolean hasFrames = false;
+    int[] history = null;       // copy of the position history ring, if hasFrames and the game kept one
+    int historyHead;
+    int historyCount;
+    int decisionFrameTick;
+    final int[] decisionFrame = new int[4];
+    final int[] decisionTick  = new int[3];
+    final int[] decidedMove   = new int[3];
+
+    /**
+     * copyFrom: makes this snapshot a copy of another one
+     *
+     * @param other snapshot to copy
+     */
+    public void copyFrom(PongGameSnapshot other)
+    {
+        x = other.x;
+        y = other.y;
+        dx = other.dx;
+        dy = other.dy;
+        playerOneY = other.playerOneY;
+        playerTwoY = other.playerTwoY;
+        playerOneScore = other.playerOneScore;
+        playerTwoScore = other.playerTwoScore;
+        numVolleys = other.numVolleys;
+        numTicks = other.numTicks;
+        serveToPlayer = other.serveToPlayer;
+        gameOver = other.gameOver;
+        hasFrames = other.hasFrames;
+        if (hasFrames) copyFrames(other.history, other.historyHead, other.historyCount, other.decisionFrameTick,
+                                  other.decisionFrame, other.decisionTick, other.decidedMove);
+    }
+
+    public int getBallX()          { return x; }
+    public int getBallY()          { return y; }
+    public int getBallDX()         { return dx; }
+    public int getBallDY()         { return dy; }
+    public int getPlayerOneY()     { return playerOneY; }
+    public int getPlayerTwoY()     { return playerTwoY; }
+    public int getPlayerOneScore() { return playerOneScore; }
+    public int getPlayerTwoScore() { return playerTwoScore; }
+    public int getNumVolleys()     { return numVolleys; }
+    public boolean isGameOver()    { return gameOver; }
+
+    void copyFrames(int[] positionHistory, int head, int count, int frameTick,
+                    int[] frame, int[] ticks, int[] moves)
+    {
+        if (positionHistory == null) history = null;
+        else
+        {
+            if (history == null || history.length != positionHistory.length) history = new int[positionHistory.length];
+            System.arraycopy(positionHistory, 0, history, 0, positionHistory.length);
+        }
+        historyHead = head;
+        historyCount = count;
+        decisionFrameTick = frameTick;
+        System.arraycopy(frame, 0, decisionFrame, 0, 4);
+        System.arraycopy(ticks, 0, decisionTick, 0, 3);
+        System.arraycopy(moves, 0, decidedMove, 0, 3);
+    }
+}
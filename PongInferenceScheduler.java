@@ -0,0 +1,265 @@
+/*
+ * PongInferenceScheduler - micro-batched inference for many games sharing one policy
+ */
+package mlwithpong;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * PongInferenceScheduler: one PongBatchPolicy serving many games<br>
+ * - every game thread plays with its own Client (a PongPlayer); a Client
+ *   that is asked for a move writes its observation into a slot of the
+ *   batch being filled and waits<br>
+ * - the scheduler thread runs a batch when it is full, or when its oldest
+ *   request has waited maxLatencyMicros, with one model call; while the
+ *   model runs, new requests fill the other of two batches<br>
+ * - nothing is allocated per request: batches and Clients are allocated
+ *   once, observations are written in place and moves are handed back
+ *   through the Client<br>
+ * - the left paddle sees the mirrored observation, as in PongSelfPlay, so
+ *   a model trained on the right paddle plays both sides<br>
+ * - records a histogram of batch sizes and of queue latency (microseconds
+ *   from a request to the start of its batch)<br>
+ * <p>
+ * Waiting uses locks and conditions rather than monitors, so game threads
+ * may also be virtual threads on a JVM that has them.
+ */
+public class PongInferenceScheduler implements AutoCloseable {
+
+    private final PongBatchPolicy model;
+    private final PongObservation observation;
+    private final PongObservation mirroredObservation;
+    private final int size;                      // floats per observation
+    private final int maxBatch;
+    private final long maxLatencyNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition batchReady = lock.newCondition();    // signalled to the scheduler thread
+    private final Condition movesReady = lock.newCondition();    // signalled to waiting clients
+    private Batch filling;
+    private Batch spare;
+    private boolean closed = false;
+    private final Thread thread;
+
+    private final LogHistogram batchSizes = new LogHistogram();
+    private final LogHistogram queueMicros = new LogHistogram();
+
+    /**
+     * PongInferenceScheduler Constructor: starts the scheduler thread
+     *
+     * @param model policy, trained on the right paddle
+     * @param observation what the model sees (one of PongObservations)
+     * @param pongGame a game with the configuration of the games served
+     * @param maxBatch most requests in one model call
+     * @param maxLatencyMicros longest a request waits for its batch to start
+     */
+    public PongInferenceScheduler(PongBatchPolicy model, PongObservation observation, PongGame pongGame,
+                                  int maxBatch, long maxLatencyMicros)
+    {
+        this.model = model;
+        this.observation = observation;
+        this.mirroredObservation = PongObservations.mirrored(observation);
+        this.size = observation.getSize(pongGame);
+        this.maxBatch = maxBatch;
+        this.maxLatencyNanos = TimeUnit.MICROSECONDS.toNanos(maxLatencyMicros);
+        this.filling = new Batch();
+        this.spare = new Batch();
+        thread = new Thread(this::run, "pong-inference");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * newClient: a player that asks this scheduler for its moves<br>
+     * - one per game thread; a Client waits for one request at a time
+     *
+     * @return Client a new client
+     */
+    public Client newClient()
+    {
+        return new Client();
+    }
+
+    /**
+     * getBatchSizes: a copy of the histogram of requests per model call
+     *
+     * @return LogHistogram batch sizes
+     */
+    public LogHistogram getBatchSizes()
+    {
+        return copy(batchSizes);
+    }
+
+    /**
+     * getQueueLatency: a copy of the histogram of microseconds from a
+     * request to the start of its model call
+     *
+     * @return LogHistogram queue latencies
+     */
+    public LogHistogram getQueueLatency()
+    {
+        return copy(queueMicros);
+    }
+
+    public void printReport(PrintStream out)
+    {
+        out.println("batch size:           " + getBatchSizes());
+        out.println("queue latency (us):   " + getQueueLatency());
+    }
+
+    /**
+     * close: stops the scheduler thread after the requests already made
+     */
+    @Override
+    public void close()
+    {
+        lock.lock();
+        try {
+            closed = true;
+            batchReady.signal();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private LogHistogram copy(LogHistogram histogram)
+    {
+        LogHistogram result = new LogHistogram();
+        lock.lock();
+        try {
+            result.add(histogram);
+        }
+        finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    // the scheduler thread: waits for a batch to be due, runs it, hands the moves back
+    private void run()
+    {
+        while (true)
+        {
+            Batch batch;
+            lock.lock();
+            try {
+                while (true)
+                {
+                    Batch b = filling;
+                    if (b.count == 0)
+                    {
+                        if (closed) return;
+                        batchReady.await();
+                        continue;
+                    }
+                    boolean complete = (b.written == b.count);
+                    long wait = b.firstRequestNanos + maxLatencyNanos - System.nanoTime();
+                    if (complete && (b.count == maxBatch || closed || wait <= 0)) break;
+                    if (wait > 0) batchReady.awaitNanos(wait);
+                    else batchReady.await();        // past the deadline: wait for the slots being written
+                }
+                batch = filling;
+                filling = spare;
+                spare = null;
+            }
+            catch (InterruptedException ie) {
+                return;
+            }
+            finally {
+                lock.unlock();
+            }
+
+            long start = System.nanoTime();
+            model.choosePaddleMoves(batch.observations, size, batch.count, batch.moves);
+
+            lock.lock();
+            try {
+                batchSizes.record(batch.count);
+                for (int i = 0; i < batch.count; i++)
+                {
+                    queueMicros.record((start - batch.requestNanos[i])/1000L);
+                    Client client = batch.clients[i];
+                    client.move = batch.moves[i];
+                    client.pending = false;
+                    batch.clients[i] = null;
+                }
+                batch.count = 0;
+                batch.written = 0;
+                spare = batch;
+                movesReady.signalAll();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Batch: observations and moves of up to maxBatch requests
+     */
+    private final class Batch {
+        final float[] observations = new float[maxBatch*size];
+        final int[] moves = new int[maxBatch];
+        final Client[] clients = new Client[maxBatch];
+        final long[] requestNanos = new long[maxBatch];
+        int count = 0;                   // slots reserved
+        int written = 0;                 // slots whose observation is written
+        long firstRequestNanos = 0;
+    }
+
+    /**
+     * Client: the PongPlayer of one game, served by the scheduler
+     */
+    public final class Client implements PongPlayer {
+        private int move;
+        private boolean pending;         // guarded by lock
+
+        private Client()
+        {
+        }
+
+        @Override
+        public int choosePaddleMove(PongGame pongGame, int player)
+        {
+            PongObservation view = (player == 1) ? mirroredObservation : observation;
+            pongGame.addObservation(view);   // (only allocates the first time it needs more history)
+            Batch batch;
+            int slot;
+            lock.lock();
+            try {
+                while (filling.count == maxBatch || closed)
+                {
+                    if (closed) throw new IllegalStateException("inference scheduler is closed");
+                    movesReady.awaitUninterruptibly();   // both batches are full: wait for one to finish
+                }
+                batch = filling;
+                slot = batch.count++;
+                batch.clients[slot] = this;
+                batch.requestNanos[slot] = System.nanoTime();
+                if (slot == 0) batch.firstRequestNanos = batch.requestNanos[slot];
+                pending = true;
+            }
+            finally {
+                lock.unlock();
+            }
+
+            // the observation is written outside the lock, into the reserved slot
+            pongGame.observe(view, batch.observations, slot*size);
+
+            lock.lock();
+            try {
+                batch.written++;
+                if (batch.written == batch.count) batchReady.signal();
+                while (pending) movesReady.awaitUninterruptibly();
+                return move;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+    }
+}
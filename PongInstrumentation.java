@@ -0,0 +1,321 @@
+/*
+ * PongInstrumentation - low-overhead counters and sampled phase timings exposed over JMX
+ */
+package mlwithpong;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+/**
+ * PongInstrumentation<br>
+ * - counts ticks, games and matches of every PongGame in the JVM<br>
+ * - times the phases of a tick (updateBall, CPU paddle moves) and the bytes
+ *   allocated per tick, on a random 1-in-SAMPLE_INTERVAL sample of ticks,
+ *   and the observation reads (PongGame.observe) on the same sample rate<br>
+ * - ticks and games per second are computed once a second by a daemon
+ *   thread from snapshots of the counters, so reading them changes nothing<br>
+ * - registers itself as the MBean mlwithpong:type=Instrumentation so that
+ *   jconsole or VisualVM can watch a running simulation or training job<br>
+ * <p>
+ * Switched off by default. Start the JVM with
+ * -Dmlwithpong.instrumentation=true to turn it on. ENABLED is a static final
+ * constant, so when it is false the JIT removes every
+ * "if (PongInstrumentation.ENABLED)" guard and instrumentation costs nothing.<br>
+ * Counters are LongAdders, which stripe their cells per thread, so parallel
+ * simulations do not contend on them.
+ */
+public final class PongInstrumentation implements PongInstrumentationMBean {
+
+    public static final boolean ENABLED = Boolean.getBoolean("mlwithpong.instrumentation");
+
+    public static final int UPDATE_BALL      = 0; // phase: PongGame.updateBall()
+    public static final int CPU_PADDLES      = 1; // phase: algorithmic CPU paddle moves
+    public static final int OBSERVATIONS     = 2; // phase: one PongGame.observe(), sampled on its own
+    private static final int NUM_PHASES      = 3;
+
+    private static final int DEFAULT_SAMPLE_INTERVAL = 64;
+    private static final int SAMPLE_INTERVAL = sampleInterval();
+    private static final long RATE_PERIOD_MILLIS = 1000;  // between two snapshots of the rates
+
+    private static final PongInstrumentation INSTANCE = new PongInstrumentation();
+
+    private static final com.sun.management.ThreadMXBean THREADS = allocationThreadBean();
+    private static final ThreadLocal<long[]> SAMPLE_START = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final LongAdder ticks   = new LongAdder();
+    private final LongAdder games   = new LongAdder();
+    private final LongAdder matches = new LongAdder();
+    private final LongAdder sampledTicks    = new LongAdder();
+    private final LongAdder allocatedBytes  = new LongAdder();
+    private final LongAdder allocationCount = new LongAdder();
+    private final LongAdder[] phaseNanos   = new LongAdder[NUM_PHASES];
+    private final LongAdder[] phaseSamples = new LongAdder[NUM_PHASES];
+
+    private final Rate tickRate = new Rate();
+    private final Rate gameRate = new Rate();
+
+    static {
+        if (ENABLED)
+        {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(
+                        INSTANCE, new ObjectName("mlwithpong:type=Instrumentation"));
+            }
+            catch (Exception e) {
+                System.err.println("PongInstrumentation: could not register MBean: " + e);
+            }
+            Thread sampler = new Thread(INSTANCE::sampleRates, "PongInstrumentation-rates");
+            sampler.setDaemon(true);
+            sampler.start();
+        }
+    }
+
+    private PongInstrumentation()
+    {
+        for (int p = 0; p < NUM_PHASES; p++)
+        {
+            phaseNanos[p]   = new LongAdder();
+            phaseSamples[p] = new LongAdder();
+        }
+    }
+
+    /**
+     * tick: counts one tick and decides if it is timed<br>
+     * - call only inside "if (PongInstrumentation.ENABLED)"<br>
+     * - when this returns true, the caller times its phases with
+     *   startSample(), endPhase() and endSample()
+     *
+     * @return boolean true if this tick is one of the sampled ticks
+     */
+    public static boolean tick()
+    {
+        INSTANCE.ticks.increment();
+        return ThreadLocalRandom.current().nextInt(SAMPLE_INTERVAL) == 0;
+    }
+
+    /**
+     * sample: decides if an event outside the tick loop (an observation read) is timed<br>
+     * - call only inside "if (PongInstrumentation.ENABLED)"
+     *
+     * @return boolean true for a random 1-in-SAMPLE_INTERVAL of the calls
+     */
+    public static boolean sample()
+    {
+        return ThreadLocalRandom.current().nextInt(SAMPLE_INTERVAL) == 0;
+    }
+
+    /**
+     * startSample: starts timing a sampled tick
+     *
+     * @return long the start time of the first phase
+     */
+    public static long startSample()
+    {
+        if (THREADS != null) SAMPLE_START.get()[0] = THREADS.getCurrentThreadAllocatedBytes();
+        return System.nanoTime();
+    }
+
+    /**
+     * endPhase: records the time of one phase of a sampled tick
+     *
+     * @param phase UPDATE_BALL, CPU_PADDLES or OBSERVATIONS
+     * @param startNanos start time of the phase
+     * @return long the end time of the phase, which is the start of the next one
+     */
+    public static long endPhase(int phase, long startNanos)
+    {
+        long now = System.nanoTime();
+        INSTANCE.phaseNanos[phase].add(now - startNanos);
+        INSTANCE.phaseSamples[phase].increment();
+        return now;
+    }
+
+    /**
+     * endSample: finishes a sampled tick and records its allocations
+     */
+    public static void endSample()
+    {
+        INSTANCE.sampledTicks.increment();
+        if (THREADS != null)
+        {
+            INSTANCE.allocatedBytes.add(THREADS.getCurrentThreadAllocatedBytes() - SAMPLE_START.get()[0]);
+            INSTANCE.allocationCount.increment();
+        }
+    }
+
+    /**
+     * countGame: counts a finished game (a scored point)
+     */
+    public static void countGame()
+    {
+        INSTANCE.games.increment();
+    }
+
+    /**
+     * countMatch: counts a finished match
+     */
+    public static void countMatch()
+    {
+        INSTANCE.matches.increment();
+    }
+
+    @Override
+    public long getTicksTotal()
+    {
+        return ticks.sum();
+    }
+
+    @Override
+    public long getGamesTotal()
+    {
+        return games.sum();
+    }
+
+    @Override
+    public long getMatchesTotal()
+    {
+        return matches.sum();
+    }
+
+    @Override
+    public double getTicksPerSecond()
+    {
+        return tickRate.get();
+    }
+
+    @Override
+    public double getGamesPerSecond()
+    {
+        return gameRate.get();
+    }
+
+    @Override
+    public int getSampleInterval()
+    {
+        return SAMPLE_INTERVAL;
+    }
+
+    @Override
+    public long getSampledTicks()
+    {
+        return sampledTicks.sum();
+    }
+
+    @Override
+    public double getMeanUpdateBallNanos()
+    {
+        return meanPhaseNanos(UPDATE_BALL);
+    }
+
+    @Override
+    public double getMeanCpuPaddlesNanos()
+    {
+        return meanPhaseNanos(CPU_PADDLES);
+    }
+
+    @Override
+    public double getMeanObservationNanos()
+    {
+        return meanPhaseNanos(OBSERVATIONS);
+    }
+
+    @Override
+    public double getMeanAllocatedBytesPerTick()
+    {
+        long count = allocationCount.sum();
+        return (count == 0) ? 0.0 : (double)allocatedBytes.sum()/count;
+    }
+
+    @Override
+    public void reset()
+    {
+        ticks.reset();
+        games.reset();
+        matches.reset();
+        sampledTicks.reset();
+        allocatedBytes.reset();
+        allocationCount.reset();
+        for (int p = 0; p < NUM_PHASES; p++)
+        {
+            phaseNanos[p].reset();
+            phaseSamples[p].reset();
+        }
+        tickRate.reset();
+        gameRate.reset();
+    }
+
+    // the rate sampler thread: snapshots the counters every RATE_PERIOD_MILLIS
+    private void sampleRates()
+    {
+        try {
+            while (true)
+            {
+                Thread.sleep(RATE_PERIOD_MILLIS);
+                long now = System.nanoTime();
+                tickRate.sample(ticks.sum(), now);
+                gameRate.sample(games.sum(), now);
+            }
+        }
+        catch (InterruptedException ie) {
+            // JVM shutting down
+        }
+    }
+
+    private static int sampleInterval()
+    {
+        int interval = Integer.getInteger("mlwithpong.instrumentation.sampleInterval", DEFAULT_SAMPLE_INTERVAL);
+        if (interval > 0) return interval;
+        if (ENABLED) System.err.println("PongInstrumentation: sampleInterval must be positive, not " + interval
+                                        + "; using " + DEFAULT_SAMPLE_INTERVAL);
+        return DEFAULT_SAMPLE_INTERVAL;
+    }
+
+    private double meanPhaseNanos(int phase)
+    {
+        long count = phaseSamples[phase].sum();
+        return (count == 0) ? 0.0 : (double)phaseNanos[phase].sum()/count;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationThreadBean()
+    {
+        if (!ENABLED) return null;
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)bean;
+        if (!threads.isThreadAllocatedMemorySupported()) return null;
+        if (!threads.isThreadAllocatedMemoryEnabled()) threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    /**
+     * Rate: events per second between the last two snapshots of a counter
+     */
+    private static class Rate {
+        private long lastCount = 0;
+        private long lastNanos = System.nanoTime();
+        private volatile double rate = 0.0;
+
+        synchronized void sample(long count, long now)
+        {
+            double seconds = (now - lastNanos)/1e9;
+            if (seconds <= 0.0) return;
+            rate = Math.max(0, count - lastCount)/seconds;   // (a reset between snapshots: 0)
+            lastCount = count;
+            lastNanos = now;
+        }
+
+        synchronized void reset()
+        {
+            lastCount = 0;
+            lastNanos = System.nanoTime();
+            rate = 0.0;
+        }
+
+        double get()
+        {
+            return rate;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * PongInstrumentationMBean - JMX view of simulation throughput and phase timings
+ */
+package mlwithpong;
+
+/**
+ * PongInstrumentationMBean<br>
+ * - the attributes and operations that jconsole/VisualVM show under
+ *   mlwithpong:type=Instrumentation<br>
+ * - see PongInstrumentation for how the values are collected
+ */
+public interface PongInstrumentationMBean {
+
+    long getTicksTotal();
+    long getGamesTotal();
+    long getMatchesTotal();
+
+    double getTicksPerSecond();
+    double getGamesPerSecond();
+
+    int getSampleInterval();
+    long getSampledTicks();
+    double getMeanUpdateBallNanos();
+    double getMeanCpuPaddlesNanos();
+    double getMeanObservationNanos();
+    double getMeanAllocatedBytesPerTick();
+
+    void reset();
+}
@@ -0,0 +1,175 @@
+/*
+ * PongNetClient - remote side of a networked 2-player game, with client-side prediction
+ */
+package mlwithpong;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * PongNetClient<br>
+ * - plays player 2 (right) against a PongNetHost on another machine<br>
+ * - the local PongGame is only a display copy: its ball, player 1 paddle and
+ *   scores come from the host's state packets<br>
+ * - the player's own paddle is predicted: every input moves the local paddle
+ *   at once, so the player sees the effect in the same tick no matter how
+ *   long the round trip to the host is<br>
+ * - when a state packet arrives, the paddle is reset to the host's position
+ *   as of the last input the host applied, and every newer input is replayed
+ *   on top of it (reconciliation); a mismatch between the prediction and the
+ *   reconciled position is counted as a correction<br>
+ * - every input packet repeats the last REDUNDANCY inputs, so lost packets
+ *   do not lose inputs
+ */
+public class PongNetClient implements Closeable {
+
+    private static final int REDUNDANCY   = 8;
+    private static final int PENDING_RING = 256;   // unacknowledged inputs kept (power of 2)
+
+    private final PongGame pongGame;
+    private final PongNetLink link;
+    private final SocketAddress host;
+    private final int dyPaddle;
+    private final ByteBuffer packet = ByteBuffer.allocate(PongNetLink.MAX_PACKET);
+
+    private final byte[] pendingInputs = new byte[PENDING_RING];
+    private final long[] sentNanos     = new long[PENDING_RING];
+    private int inputSequence = 0;        // newest input sent
+    private int ackedSequence = 0;        // newest input the host has applied
+    private int lastHostTick  = -1;
+
+    private long corrections    = 0;      // reconciliations that moved the predicted paddle
+    private long correctionSum  = 0;      // total pixels moved by corrections
+    private long roundTrips     = 0;
+    private long roundTripNanos = 0;
+
+    /**
+     * PongNetClient Constructor: joins a host
+     *
+     * @param pongGame local display copy of the game
+     * @param link local UDP link
+     * @param host address of the PongNetHost
+     */
+    public PongNetClient(PongGame pongGame, PongNetLink link, SocketAddress host)
+    {
+        this.pongGame = pongGame;
+        this.link = link;
+        this.host = host;
+        this.dyPaddle = pongGame.getAttribute(GameAttributes.PADDLE_DY);
+    }
+
+    /**
+     * step: one paddle tick on the client<br>
+     * - reconciles with any state received from the host, then predicts and
+     *   sends this tick's input
+     *
+     * @param input the player's paddle input: -1 up, 0 none, 1 down
+     * @throws IOException if the link fails
+     */
+    public void step(int input) throws IOException
+    {
+        receiveStates();
+
+        inputSequence++;
+        int slot = inputSequence & (PENDING_RING - 1);
+        pendingInputs[slot] = (byte)input;
+        sentNanos[slot] = System.nanoTime();
+        if (input != 0) pongGame.movePlayerTwoPaddle(input*dyPaddle);  // prediction
+
+        sendInputs();
+    }
+
+    public long getCorrections()
+    {
+        return corrections;
+    }
+
+    public double getMeanCorrectionPixels()
+    {
+        return (corrections == 0) ? 0.0 : (double)correctionSum/corrections;
+    }
+
+    /**
+     * getMeanRoundTripMillis: time from sending an input until the host's
+     * state acknowledges it
+     *
+     * @return double mean round trip in milliseconds
+     */
+    public double getMeanRoundTripMillis()
+    {
+        return (roundTrips == 0) ? 0.0 : roundTripNanos/1e6/roundTrips;
+    }
+
+    /**
+     * getUnacknowledgedInputs: inputs predicted locally that the host has not applied yet
+     *
+     * @return int number of ticks the prediction runs ahead of the host
+     */
+    public int getUnacknowledgedInputs()
+    {
+        return inputSequence - ackedSequence;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        link.close();
+    }
+
+    private void sendInputs() throws IOException
+    {
+        int count = Math.min(REDUNDANCY, inputSequence - ackedSequence);
+        packet.clear();
+        packet.put(PongNetHost.MSG_INPUT);
+        packet.putInt(inputSequence);
+        packet.put((byte)count);
+        for (int sequence = inputSequence - count + 1; sequence <= inputSequence; sequence++)
+        {
+            packet.put(pendingInputs[sequence & (PENDING_RING - 1)]);
+        }
+        packet.flip();
+        link.send(packet, host);
+    }
+
+    private void receiveStates() throws IOException
+    {
+        while (link.receive(packet) != null)
+        {
+            if (packet.remaining() < 21 || packet.get() != PongNetHost.MSG_STATE) continue;
+            int hostTick = packet.getInt();
+            int acked = packet.getInt();
+            if (hostTick <= lastHostTick) continue;       // reordered: an older state
+            lastHostTick = hostTick;
+            int x              = packet.getShort();
+            int y              = packet.getShort();
+            int playerOneY     = packet.getShort();
+            int playerTwoY     = packet.getShort();
+            int playerOneScore = packet.getShort();
+            int playerTwoScore = packet.getShort();
+
+            if (acked > ackedSequence && acked <= inputSequence)
+            {
+                roundTripNanos += System.nanoTime() - sentNanos[acked & (PENDING_RING - 1)];
+                roundTrips++;
+                ackedSequence = acked;
+            }
+
+            // reconcile: host position as of the acknowledged input, plus every newer input
+            int predictedY = pongGame.getAttribute(GameAttributes.PLAYER_TWO_Y);
+            pongGame.setPositions(x, y, playerOneY, playerTwoY, playerOneScore, playerTwoScore);
+            for (int sequence = ackedSequence + 1; sequence <= inputSequence; sequence++)
+            {
+                int input = pendingInputs[sequence & (PENDING_RING - 1)];
+                if (input != 0) pongGame.movePlayerTwoPaddle(input*dyPaddle);
+            }
+            int reconciledY = pongGame.getAttribute(GameAttributes.PLAYER_TWO_Y);
+            if (reconciledY != predictedY)
+            {
+                corrections++;
+                correctionSum += Math.abs(reconciledY - predictedY);
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * PongNetHost - authoritative side of a networked 2-player game
+ */
+package mlwithpong;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * PongNetHost<br>
+ * - runs the authoritative PongGame: the host player is player 1 (left),
+ *   the remote PongNetClient is player 2 (right)<br>
+ * - step() is called once per paddle tick (10 ms, as in PongPlayableGame);
+ *   the ball moves every BALL_TICK_RATIO paddle ticks<br>
+ * - the client's paddle inputs arrive stamped with the client's input
+ *   sequence number; the host applies one of them per tick, in order, and
+ *   sends the client the game state together with the sequence of the last
+ *   input it applied, so the client can reconcile its prediction<br>
+ * - the host is bound to the address of the first client that sends an
+ *   input; packets from any other address are dropped<br>
+ * <p>
+ * Packets (big-endian):<br>
+ *   input (client to host): byte MSG_INPUT, int newest input sequence, byte count,
+ *                           count bytes of inputs (-1 up, 0 none, 1 down), oldest first<br>
+ *   state (host to client): byte MSG_STATE, int host tick, int last applied input sequence,
+ *                           short ball x, ball y, player-1 y, player-2 y, player-1 score, player-2 score
+ */
+public class PongNetHost implements Closeable {
+
+    public static final byte MSG_INPUT = 1;
+    public static final byte MSG_STATE = 2;
+    public static final int  BALL_TICK_RATIO = 5;   // paddle ticks per ball tick (50 ms / 10 ms)
+
+    private static final int INPUT_RING  = 256;     // inputs buffered from the client (power of 2)
+    private static final int MAX_BACKLOG = 3;       // inputs allowed to queue up from jitter
+
+    private final PongGame pongGame;
+    private final PongNetLink link;
+    private final int dyPaddle;
+    private final ByteBuffer packet = ByteBuffer.allocate(PongNetLink.MAX_PACKET);
+
+    private final byte[] inputs        = new byte[INPUT_RING];
+    private final int[]  inputSequence = new int[INPUT_RING];
+    private int newestInputSequence  = 0;   // newest input received from the client
+    private int appliedInputSequence = 0;   // newest input applied to the game
+    private SocketAddress client = null;
+    private int tick = 0;
+
+    /**
+     * PongNetHost Constructor: hosts a game on a link
+     *
+     * @param pongGame the authoritative game (already started with startNewGame())
+     * @param link UDP link the client connects to
+     */
+    public PongNetHost(PongGame pongGame, PongNetLink link)
+    {
+        this.pongGame = pongGame;
+        this.link = link;
+        this.dyPaddle = pongGame.getAttribute(GameAttributes.PADDLE_DY);
+    }
+
+    /**
+     * isClientConnected: true once the first input packet has arrived<br>
+     * - the ball does not move until then
+     *
+     * @return boolean true if a client is connected
+     */
+    public boolean isClientConnected()
+    {
+        return client != null;
+    }
+
+    public int getTick()
+    {
+        return tick;
+    }
+
+    /**
+     * step: advances the game by one paddle tick
+     *
+     * @param hostInput the host player's paddle input: -1 up, 0 none, 1 down
+     * @throws IOException if the link fails
+     */
+    public void step(int hostInput) throws IOException
+    {
+        receiveInputs();
+        if (client == null || pongGame.isMatchOver()) return;
+        tick++;
+
+        if (hostInput != 0) pongGame.movePlayerOnePaddle(hostInput*dyPaddle);
+
+        // apply the client's inputs in order: one per tick, more if jitter queued them up
+        int backlog = newestInputSequence - appliedInputSequence;
+        int toApply = (backlog > MAX_BACKLOG) ? backlog - MAX_BACKLOG + 1 : Math.min(1, backlog);
+        for (int i = 0; i < toApply; i++)
+        {
+            appliedInputSequence++;
+            int slot = appliedInputSequence & (INPUT_RING - 1);
+            int input = (inputSequence[slot] == appliedInputSequence) ? inputs[slot] : 0;
+            if (input != 0) pongGame.movePlayerTwoPaddle(input*dyPaddle);
+        }
+
+        if (tick % BALL_TICK_RATIO == 0)
+        {
+            pongGame.updateBall();
+            if (pongGame.isGameOver() && !pongGame.isMatchOver()) pongGame.startNewGame();
+        }
+        sendState();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        link.close();
+    }
+
+    private void receiveInputs() throws IOException
+    {
+        SocketAddress sender;
+        while ((sender = link.receive(packet)) != null)
+        {
+            if (client != null && !client.equals(sender)) continue;   // not our client
+            if (packet.remaining() < 6 || packet.get() != MSG_INPUT) continue;
+            client = sender;
+            int newest = packet.getInt();
+            int count = packet.get();
+            if (packet.remaining() < count) continue;
+            for (int i = 0; i < count; i++)
+            {
+                int sequence = newest - count + 1 + i;
+                byte input = packet.get();
+                if (sequence <= appliedInputSequence) continue;
+                int slot = sequence & (INPUT_RING - 1);
+                inputs[slot] = input;
+                inputSequence[slot] = sequence;
+            }
+            if (newest > newestInputSequence) newestInputSequence = newest;
+        }
+    }
+
+    private void sendState() throws IOException
+    {
+        packet.clear();
+        packet.put(MSG_STATE);
+        packet.putInt(tick);
+        packet.putInt(appliedInputSequence);
+        packet.putShort((short)pongGame.getAttribute(GameAttributes.BALL_X));
+        packet.putShort((short)pongGame.getAttribute(GameAttributes.BALL_Y));
+        packet.putShort((short)pongGame.getAttribute(GameAttributes.PLAYER_ONE_Y));
+        packet.putShort((short)pongGame.getAttribute(GameAttributes.PLAYER_TWO_Y));
+        packet.putShort((short)pongGame.getAttribute(GameAttributes.PLAYER_ONE_SCORE));
+        packet.putShort((short)pongGame.getAttribute(GameAttributes.PLAYER_TWO_SCORE));
+        packet.flip();
+        link.send(packet, client);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * PongNetLink - UDP endpoint for networked play, with optional simulated latency
+ */
+package mlwithpong;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PongNetLink<br>
+ * - a non-blocking UDP socket used by PongNetHost and PongNetClient<br>
+ * - can delay every outgoing packet by a fixed latency plus random jitter,
+ *   and drop a fraction of them, so networked play can be tested over
+ *   loopback as if it ran between two machines<br>
+ * - jitter can reorder packets, exactly like a real network may
+ */
+public class PongNetLink implements Closeable {
+
+    public static final int MAX_PACKET = 512;
+
+    private final DatagramChannel channel;
+    private final int delayMillis;          // one-way latency added to every packet
+    private final int jitterMillis;         // plus a random 0..jitterMillis
+    private final double lossRate;          // fraction of packets dropped
+    private final DelayQueue<DelayedPacket> outgoing = new DelayQueue<>();
+    private final Thread senderThread;
+    private volatile boolean open = true;
+
+    /**
+     * PongNetLink Constructor: a plain UDP socket
+     *
+     * @param port local UDP port, or 0 for any free port
+     * @throws IOException if the port cannot be opened
+     */
+    public PongNetLink(int port) throws IOException
+    {
+        this(port, 0, 0, 0.0);
+    }
+
+    /**
+     * PongNetLink Constructor: a UDP socket with simulated network conditions
+     *
+     * @param port local UDP port, or 0 for any free port
+     * @param delayMillis one-way latency added to every outgoing packet
+     * @param jitterMillis maximum random latency added on top of delayMillis
+     * @param lossRate fraction (0.0 to 1.0) of outgoing packets to drop
+     * @throws IOException if the port cannot be opened
+     */
+    public PongNetLink(int port, int delayMillis, int jitterMillis, double lossRate) throws IOException
+    {
+        this.delayMillis  = delayMillis;
+        this.jitterMillis = jitterMillis;
+        this.lossRate     = lossRate;
+        channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress(port));
+        channel.configureBlocking(false);
+
+        if (delayMillis > 0 || jitterMillis > 0)
+        {
+            senderThread = new Thread(this::sendDelayed, "PongNetLink-sender");
+            senderThread.setDaemon(true);
+            senderThread.start();
+        }
+        else senderThread = null;
+    }
+
+    public int getPort()
+    {
+        return channel.socket().getLocalPort();
+    }
+
+    /**
+     * send: sends a packet, now or after the simulated latency
+     *
+     * @param packet bytes from position to limit (the buffer is not modified)
+     * @param destination address to send to
+     * @throws IOException if the socket fails
+     */
+    public void send(ByteBuffer packet, SocketAddress destination) throws IOException
+    {
+        if (lossRate > 0.0 && ThreadLocalRandom.current().nextDouble() < lossRate) return;
+        if (senderThread == null)
+        {
+            channel.send(packet.duplicate(), destination);
+            return;
+        }
+        ByteBuffer copy = ByteBuffer.allocate(packet.remaining());
+        copy.put(packet.duplicate()).flip();
+        int jitter = (jitterMillis > 0) ? ThreadLocalRandom.current().nextInt(jitterMillis + 1) : 0;
+        outgoing.add(new DelayedPacket(copy, destination, System.nanoTime() + (delayMillis + jitter)*1000000L));
+    }
+
+    /**
+     * receive: takes the next received packet, if any
+     *
+     * @param packet buffer to receive into (cleared first, flipped for reading after)
+     * @return SocketAddress of the sender, or null if no packet is waiting
+     * @throws IOException if the socket fails
+     */
+    public SocketAddress receive(ByteBuffer packet) throws IOException
+    {
+        packet.clear();
+        SocketAddress sender = channel.receive(packet);
+        packet.flip();
+        return sender;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        open = false;
+        if (senderThread != null) senderThread.interrupt();
+        channel.close();
+    }
+
+    private void sendDelayed()
+    {
+        try {
+            while (open)
+            {
+                DelayedPacket delayed = outgoing.take();
+                channel.send(delayed.packet, delayed.destination);
+            }
+        }
+        catch (InterruptedException | IOException e) {
+            // link closed
+        }
+    }
+
+    private static class DelayedPacket implements Delayed {
+        final ByteBuffer packet;
+        final SocketAddress destination;
+        final long dueNanos;
+
+        DelayedPacket(ByteBuffer packet, SocketAddress destination, long dueNanos)
+        {
+            this.packet = packet;
+            this.destination = destination;
+            this.dueNanos = dueNanos;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit)
+        {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other)
+        {
+            return Long.compare(dueNanos, ((DelayedPacket)other).dueNanos);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package mlwithpong;
+
+import java.awt.Frame;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import javax.swing.Timer;
+
+/**
+ * PongNetworkGame: 2 human players on 2 machines<br>
+ * - the host plays the left paddle (A, Z) and runs the game (PongNetHost)<br>
+ * - the client plays the right paddle (UP, DOWN) and predicts its own
+ *   paddle locally (PongNetClient)<br>
+ * - both sides tick every 10 milliseconds, the paddle rate of PongPlayableGame<br>
+ * <p>
+ * To try the network code on one machine, simulate a slow network with:<br>
+ *   -Dmlwithpong.net.delayMillis=50 -Dmlwithpong.net.jitterMillis=10 -Dmlwithpong.net.lossPercent=2
+ *
+ * @author devang
+ */
+public class PongNetworkGame {
+
+    public static final int DEFAULT_PORT = 5758;
+
+    private Timer     tickTimer;            // Timer for the paddle/network tick
+    private final int tickDelay = 10;       // milliseconds - paddle tick
+
+    /**
+     * PongNetworkGame Constructor: hosts a game and waits for the client
+     *
+     * @param port UDP port to host on
+     * @throws IOException if the port cannot be opened
+     */
+    public PongNetworkGame(int port) throws IOException
+    {
+        PongGame pongGame = new PongGame(true, true);
+        PongCanvas pongCanvas = openWindow(pongGame, "MLWithPong - host");
+        PongNetHost netHost = new PongNetHost(pongGame, openLink(port));
+        pongGame.startNewGame();
+
+        ActionListener tickAction = new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent evt) {
+                try {
+                    netHost.step(pongCanvas.getPlayerOneInput());
+                }
+                catch (IOException ioe) {
+                    System.err.println("network error: " + ioe);
+                    tickTimer.stop();
+                }
+                if (pongGame.isMatchOver()) tickTimer.stop();
+                pongCanvas.repaint();
+            }
+        };
+        tickTimer = new Timer(tickDelay, tickAction);
+        tickTimer.start();
+    }
+
+    /**
+     * PongNetworkGame Constructor: joins a hosted game
+     *
+     * @param hostName name or address of the host machine
+     * @param port UDP port the host is listening on
+     * @throws IOException if the local port cannot be opened
+     */
+    public PongNetworkGame(String hostName, int port) throws IOException
+    {
+        PongGame pongGame = new PongGame(false, true);
+        PongCanvas pongCanvas = openWindow(pongGame, "MLWithPong - client");
+        PongNetClient netClient = new PongNetClient(pongGame, openLink(0), new InetSocketAddress(hostName, port));
+
+        ActionListener tickAction = new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent evt) {
+                try {
+                    netClient.step(pongCanvas.getPlayerTwoInput());
+                }
+                catch (IOException ioe) {
+                    System.err.println("network error: " + ioe);
+                    tickTimer.stop();
+                }
+                if (pongGame.isMatchOver())
+                {
+                    tickTimer.stop();
+                    System.out.println("round trip: " + netClient.getMeanRoundTripMillis() + " ms"
+                                     + "  corrections: " + netClient.getCorrections());
+                }
+                pongCanvas.repaint();
+            }
+        };
+        tickTimer = new Timer(tickDelay, tickAction);
+        tickTimer.start();
+    }
+
+    private static PongNetLink openLink(int port) throws IOException
+    {
+        return new PongNetLink(port,
+                               Integer.getInteger("mlwithpong.net.delayMillis", 0),
+                               Integer.getInteger("mlwithpong.net.jitterMillis", 0),
+                               Integer.getInteger("mlwithpong.net.lossPercent", 0)/100.0);
+    }
+
+    private static PongCanvas openWindow(PongGame pongGame, String title)
+    {
+        PongCanvas pongCanvas = new PongCanvas(pongGame);
+        pongCanvas.setSize(pongGame.getAttribute(GameAttributes.GAME_WIDTH), pongGame.getAttribute(GameAttributes.GAME_HEIGHT));
+
+        Frame frame = new Frame(title);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent evt) {
+                System.exit(0);
+            }
+        });
+        frame.setLocation(100,100);
+        frame.add(pongCanvas);
+        frame.pack();
+        frame.setResizable(false);
+        frame.setVisible(true);
+        return pongCanvas;
+    }
+}
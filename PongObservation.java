@@ -0,0 +1,40 @@
+/*
+ * PongObservation - a representation of the game state for a learner
+ */
+package mlwithpong;
+
+/**
+ * PongObservation<br>
+ * - one representation of the game that a consumer (a learner, a
+ *   recorder, a policy) reads: positions, pixels, pixel differences or a
+ *   stack of past frames; PongObservations makes the standard ones<br>
+ * - pull-based: nothing is computed until observe() reads it, and the game
+ *   keeps past positions only for observations registered with
+ *   PongGame.addObservation()
+ */
+public interface PongObservation {
+
+    /**
+     * getHistoryFrames: frames this observation reads
+     *
+     * @return int 1 for the current frame only, k for the current and k-1 past frames
+     */
+    int getHistoryFrames();
+
+    /**
+     * getSize: number of values this observation writes
+     *
+     * @param pongGame game with the configuration (dimensions) to observe
+     * @return int number of floats
+     */
+    int getSize(PongGame pongGame);
+
+    /**
+     * read: writes the observation of a game
+     *
+     * @param pongGame game to observe (read past frames with getPositions())
+     * @param out array to write getSize() values to
+     * @param offset index of out to write the first value to
+     */
+    void read(PongGame pongGame, float[] out, int offset);
+}
@@ -0,0 +1,214 @@
+/*
+ * PongObservations - the standard observations of a PongGame
+ */
+package mlwithpong;
+
+import java.util.Arrays;
+
+/**
+ * PongObservations: makes the standard PongObservations<br>
+ * - positions: ball x, y and the two paddle positions (4 values, as
+ *   PongGame's position frames)<br>
+ * - pixels: the monochrome raster of PongGame's pixel frames (width*height
+ *   values: 1 for the ball and paddles, 0 elsewhere)<br>
+ * - pixelDifference: the current pixels minus the previous frame's
+ *   (-1, 0 or 1), which shows the direction of the ball in one frame<br>
+ * - stacked: k frames of one of the above, most recent first<br>
+ * - mirrored: any of the above seen from the other side of the table
+ *   (columns flipped, paddles swapped), so a model trained on the right
+ *   paddle can play the left one, or a data set can be doubled<br>
+ * <p>
+ * Pixels are drawn from the positions when they are read, so a game keeps
+ * at most 4 ints per past frame however the frames are represented. A
+ * mirrored observation flips the positions before drawing, so it copies
+ * nothing either.
+ */
+public final class PongObservations {
+
+    private PongObservations()
+    {
+    }
+
+    public static PongObservation positions()
+    {
+        return new Stacked(false, 1, false);
+    }
+
+    public static PongObservation pixels()
+    {
+        return new Stacked(true, 1, false);
+    }
+
+    public static PongObservation stackedPositions(int frames)
+    {
+        return new Stacked(false, frames, false);
+    }
+
+    public static PongObservation stackedPixels(int frames)
+    {
+        return new Stacked(true, frames, false);
+    }
+
+    public static PongObservation pixelDifference()
+    {
+        return new PixelDifference(false);
+    }
+
+    /**
+     * mirrored: an observation as the other paddle sees it<br>
+     * - ball x becomes width-1-x and the paddles swap, so player one's
+     *   paddle is where player two's was; pixels are drawn flipped, as
+     *   PongGame's getMirrorArray() flips a frame<br>
+     * - mirroring a mirrored observation gives the original one back
+     *
+     * @param observation one of the observations made by this class
+     * @return PongObservation the mirrored observation
+     */
+    public static PongObservation mirrored(PongObservation observation)
+    {
+        if (observation instanceof Stacked)
+        {
+            Stacked stacked = (Stacked)observation;
+            return new Stacked(stacked.pixels, stacked.frames, !stacked.mirrored);
+        }
+        if (observation instanceof PixelDifference)
+        {
+            return new PixelDifference(!((PixelDifference)observation).mirrored);
+        }
+        throw new IllegalArgumentException("not an observation of PongObservations: " + observation);
+    }
+
+    /**
+     * mirrorPositions: flips a frame of {x,y,paddle1-y,paddle2-y} in place
+     *
+     * @param positions positions as from PongGame.getPositions()
+     * @param width width of the game
+     */
+    public static void mirrorPositions(int[] positions, int width)
+    {
+        positions[0] = width - 1 - positions[0];
+        int playerOneY = positions[2];
+        positions[2] = positions[3];
+        positions[3] = playerOneY;
+    }
+
+    /**
+     * Stacked: positions or pixels of the current frame and frames-1 past frames
+     */
+    private static final class Stacked implements PongObservation {
+        private final boolean pixels;
+        private final int frames;
+        private final boolean mirrored;
+
+        Stacked(boolean pixels, int frames, boolean mirrored)
+        {
+            this.pixels = pixels;
+            this.frames = frames;
+            this.mirrored = mirrored;
+        }
+
+        @Override
+        public int getHistoryFrames()
+        {
+            return frames;
+        }
+
+        @Override
+        public int getSize(PongGame pongGame)
+        {
+            return frames*frameSize(pongGame, pixels);
+        }
+
+        @Override
+        public void read(PongGame pongGame, float[] out, int offset)
+        {
+            int[] positions = pongGame.getObservationScratch();
+            int size = frameSize(pongGame, pixels);
+            for (int f = 0; f < frames; f++)
+            {
+                boolean recorded = pongGame.getPositions(f, positions);
+                if (recorded && mirrored) mirrorPositions(positions, pongGame.getAttribute(GameAttributes.GAME_WIDTH));
+                if (!pixels) writePositions(positions, out, offset + f*size);
+                else if (recorded) drawPixels(pongGame, positions, out, offset + f*size, false);
+                else Arrays.fill(out, offset + f*size, offset + (f + 1)*size, 0.0f);
+            }
+        }
+    }
+
+    /**
+     * PixelDifference: current pixels minus previous pixels
+     */
+    private static final class PixelDifference implements PongObservation {
+        private final boolean mirrored;
+
+        PixelDifference(boolean mirrored)
+        {
+            this.mirrored = mirrored;
+        }
+
+        @Override
+        public int getHistoryFrames()
+        {
+            return 2;
+        }
+
+        @Override
+        public int getSize(PongGame pongGame)
+        {
+            return frameSize(pongGame, true);
+        }
+
+        @Override
+        public void read(PongGame pongGame, float[] out, int offset)
+        {
+            int[] positions = pongGame.getObservationScratch();
+            int width = pongGame.getAttribute(GameAttributes.GAME_WIDTH);
+            pongGame.getPositions(0, positions);
+            if (mirrored) mirrorPositions(positions, width);
+            drawPixels(pongGame, positions, out, offset, false);
+            if (!pongGame.getPositions(1, positions)) return;
+            if (mirrored) mirrorPositions(positions, width);
+            drawPixels(pongGame, positions, out, offset, true);
+        }
+    }
+
+    private static int frameSize(PongGame pongGame, boolean pixels)
+    {
+        if (!pixels) return 4;
+        return pongGame.getAttribute(GameAttributes.GAME_WIDTH)*pongGame.getAttribute(GameAttributes.GAME_HEIGHT);
+    }
+
+    private static void writePositions(int[] positions, float[] out, int offset)
+    {
+        for (int p = 0; p < 4; p++) out[offset + p] = positions[p];
+    }
+
+    // the raster of PongGame's pixel frames: sets the ball and paddle pixels
+    // to 1 (after clearing), or subtracts 1 from each of them once
+    private static void drawPixels(PongGame pongGame, int[] positions, float[] out, int offset, boolean subtract)
+    {
+        int width = pongGame.getAttribute(GameAttributes.GAME_WIDTH);
+        int height = pongGame.getAttribute(GameAttributes.GAME_HEIGHT);
+        int paddleHeight = pongGame.getAttribute(GameAttributes.PADDLE_HEIGHT);
+        if (!subtract) Arrays.fill(out, offset, offset + width*height, 0.0f);
+
+        int x = positions[0];
+        int y = positions[1];
+        int top1 = Math.max(0, positions[2] - paddleHeight/2), bottom1 = Math.min(height, positions[2] + paddleHeight/2);
+        int top2 = Math.max(0, positions[3] - paddleHeight/2), bottom2 = Math.min(height, positions[3] + paddleHeight/2);
+        for (int p = top1; p < bottom1; p++)
+        {
+            if (subtract) out[offset + width*p] -= 1.0f;
+            else out[offset + width*p] = 1.0f;
+        }
+        for (int p = top2; p < bottom2; p++)
+        {
+            if (subtract) out[offset + width*p + width - 1] -= 1.0f;
+            else out[offset + width*p + width - 1] = 1.0f;
+        }
+        if (x < 0 || x >= width || y < 0 || y >= height) return;
+        boolean onPaddle = (x == 0 && y >= top1 && y < bottom1) || (x == width - 1 && y >= top2 && y < bottom2);
+        if (!subtract) out[offset + width*y + x] = 1.0f;
+        else if (!onPaddle) out[offset + width*y + x] -= 1.0f;
+    }
+}
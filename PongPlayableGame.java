@@ -13,10 +13,12 @@ import javax.swing.Timer;
  */
 public class PongPlayableGame {
 
+    public static final int PADDLE_MOVES_PER_TICK = 5;  // paddle moves per ball move: trainers use it to match this game
+
     private Timer     gameRepaintTimer;      // Timer for constant screen refresh
     private Timer     paddleMoveTimer;       // Timer for polling keyboard input
     private final int gameRepaintDelay = 50; // milliseconds - screen refresh
-    private final int paddleMoveDelay  = 10; // milliseconds - keybord polling rate
+    private final int paddleMoveDelay  = gameRepaintDelay/PADDLE_MOVES_PER_TICK; // milliseconds - keybord polling rate (10)
             
     /**
      * PongPlayableGame Constructor: Begins game and main game loop<br>
@@ -32,8 +34,25 @@ public class PongPlayableGame {
      * @throws InterruptedException To Handle Thread sleeping until game ends
      */
     public PongPlayableGame(boolean playerOneHuman,boolean playerTwoHuman) throws InterruptedException
+    {
+        this(playerOneHuman, playerTwoHuman, null, null);
+    }
+    
+    /**
+     * PongPlayableGame Constructor: Begins game with CPU players other than
+     * the algorithmic CPU (e.g. MCTSPlayer)<br>
+     * 
+     * @param playerOneHuman true if left-player is human, false if CPU-controlled
+     * @param playerTwoHuman true if right-player is human, false if CPU-controlled
+     * @param playerOneCPU policy of the left CPU player, or null for the algorithmic CPU
+     * @param playerTwoCPU policy of the right CPU player, or null for the algorithmic CPU
+     * @throws InterruptedException To Handle Thread sleeping until game ends
+     */
+    public PongPlayableGame(boolean playerOneHuman,boolean playerTwoHuman,
+                            PongPlayer playerOneCPU, PongPlayer playerTwoCPU) throws InterruptedException
     {
         PongGame pongGame = new PongGame(playerOneHuman,playerTwoHuman);
+        pongGame.setCPUPlayers(playerOneCPU, playerTwoCPU);
         // initialize the game and canvas
         PongCanvas pongCanvas = new PongCanvas(pongGame);
         pongCanvas.setSize(pongGame.getAttribute(GameAttributes.GAME_WIDTH), pongGame.getAttribute(GameAttributes.GAME_HEIGHT));
@@ -56,7 +75,14 @@ public class PongPlayableGame {
         ActionListener gameRepaintAction = new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent evt) {
+                boolean sampled = PongInstrumentation.ENABLED && PongInstrumentation.tick();
+                long t = sampled ? PongInstrumentation.startSample() : 0;
                 pongGame.updateBall();
+                if (sampled)
+                {
+                    PongInstrumentation.endPhase(PongInstrumentation.UPDATE_BALL, t);
+                    PongInstrumentation.endSample();
+                }
                 if (pongGame.isMatchOver()) { paddleMoveTimer.stop(); gameRepaintTimer.stop(); }
                 if (pongGame.isGameOver()) pongGame.startNewGame();
                 pongCanvas.repaint();
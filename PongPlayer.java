@@ -0,0 +1,22 @@
+/*
+ * PongPlayer - a CPU controlled paddle policy
+ */
+package mlwithpong;
+
+/**
+ * PongPlayer<br>
+ * - decides which way a CPU controlled paddle moves, given the current game<br>
+ * - set on a game with PongGame.setCPUPlayers(); a side without a
+ *   PongPlayer uses the algorithmic CPU (simple or forecasting) as before
+ */
+public interface PongPlayer {
+
+    /**
+     * choosePaddleMove: the paddle move for this tick
+     *
+     * @param pongGame the game being played (read it with getAttribute)
+     * @param player 1 for the left paddle, 2 for the right paddle
+     * @return int -1 to move up, 1 to move down, 0 to stay
+     */
+    int choosePaddleMove(PongGame pongGame, int player);
+}
@@ -0,0 +1,186 @@
+/*
+ * PongPolicyNetwork - the paddle policy network of PongGame.py, in Java
+ */
+package mlwithpong;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * PongPolicyNetwork: the Keras model of PongGame.py<br>
+ * - one hidden layer of relu units and one sigmoid output: the probability
+ *   of moving up; the paddle moves up above 0.5 and down otherwise<br>
+ * - reads one PongObservation (scaled by inputScale, e.g. 1/100 for
+ *   positions), as the right paddle, or mirrored as the left paddle<br>
+ * - parameters are one float array in Keras order: hidden kernel
+ *   [input][unit], hidden bias, output kernel [unit], output bias; so
+ *   model.get_weights() of the Python model, flattened, loads as is<br>
+ * - a PongPlayer and a PongBatchPolicy; not thread-safe (it keeps its
+ *   hidden activations), so every thread plays with its own copy
+ */
+public class PongPolicyNetwork implements PongPlayer, PongBatchPolicy {
+
+    private final PongObservation observation;
+    private final PongObservation mirroredObservation;
+    private final int inputs;
+    private final int units;
+    private final float inputScale;
+    private final float[] parameters;
+    private final float[] input;
+    private final float[] hidden;
+
+    /**
+     * PongPolicyNetwork Constructor: a network with all parameters 0
+     *
+     * @param observation what the network sees (one of PongObservations)
+     * @param inputs size of the observation
+     * @param units hidden units (200 in PongGame.py)
+     * @param inputScale factor applied to every observation value
+     */
+    public PongPolicyNetwork(PongObservation observation, int inputs, int units, float inputScale)
+    {
+        this.observation = observation;
+        this.mirroredObservation = PongObservations.mirrored(observation);
+        this.inputs = inputs;
+        this.units = units;
+        this.inputScale = inputScale;
+        this.parameters = new float[numParameters(inputs, units)];
+        this.input = new float[inputs];
+        this.hidden = new float[units];
+    }
+
+    /**
+     * PongPolicyNetwork Constructor: a copy of a network, with its own parameters
+     *
+     * @param network network to copy
+     */
+    public PongPolicyNetwork(PongPolicyNetwork network)
+    {
+        this(network.observation, network.inputs, network.units, network.inputScale);
+        System.arraycopy(network.parameters, 0, parameters, 0, parameters.length);
+    }
+
+    /**
+     * initialize: random parameters, with the initializers of PongGame.py<br>
+     * - hidden kernel glorot_uniform, output kernel RandomNormal (stddev
+     *   0.05), biases 0: the first moves are close to a coin flip
+     *
+     * @param seed seed of the random parameters
+     */
+    public void initialize(long seed)
+    {
+        java.util.SplittableRandom random = new java.util.SplittableRandom(seed);
+        double limit = Math.sqrt(6.0/(inputs + units));
+        Arrays.fill(parameters, 0.0f);
+        for (int p = 0; p < inputs*units; p++) parameters[p] = (float)((2.0*random.nextDouble() - 1.0)*limit);
+        int outputOffset = inputs*units + units;
+        for (int u = 0; u < units; u++) parameters[outputOffset + u] = (float)(0.05*random.nextGaussian());
+    }
+
+    public static int numParameters(int inputs, int units)
+    {
+        return inputs*units + units + units + 1;
+    }
+
+    /**
+     * getParameters: the parameters, in Keras order (not a copy)
+     *
+     * @return float[] the parameters of this network
+     */
+    public float[] getParameters()
+    {
+        return parameters;
+    }
+
+    public int getInputs()
+    {
+        return inputs;
+    }
+
+    public PongObservation getObservation()
+    {
+        return observation;
+    }
+
+    /**
+     * upProbability: the network output for one observation
+     *
+     * @param x array holding the (unscaled) observation
+     * @param offset index of its first value
+     * @return float probability of moving up
+     */
+    public float upProbability(float[] x, int offset)
+    {
+        int biasOffset = inputs*units;
+        System.arraycopy(parameters, biasOffset, hidden, 0, units);
+        for (int i = 0; i < inputs; i++)
+        {
+            float value = x[offset + i]*inputScale;
+            if (value == 0.0f) continue;          // pixel inputs are mostly 0
+            int row = i*units;
+            for (int u = 0; u < units; u++) hidden[u] += value*parameters[row + u];
+        }
+        int outputOffset = biasOffset + units;
+        float z = parameters[outputOffset + units];
+        for (int u = 0; u < units; u++)
+        {
+            if (hidden[u] > 0.0f) z += hidden[u]*parameters[outputOffset + u];
+        }
+        return 1.0f/(1.0f + (float)Math.exp(-z));
+    }
+
+    @Override
+    public int choosePaddleMove(PongGame pongGame, int player)
+    {
+        PongObservation view = (player == 1) ? mirroredObservation : observation;
+        pongGame.observe(view, input, 0);
+        return (upProbability(input, 0) > 0.5f) ? -1 : 1;
+    }
+
+    @Override
+    public void choosePaddleMoves(float[] observations, int size, int count, int[] moves)
+    {
+        for (int b = 0; b < count; b++)
+        {
+            moves[b] = (upProbability(observations, b*size) > 0.5f) ? -1 : 1;
+        }
+    }
+
+    /**
+     * save: writes the parameters (count, then big-endian floats)
+     *
+     * @param file file to (over)write
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path file) throws IOException
+    {
+        try (DataOutputStream out = new DataOutputStream(new java.io.BufferedOutputStream(Files.newOutputStream(file))))
+        {
+            out.writeInt(parameters.length);
+            for (float p : parameters) out.writeFloat(p);
+        }
+    }
+
+    /**
+     * load: reads parameters written by save()
+     *
+     * @param file file to read
+     * @throws IOException if the file cannot be read or has the wrong size
+     */
+    public void load(Path file) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new java.io.BufferedInputStream(Files.newInputStream(file))))
+        {
+            int count = in.readInt();
+            if (count != parameters.length)
+            {
+                throw new IOException("network has " + parameters.length + " parameters, file has " + count);
+            }
+            for (int p = 0; p < count; p++) parameters[p] = in.readFloat();
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * PongQLearner - tabular Q-learning / SARSA trainer and player
+ */
+package mlwithpong;
+
+import java.io.PrintStream;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PongQLearner: a learner without a neural network<br>
+ * - learns one paddle against the forecasting CPU player, one point per
+ *   episode: reward 1 for winning the point, -1 for losing it<br>
+ * - Q-learning (off-policy, bootstraps on the best next action) or SARSA
+ *   (on-policy, bootstraps on the action actually taken next), with
+ *   epsilon-greedy exploration<br>
+ * - Hogwild: every training thread plays its own games and updates the
+ *   shared PongQTable without locks<br>
+ * - the paddles move through PongGame.moveCPUPaddle, so a decision interval
+ *   (setDecisionInterval) holds each action for that many ball ticks, and
+ *   the table learns one step per decision, as the player is deployed<br>
+ * - a learning curve line is printed every reportPoints points: the share
+ *   of points won, the table occupancy and the wall-clock time, to compare
+ *   with the Python Keras policy gradient<br>
+ * <p>
+ * After training, the learner is a PongPlayer that plays greedily.
+ */
+public class PongQLearner implements PongPlayer {
+
+    private static final int[] ACTIONS = {-1, 0, 1};
+
+    private final PongQTable table;
+    private final int player;
+    private final boolean sarsa;
+    private final float alpha;           // learning rate
+    private final float gamma;           // discount per decision
+    private final double epsilon;        // exploration rate
+    private final int paddleMovesPerBallTick;
+    private int decisionInterval = 1;    // ball ticks per decision while training
+
+    private final AtomicLong points = new AtomicLong();
+    private final LongAdder pointsWon = new LongAdder();
+    private final LongAdder ticks = new LongAdder();
+
+    /**
+     * PongQLearner Constructor
+     *
+     * @param table table to learn into (may be shared with other learners)
+     * @param player 1 to learn the left paddle, 2 the right paddle
+     * @param sarsa true for SARSA, false for Q-learning
+     * @param alpha learning rate
+     * @param gamma discount per decision (per ball tick at the default decision interval)
+     * @param epsilon probability of a random action while training
+     * @param paddleMovesPerBallTick paddle moves per ball tick (1 in startSimulatedMatch)
+     */
+    public PongQLearner(PongQTable table, int player, boolean sarsa, double alpha, double gamma, double epsilon, int paddleMovesPerBallTick)
+    {
+        this.table = table;
+        this.player = player;
+        this.sarsa = sarsa;
+        this.alpha = (float)alpha;
+        this.gamma = (float)gamma;
+        this.epsilon = epsilon;
+        this.paddleMovesPerBallTick = paddleMovesPerBallTick;
+    }
+
+    /**
+     * setDecisionInterval: ball ticks per decision while training<br>
+     * - 1 by default (a decision every ball tick); deploy with
+     *   pongGame.setDecisionInterval(player, ticks) to play as trained
+     *
+     * @param ticks ball ticks per decision, at least 1
+     */
+    public void setDecisionInterval(int ticks)
+    {
+        if (ticks < 1) throw new IllegalArgumentException("decision interval must be at least 1: " + ticks);
+        this.decisionInterval = ticks;
+    }
+
+    public int getDecisionInterval()
+    {
+        return decisionInterval;
+    }
+
+    /**
+     * train: plays numPoints points on numThreads threads, learning as it goes
+     *
+     * @param numPoints points to play, over all threads
+     * @param numThreads training threads
+     * @param reportPoints points between two learning curve lines
+     * @param out where to print the learning curve, or null
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public void train(long numPoints, int numThreads, long reportPoints, PrintStream out) throws InterruptedException
+    {
+        long start = System.nanoTime();
+        long target = points.get() + numPoints;
+        LongAdder windowWon = new LongAdder();
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        for (int t = 0; t < numThreads; t++)
+        {
+            SplittableRandom random = new SplittableRandom(t*0x9e3779b97f4a7c15L + System.nanoTime());
+            executor.execute(() -> {
+                PongGame pongGame = new PongGame();
+                pongGame.setVerbose(false);
+                Explorer explorer = new Explorer(random);
+                if (player == 1) pongGame.setCPUPlayers(explorer, null);
+                else pongGame.setCPUPlayers(null, explorer);
+                pongGame.setDecisionInterval(player, decisionInterval);
+                pongGame.setPaddleMovesPerTick(paddleMovesPerBallTick);
+                pongGame.startNewGame();
+                while (points.get() < target)
+                {
+                    boolean won = playPoint(pongGame, explorer);
+                    if (won)
+                    {
+                        pointsWon.increment();
+                        windowWon.increment();
+                    }
+                    long point = points.incrementAndGet();
+                    if (out != null && point % reportPoints == 0)
+                    {
+                        double seconds = (System.nanoTime() - start)/1e9;
+                        out.printf("points %d  won %.3f  states %d/%d  dropped %d  ticks/s %.0f  %.1f s%n",
+                                   point, windowWon.sumThenReset()/(double)reportPoints,
+                                   table.getOccupiedStates(), table.getCapacity(),
+                                   table.getDroppedStates(), ticks.sum()/seconds, seconds);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+
+    public long getPoints()
+    {
+        return points.get();
+    }
+
+    public long getPointsWon()
+    {
+        return pointsWon.sum();
+    }
+
+    public PongQTable getTable()
+    {
+        return table;
+    }
+
+    @Override
+    public int choosePaddleMove(PongGame pongGame, int player)
+    {
+        return ACTIONS[table.bestAction(table.slot(PongQTable.key(pongGame), false))];
+    }
+
+    // one episode: plays until a point is scored; the explorer updates the table at every decision
+    private boolean playPoint(PongGame pongGame, Explorer explorer)
+    {
+        int width = pongGame.getAttribute(GameAttributes.GAME_WIDTH);
+        int opponent = 3 - player;
+        explorer.decided = false;
+        while (true)
+        {
+            for (int m = 0; m < pongGame.getPaddleMovesPerTick(); m++)
+            {
+                pongGame.moveCPUPaddle(player, false);
+                pongGame.moveCPUPaddle(opponent, false);
+            }
+            pongGame.updateBall();
+            ticks.increment();
+
+            int x = pongGame.getAttribute(GameAttributes.BALL_X);
+            if (x > width || x < 0)
+            {
+                boolean won = (x > width) == (player == 1);
+                if (explorer.decided) update(explorer.slot, explorer.action, won ? 1.0f : -1.0f);
+                if (pongGame.isGameOver()) pongGame.startNewGame();   // (a miss before the first volleys restarts by itself)
+                return won;
+            }
+        }
+    }
+
+    private void update(int slot, int action, float target)
+    {
+        float q = table.get(slot, action);
+        table.set(slot, action, q + alpha*(target - q));
+    }
+
+    private int chooseAction(int slot, SplittableRandom random)
+    {
+        if (random.nextDouble() < epsilon) return random.nextInt(ACTIONS.length);
+        return table.bestAction(slot);
+    }
+
+    /**
+     * Explorer: the epsilon-greedy player of one training thread<br>
+     * - called by the game at every decision, it bootstraps the previous
+     *   decision of the point on the new state before choosing the next action
+     */
+    private final class Explorer implements PongPlayer {
+        final SplittableRandom random;
+        boolean decided = false;   // a decision was made in this point
+        int slot;
+        int action;
+
+        Explorer(SplittableRandom random)
+        {
+            this.random = random;
+        }
+
+        @Override
+        public int choosePaddleMove(PongGame pongGame, int player)
+        {
+            int nextSlot = table.slot(PongQTable.key(pongGame), true);
+            int nextAction = chooseAction(nextSlot, random);
+            if (decided)
+            {
+                float next = sarsa ? table.get(nextSlot, nextAction) : table.maxValue(nextSlot);
+                update(slot, action, gamma*next);
+            }
+            slot = nextSlot;
+            action = nextAction;
+            decided = true;
+            return ACTIONS[action];
+        }
+    }
+}
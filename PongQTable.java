@@ -0,0 +1,173 @@
+/*
+ * PongQTable - Q-values keyed by compact 64-bit game states
+ */
+package mlwithpong;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PongQTable: action values for tabular Q-learning<br>
+ * - a state is the position array (ball x, ball y, player 1 y, player 2 y)
+ *   plus the ball's dx and dy, packed into one long by key()<br>
+ * - an open-addressing table of capacity states with linear probing, keys in a long array and values in a float array, so
+ *   nothing is boxed. It does not grow: when full, new states are not
+ *   stored (counted by getDroppedStates())<br>
+ * <p>
+ * Hogwild: many threads read and write the table without locks. A free
+ * slot is claimed for a key with one compare-and-set, so two threads never
+ * store different states in one slot; value updates are plain float
+ * writes, and an update that races another one is simply lost, which
+ * stochastic gradient methods tolerate.
+ */
+public class PongQTable {
+
+    public static final int  NUM_ACTIONS = 3;               // up, stay, down
+
+    private static final long EMPTY = 0L;                   // no valid key is 0 (see key())
+    private static final int  OFFSET = 64;                  // positions may be a little outside the arena
+
+    private final AtomicLongArray keys;
+    private final int mask;
+
+    private final float[] values;                           // [slot*NUM_ACTIONS + action]
+    private final LongAdder occupied = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * PongQTable Constructor
+     *
+     * @param capacity states the table can hold (rounded up to a power of 2)
+     */
+    public PongQTable(int capacity)
+    {
+        int slots = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        keys = new AtomicLongArray(slots);
+        mask = slots - 1;
+        values = new float[slots*NUM_ACTIONS];
+    }
+
+    /**
+     * key: packs the state of a game into a long<br>
+     * - 12 bits each for ball x, ball y and the two paddles, and 8 bits
+     *   each for dx and dy, all offset so that they are positive; the
+     *   ball is always somewhere, so the key is never 0
+     *
+     * @param pongGame game to read the state of
+     * @return long the state key
+     */
+    public static long key(PongGame pongGame)
+    {
+        return key(pongGame.getAttribute(GameAttributes.BALL_X),
+                   pongGame.getAttribute(GameAttributes.BALL_Y),
+                   pongGame.getAttribute(GameAttributes.PLAYER_ONE_Y),
+                   pongGame.getAttribute(GameAttributes.PLAYER_TWO_Y),
+                   pongGame.getAttribute(GameAttributes.BALL_DX),
+                   pongGame.getAttribute(GameAttributes.BALL_DY));
+    }
+
+    public static long key(int x, int y, int playerOneY, int playerTwoY, int dx, int dy)
+    {
+        return  ((long)(x + OFFSET) & 0xfff)
+             | (((long)(y + OFFSET) & 0xfff) << 12)
+             | (((long)(playerOneY + OFFSET) & 0xfff) << 24)
+             | (((long)(playerTwoY + OFFSET) & 0xfff) << 36)
+             | (((long)(dx + 128) & 0xff) << 48)
+             | (((long)(dy + 128) & 0xff) << 56);
+    }
+
+    /**
+     * slot: finds the slot of a state, claiming a free one if it is new
+     *
+     * @param key state key from key()
+     * @param insert true to store the state if it is new
+     * @return int slot of the state, or -1 if it is not (and cannot be) stored
+     */
+    public int slot(long key, boolean insert)
+    {
+        int slot = (int)mix(key) & mask;
+        for (int probe = 0; probe <= mask; probe++)
+        {
+            long found = keys.get(slot);
+            if (found == key) return slot;
+            if (found == EMPTY)
+            {
+                if (!insert) return -1;
+                if (keys.compareAndSet(slot, EMPTY, key))
+                {
+                    occupied.increment();
+                    return slot;
+                }
+                if (keys.get(slot) == key) return slot;   // another thread stored it first
+            }
+            slot = (slot + 1) & mask;
+        }
+        dropped.increment();
+        return -1;
+    }
+
+    public float get(int slot, int action)
+    {
+        return (slot < 0) ? 0.0f : values[slot*NUM_ACTIONS + action];
+    }
+
+    public void set(int slot, int action, float value)
+    {
+        if (slot >= 0) values[slot*NUM_ACTIONS + action] = value;
+    }
+
+    /**
+     * bestAction: greedy action of a slot, ties to "stay"
+     *
+     * @return int action index: 0 up, 1 stay, 2 down
+     */
+    public int bestAction(int slot)
+    {
+        int best = 1;
+        for (int a = 0; a < NUM_ACTIONS; a++)
+        {
+            if (get(slot, a) > get(slot, best)) best = a;
+        }
+        return best;
+    }
+
+    public float maxValue(int slot)
+    {
+        return get(slot, bestAction(slot));
+    }
+
+    /**
+     * getCapacity: number of states the table can hold
+     *
+     * @return long capacity
+     */
+    public long getCapacity()
+    {
+        return keys.length();
+    }
+
+    /**
+     * getOccupiedStates: states stored so far
+     *
+     * @return long occupied states
+     */
+    public long getOccupiedStates()
+    {
+        return occupied.sum();
+    }
+
+    public long getDroppedStates()
+    {
+        return dropped.sum();
+    }
+
+    private static long mix(long key)
+    {   // murmur3 finalizer: spreads the packed fields over all bits
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
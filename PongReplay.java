@@ -0,0 +1,400 @@
+/*
+ * PongReplay - games stored as a seed and an input log, replayed by re-simulation
+ */
+package mlwithpong;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PongReplay: a recorded game that takes a few bytes per rally instead of
+ * four ints per frame<br>
+ * - a seeded game is fully determined by its configuration, its seed and
+ *   the paddle moves of its players, so that is all a replay stores: the
+ *   moves of every tick, as run-length-encoded tick patterns (a pattern is
+ *   the list of paddle moves made between two ball ticks; a CPU paddle
+ *   repeats the same pattern for long stretches)<br>
+ * - the frames are regenerated by re-simulating the game (Reader), so a
+ *   replay can only be played by a PongGame with the same configuration<br>
+ * - every checksumInterval ticks the log holds a checksum of the game
+ *   state, and the Reader stops with an IOException at the first one that
+ *   does not match, or at a tick or serve the rules do not allow (a tick
+ *   after a point was won, a serve during a rally), rather than showing a
+ *   game that never happened<br>
+ * <p>
+ * The recorded game must be played with the loop of startSimulatedMatch
+ * (per point: startNewGame, then updateBall and paddle moves until
+ * isGameOver), which is the loop the Reader re-simulates; any number of
+ * matches may be recorded into one replay.
+ * <p>
+ * Format: int MAGIC, byte VERSION, UTF configuration
+ * (PongGame.describeConfiguration), varlong seed, varint checksum interval,
+ * then entries, each a varint whose low 2 bits are its type:<br>
+ *   ENTRY_RUN:      count in the high bits, varint pattern id: count ticks of that pattern<br>
+ *   ENTRY_PATTERN:  move count in the high bits, one varint per move
+ *                   (zigzag(py) shifted left by 1, plus player - 1): defines the next pattern id<br>
+ *   ENTRY_SERVE:    startNewGame; 1 in the high bits if the scores were
+ *                   set to 0 first (the first serve of a match)<br>
+ *   ENTRY_CHECKSUM: varint checksum of the state after the previous tick
+ */
+public class PongReplay {
+
+    public static final int  MAGIC   = 0x5052504C; // "PRPL"
+    public static final byte VERSION = 1;
+
+    static final int ENTRY_RUN      = 0;
+    static final int ENTRY_PATTERN  = 1;
+    static final int ENTRY_SERVE    = 2;
+    static final int ENTRY_CHECKSUM = 3;
+
+    private PongReplay()
+    {
+    }
+
+    /**
+     * record: seeds a game and records it to a replay file until the
+     * recorder is closed
+     *
+     * @param pongGame game to record (played with the startSimulatedMatch loop)
+     * @param seed serve seed of the game
+     * @param file replay file to (over)write
+     * @param checksumInterval ticks between state checksums (e.g. 256)
+     * @return Recorder the recorder; close it when the game is over
+     * @throws IOException if the file cannot be written
+     */
+    public static Recorder record(PongGame pongGame, long seed, Path file, int checksumInterval) throws IOException
+    {
+        if (checksumInterval < 1) throw new IllegalArgumentException("checksum interval must be at least 1");
+        pongGame.setRandomSeed(seed);
+        Recorder recorder = new Recorder(pongGame, seed, file, checksumInterval);
+        pongGame.setReplayRecorder(recorder);
+        return recorder;
+    }
+
+    /**
+     * isReplay: whether a file starts like a replay
+     *
+     * @param file file to look at
+     * @return boolean true for a replay file
+     */
+    public static boolean isReplay(Path file)
+    {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file)))
+        {
+            return in.readInt() == MAGIC;
+        }
+        catch (IOException ioe) {
+            return false;
+        }
+    }
+
+    // checksum of the state a tick leaves behind
+    static int checksum(PongGame pongGame)
+    {
+        int h = 17;
+        h = 31*h + pongGame.getAttribute(GameAttributes.BALL_X);
+        h = 31*h + pongGame.getAttribute(GameAttributes.BALL_Y);
+        h = 31*h + pongGame.getAttribute(GameAttributes.BALL_DX);
+        h = 31*h + pongGame.getAttribute(GameAttributes.BALL_DY);
+        h = 31*h + pongGame.getAttribute(GameAttributes.PLAYER_ONE_Y);
+        h = 31*h + pongGame.getAttribute(GameAttributes.PLAYER_TWO_Y);
+        h = 31*h + pongGame.getAttribute(GameAttributes.PLAYER_ONE_SCORE);
+        h = 31*h + pongGame.getAttribute(GameAttributes.PLAYER_TWO_SCORE);
+        return h;
+    }
+
+    /**
+     * Recorder: writes the input log of one game (notified by PongGame)
+     */
+    public static final class Recorder implements Closeable {
+        private final PongGame pongGame;
+        private final DataOutputStream out;
+        private final int checksumInterval;
+        private final Map<Pattern, Integer> patternIds = new HashMap<>();
+
+        private int[] moves = new int[8];       // moves of the tick in progress, encoded
+        private int numMoves = 0;
+        private boolean inTick = false;         // a tick was started and not yet logged
+        private boolean served = false;
+        private boolean newMatch = false;       // the scores were reset since the last serve
+        private int runPattern = -1;
+        private int[] runMoves = null;
+        private long runLength = 0;
+        private long ticks = 0;
+
+        private Recorder(PongGame pongGame, long seed, Path file, int checksumInterval) throws IOException
+        {
+            this.pongGame = pongGame;
+            this.checksumInterval = checksumInterval;
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeUTF(pongGame.describeConfiguration());
+            VarInts.writeVarlong(out, seed);
+            VarInts.writeVarint(out, checksumInterval);
+        }
+
+        void startMatch()
+        {
+            try {
+                endTick();                      // (its checksum has the scores of the match that ended)
+            }
+            catch (IOException ioe) {
+                throw new IllegalStateException("cannot write replay", ioe);
+            }
+            newMatch = true;
+        }
+
+        void serve()
+        {
+            try {
+                endTick();
+                flushRun();
+                VarInts.writeVarint(out, (newMatch ? 1 << 2 : 0) | ENTRY_SERVE);
+                newMatch = false;
+                served = true;
+            }
+            catch (IOException ioe) {
+                throw new IllegalStateException("cannot write replay", ioe);
+            }
+        }
+
+        void tick()
+        {
+            if (!served) throw new IllegalStateException("recording must start with a serve (startNewGame)");
+            try {
+                endTick();
+            }
+            catch (IOException ioe) {
+                throw new IllegalStateException("cannot write replay", ioe);
+            }
+            inTick = true;
+        }
+
+        void move(int player, int py)
+        {
+            if (!inTick) throw new IllegalStateException("paddle moved before the first tick of a point");
+            if (numMoves == moves.length) moves = Arrays.copyOf(moves, 2*moves.length);
+            moves[numMoves++] = (VarInts.zigZag(py) << 1) | (player - 1);
+        }
+
+        public long getTicks()
+        {
+            return ticks;
+        }
+
+        /**
+         * close: logs the last tick and closes the file
+         *
+         * @throws IOException if the file cannot be written
+         */
+        @Override
+        public void close() throws IOException
+        {
+            pongGame.setReplayRecorder(null);
+            endTick();
+            flushRun();
+            out.close();
+        }
+
+        // logs the tick in progress (its moves are complete, and so is its isGameOver)
+        private void endTick() throws IOException
+        {
+            if (!inTick) return;
+            inTick = false;
+            if (runLength == 0 || !Arrays.equals(moves, 0, numMoves, runMoves, 0, runMoves.length))
+            {   // a different pattern than the run's (the only case that allocates)
+                Pattern pattern = new Pattern(Arrays.copyOf(moves, numMoves));
+                Integer id = patternIds.get(pattern);
+                if (id == null)
+                {
+                    flushRun();
+                    id = patternIds.size();
+                    patternIds.put(pattern, id);
+                    VarInts.writeVarint(out, (pattern.moves.length << 2) | ENTRY_PATTERN);
+                    for (int m : pattern.moves) VarInts.writeVarint(out, m);
+                }
+                flushRun();
+                runPattern = id;
+                runMoves = pattern.moves;
+            }
+            numMoves = 0;
+            runLength++;
+            ticks++;
+            if (ticks % checksumInterval == 0)
+            {
+                flushRun();
+                VarInts.writeVarint(out, ENTRY_CHECKSUM);
+                VarInts.writeVarint(out, checksum(pongGame));
+            }
+        }
+
+        private void flushRun() throws IOException
+        {
+            if (runLength == 0) return;
+            VarInts.writeVarlong(out, (runLength << 2) | ENTRY_RUN);
+            VarInts.writeVarint(out, runPattern);
+            runLength = 0;
+        }
+    }
+
+    /**
+     * Reader: re-simulates a replay, one tick (frame) at a time
+     */
+    public static final class Reader implements Closeable {
+        private final DataInputStream in;
+        private final PongGame pongGame = new PongGame();
+        private final List<int[]> patterns = new ArrayList<>();
+        private final int checksumInterval;
+        private int[] runMoves = null;
+        private long runLeft = 0;
+        private long ticks = 0;
+        private boolean served = false;
+        private boolean pointOver = false;      // the last isGameOver ended the point
+
+        /**
+         * Reader Constructor: opens a replay
+         *
+         * @param file replay file
+         * @throws IOException if the file is not a replay of this configuration
+         */
+        public Reader(Path file) throws IOException
+        {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) throw new IOException("not a replay file");
+            String configuration = in.readUTF();
+            if (!configuration.equals(pongGame.describeConfiguration()))
+            {
+                throw new IOException("replay of configuration " + configuration
+                                      + ", this game is " + pongGame.describeConfiguration());
+            }
+            pongGame.setVerbose(false);
+            pongGame.setRandomSeed(VarInts.readVarlong(in));
+            checksumInterval = VarInts.readVarint(in);
+        }
+
+        /**
+         * nextFrame: plays the next tick
+         *
+         * @return boolean false at the end of the replay
+         * @throws IOException if the file is damaged or the re-simulation diverged
+         */
+        public boolean nextFrame() throws IOException
+        {
+            while (runLeft == 0)
+            {
+                long header;
+                try {
+                    header = VarInts.readVarlong(in);
+                }
+                catch (EOFException eof) {
+                    return false;
+                }
+                int type = (int)(header & 3);
+                if (type == ENTRY_PATTERN)
+                {
+                    int[] moves = new int[(int)(header >>> 2)];
+                    for (int m = 0; m < moves.length; m++) moves[m] = VarInts.readVarint(in);
+                    patterns.add(moves);
+                }
+                else if (type == ENTRY_SERVE)
+                {
+                    if (served && !pointOver) throw diverged("a serve before the point was over");
+                    if ((header >>> 2) == 1) pongGame.startMatch();
+                    pongGame.startNewGame();
+                    pointOver = pongGame.isGameOver();   // (the check before the first tick of the point)
+                    served = true;
+                }
+                else if (type == ENTRY_CHECKSUM)
+                {
+                    int expected = VarInts.readVarint(in);
+                    if (ticks % checksumInterval != 0) throw diverged("a checksum between intervals");
+                    if (checksum(pongGame) != expected) throw diverged("checksum mismatch");
+                }
+                else
+                {
+                    int id = VarInts.readVarint(in);
+                    if (id >= patterns.size()) throw new IOException("unknown tick pattern " + id);
+                    runMoves = patterns.get(id);
+                    runLeft = header >>> 2;
+                }
+            }
+            if (!served || pointOver) throw diverged("a tick after the point was over");
+            pongGame.updateBall();
+            for (int m : runMoves)
+            {
+                int py = VarInts.unZigZag(m >>> 1);
+                if ((m & 1) == 0) pongGame.movePlayerOnePaddle(py);
+                else pongGame.movePlayerTwoPaddle(py);
+            }
+            pointOver = pongGame.isGameOver();
+            runLeft--;
+            ticks++;
+            return true;
+        }
+
+        private IOException diverged(String reason)
+        {
+            return new IOException("replay diverged before tick " + ticks + " (" + reason + ")");
+        }
+
+        /**
+         * getGame: the re-simulated game, in the state of the last frame
+         *
+         * @return PongGame the game (read it, do not play it)
+         */
+        public PongGame getGame()
+        {
+            return pongGame;
+        }
+
+        public long getTicks()
+        {
+            return ticks;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Pattern: the paddle moves of one tick (a map key)
+     */
+    private static final class Pattern {
+        final int[] moves;
+        final int hash;
+
+        Pattern(int[] moves)
+        {
+            this.moves = moves;
+            this.hash = Arrays.hashCode(moves);
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            return (other instanceof Pattern) && Arrays.equals(moves, ((Pattern)other).moves);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,513 @@
+/*
+ * PongReplayGrid - plays many saved games side by side in one window
+ */
+package mlwithpong;
+
+import java.awt.Canvas;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Frame;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Toolkit;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * PongReplayGrid: plays N saved games (txt frame files of the Python ML
+ * code, or PongReplay files) side by side, as a grid of tiles in one window<br>
+ * - one render thread draws every tile into one shared back buffer and
+ *   copies it to the window once per screen frame (60 per second), however
+ *   many tiles there are; the game clock runs at ticksPerSecond (100, as
+ *   PongSavedGame), and a tile shows the newest tick its clock has reached,
+ *   skipping the ticks between two screen frames<br>
+ * - the files are decoded by a few background decoder threads (one per
+ *   core, each owning every n-th tile) into a ring of frames per tile, so
+ *   parsing and re-simulation never happen on the render thread; a ring
+ *   has one writer and one reader and needs no lock<br>
+ * - synchronized clocks: every tile shows the same tick of its game, and
+ *   the shared clock waits if a decoder falls behind (to compare
+ *   checkpoints move by move); independent clocks: every tile has its own
+ *   clock, and a tile that falls behind holds without stopping the others<br>
+ * - a game that ends holds its last frame; a replay that fails (damaged,
+ *   or diverged) shows its error in its tile
+ */
+public class PongReplayGrid {
+
+    private static final int FRAME_INTS     = 6;      // x, y, playerOneY, playerTwoY, scores (-1: unknown)
+    private static final int RING_FRAMES    = 256;    // per tile: 2.5 seconds of game at 100 ticks per second
+    private static final long SCREEN_NANOS  = 1000000000L/60;
+    private static final long IDLE_NANOS    = 2000000L;   // decoder pause when every ring is full
+    private static final int STATUS_HEIGHT  = 14;     // status line below the grid
+
+    private final Tile[] tiles;
+    private final boolean synchronizedClocks;
+    private final int ticksPerSecond;
+    private final Thread[] decoders;
+
+    private int columns;
+    private int cellWidth;
+    private int cellHeight;
+    private BufferedImage backBuffer;
+    private Canvas canvas;
+    private final Font font = new Font(Font.MONOSPACED, Font.PLAIN, 10);
+
+    // render thread only
+    private long sharedClockStart;
+    private long renderNanos;                // smoothed time to draw one screen frame
+    private long stalls;                     // screen frames a clock waited for a decoder
+
+    /**
+     * PongReplayGrid constructor: opens the games, plays them in one window
+     * until it is closed
+     *
+     * @param filenames saved games (txt frame files or replays)
+     * @param synchronizedClocks true for one clock for all tiles, false for a clock per tile
+     * @param ticksPerSecond game speed (100 is the speed of PongSavedGame)
+     */
+    public PongReplayGrid(List<String> filenames, boolean synchronizedClocks, int ticksPerSecond)
+    {
+        this.synchronizedClocks = synchronizedClocks;
+        this.ticksPerSecond = ticksPerSecond;
+        tiles = new Tile[filenames.size()];
+        try {
+            for (int t = 0; t < tiles.length; t++) tiles[t] = new Tile(filenames.get(t));
+        }
+        catch (IOException ioe)
+        {
+            System.err.println("Replay grid: " + ioe.getMessage());
+            System.exit(1);
+        }
+        decoders = new Thread[Math.min(tiles.length, Runtime.getRuntime().availableProcessors())];
+
+        Dimension screen = Toolkit.getDefaultToolkit().getScreenSize();
+        layout(screen.width*9/10, screen.height*9/10);
+        initDisplay();
+        startDecoders();
+        try {
+            renderLoop();
+        }
+        catch (InterruptedException ie)
+        {
+            System.err.println("Interrupted Exception Thrown");
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * layout: a near-square grid that fits in maxWidth x maxHeight, with
+     * tiles of the aspect of the first game and no larger than it
+     */
+    private void layout(int maxWidth, int maxHeight)
+    {
+        int gameWidth  = tiles[0].width;
+        int gameHeight = tiles[0].height;
+        columns = (int)Math.ceil(Math.sqrt(tiles.length));
+        int rows = (tiles.length + columns - 1)/columns;
+        cellWidth  = Math.min(gameWidth, maxWidth/columns);
+        cellHeight = Math.min(gameHeight, (maxHeight - STATUS_HEIGHT)/rows);
+        // keep the aspect of the games
+        if (cellWidth*gameHeight > cellHeight*gameWidth) cellWidth = cellHeight*gameWidth/gameHeight;
+        else cellHeight = cellWidth*gameHeight/gameWidth;
+        backBuffer = new BufferedImage(columns*cellWidth, rows*cellHeight + STATUS_HEIGHT, BufferedImage.TYPE_INT_RGB);
+    }
+
+    private void initDisplay()
+    {
+        canvas = new Canvas() {
+            @Override
+            public void paint(Graphics g) {
+                synchronized (backBuffer)
+                {
+                    g.drawImage(backBuffer, 0, 0, null);
+                }
+            }
+
+            @Override
+            public void update(Graphics g) {
+                paint(g);           // (no clearing: the back buffer covers the canvas)
+            }
+        };
+        canvas.setSize(backBuffer.getWidth(), backBuffer.getHeight());
+        canvas.setIgnoreRepaint(true);
+
+        Frame frame = new Frame("Animates " + tiles.length + " saved games");
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent evt) {
+                System.exit(0);
+            }
+        });
+        frame.setLocation(0, 0);
+        frame.add(canvas);
+        frame.pack();
+        frame.setResizable(false);
+        frame.setVisible(true);
+    }
+
+    /**
+     * startDecoders: starts the decoder threads; decoder d fills the rings
+     * of tiles d, d + n, d + 2n, ...
+     */
+    private void startDecoders()
+    {
+        for (int d = 0; d < decoders.length; d++)
+        {
+            int first = d;
+            decoders[d] = new Thread(() -> decode(first), "pong-grid-decoder-" + d);
+            decoders[d].setDaemon(true);
+            decoders[d].start();
+        }
+    }
+
+    private void decode(int first)
+    {
+        while (true)
+        {
+            boolean busy = false;
+            boolean open = false;
+            for (int t = first; t < tiles.length; t += decoders.length)
+            {
+                busy |= tiles[t].fill();
+                open |= !tiles[t].ended;
+            }
+            if (!open) return;
+            if (!busy) LockSupport.parkNanos(IDLE_NANOS);
+        }
+    }
+
+    // the render thread: one back buffer drawn and copied per screen frame
+    private void renderLoop() throws InterruptedException
+    {
+        long start = System.nanoTime();
+        sharedClockStart = start;
+        for (Tile tile : tiles) tile.clockStart = start;
+        long next = start;
+        while (true)
+        {
+            long now = System.nanoTime();
+            render(now);
+            Graphics g = canvas.getGraphics();
+            if (g != null)
+            {
+                synchronized (backBuffer)
+                {
+                    g.drawImage(backBuffer, 0, 0, null);
+                }
+                g.dispose();
+                Toolkit.getDefaultToolkit().sync();
+            }
+            next += SCREEN_NANOS;
+            long sleep = next - System.nanoTime();
+            if (sleep > 0) Thread.sleep(sleep/1000000L, (int)(sleep%1000000L));
+            else next = System.nanoTime();           // too slow for the screen: do not catch up
+        }
+    }
+
+    /**
+     * render: moves the clocks to now and draws every tile into the back buffer
+     *
+     * @param now System.nanoTime() of the screen frame
+     */
+    private void render(long now)
+    {
+        long begin = System.nanoTime();
+        advanceClocks(now);
+        synchronized (backBuffer)
+        {
+            Graphics2D g = backBuffer.createGraphics();
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, backBuffer.getWidth(), backBuffer.getHeight());
+            g.setFont(font);
+            for (int t = 0; t < tiles.length; t++)
+            {
+                drawTile(g, tiles[t], (t % columns)*cellWidth, (t/columns)*cellHeight);
+            }
+            g.setColor(Color.GREEN);
+            g.drawString(String.format("%d games, %s clocks, %.2f ms/frame, %d stalls", tiles.length,
+                                       synchronizedClocks ? "synchronized" : "independent", renderNanos/1e6, stalls),
+                         2, backBuffer.getHeight() - 3);
+            g.dispose();
+        }
+        long elapsed = System.nanoTime() - begin;
+        renderNanos = (renderNanos == 0) ? elapsed : renderNanos + (elapsed - renderNanos)/16;
+    }
+
+    private void advanceClocks(long now)
+    {
+        if (synchronizedClocks)
+        {   // the shared tick may not pass a tile that is still decoding
+            long target = ticksAt(now - sharedClockStart);
+            long reachable = target;
+            for (Tile tile : tiles) if (!tile.ended) reachable = Math.min(reachable, tile.decoded());
+            if (reachable < target)
+            {
+                sharedClockStart += (target - reachable)*1000000000L/ticksPerSecond;     // the clock waits
+                stalls++;
+            }
+            for (Tile tile : tiles) tile.advanceTo(reachable);
+        }
+        else
+        {
+            for (Tile tile : tiles)
+            {
+                long target = ticksAt(now - tile.clockStart);
+                long reachable = Math.min(target, tile.decoded());
+                if (reachable < target && !tile.ended)
+                {
+                    tile.clockStart += (target - reachable)*1000000000L/ticksPerSecond;
+                    stalls++;
+                }
+                tile.advanceTo(reachable);
+            }
+        }
+    }
+
+    private long ticksAt(long nanos)
+    {
+        return nanos*ticksPerSecond/1000000000L;
+    }
+
+    // one game scaled into a cell (positions scaled, sizes at least 1 pixel)
+    private void drawTile(Graphics2D g, Tile tile, int cellX, int cellY)
+    {
+        int[] f = tile.frame;
+        int w = tile.width;
+        int h = tile.height;
+        int paddleWidth = Math.max(1, 3*cellWidth/w);
+        int paddleHeight = Math.max(1, tile.paddleHeight*cellHeight/h);
+        int ball = Math.max(1, 3*cellWidth/w);
+
+        g.setColor(Color.DARK_GRAY);
+        g.drawRect(cellX, cellY, cellWidth - 1, cellHeight - 1);
+        g.setColor(Color.WHITE);
+        g.fillRect(cellX + cellWidth/2, cellY, 1, cellHeight);
+        if (tile.shown > 0)
+        {
+            g.fillRect(cellX, cellY + f[2]*cellHeight/h - paddleHeight/2, paddleWidth, paddleHeight);
+            g.fillRect(cellX + cellWidth - paddleWidth, cellY + f[3]*cellHeight/h - paddleHeight/2, paddleWidth, paddleHeight);
+            g.fillRect(cellX + f[0]*cellWidth/w - ball/2, cellY + f[1]*cellHeight/h - ball/2, ball, ball);
+        }
+        if (cellWidth < 80) return;     // too small for text
+        g.setColor(Color.GREEN);
+        g.drawString(tile.name, cellX + 3, cellY + cellHeight - 4);
+        if (f[4] >= 0)
+        {
+            g.drawString(Integer.toString(f[4]), cellX + cellWidth/2 - 14, cellY + 11);
+            g.drawString(Integer.toString(f[5]), cellX + cellWidth/2 + 6, cellY + 11);
+        }
+        if (tile.error != null)
+        {
+            g.setColor(Color.RED);
+            g.drawString(tile.error, cellX + 3, cellY + cellHeight/2);
+        }
+    }
+
+    /**
+     * Tile: one game, its decoded frames and its clock<br>
+     * - the ring is written by one decoder thread and read by the render
+     *   thread; written and read count frames, and each is only advanced
+     *   by its own thread (a volatile store publishes the frames before it)
+     */
+    static final class Tile {
+        final String name;
+        final int width;
+        final int height;
+        final int paddleHeight;
+        private final FrameSource source;
+        private final int[] ring = new int[RING_FRAMES*FRAME_INTS];
+        private final int[] decodedFrame = new int[FRAME_INTS];
+        private volatile long written = 0;
+        private volatile long read = 0;
+        volatile boolean ended = false;
+        volatile String error = null;
+
+        // render thread only
+        final int[] frame = new int[FRAME_INTS];
+        long shown = 0;
+        long clockStart;
+
+        Tile(String filename) throws IOException
+        {
+            Path file = Paths.get(filename);
+            name = file.getFileName().toString();
+            source = PongReplay.isReplay(file) ? new ReplaySource(file) : new TextSource(file);
+            width = source.width;
+            height = source.height;
+            paddleHeight = source.paddleHeight;
+        }
+
+        // decoder thread: decodes until the ring is full; true if it decoded anything
+        boolean fill()
+        {
+            if (ended) return false;
+            long w = written;
+            long free = RING_FRAMES - (w - read);
+            long decoded = 0;
+            boolean last = false;
+            String message = null;
+            try {
+                while (decoded < free && !last)
+                {
+                    last = !source.next(decodedFrame);
+                    if (last) break;
+                    System.arraycopy(decodedFrame, 0, ring, (int)((w + decoded) % RING_FRAMES)*FRAME_INTS, FRAME_INTS);
+                    decoded++;
+                    if (decoded % 32 == 0) written = w + decoded;      // publish in batches
+                }
+            }
+            catch (IOException ioe) {
+                last = true;
+                message = ioe.getMessage();
+            }
+            written = w + decoded;
+            if (last) end(message);                 // (after the last frames are published)
+            return decoded > 0;
+        }
+
+        private void end(String message)
+        {
+            error = message;
+            ended = true;
+            try {
+                source.close();
+            }
+            catch (IOException ioe) {
+                // (nothing more to read)
+            }
+        }
+
+        // frames decoded so far (shown or waiting in the ring)
+        long decoded()
+        {
+            return written;
+        }
+
+        // render thread: shows tick (to - 1), dropping the frames before it
+        void advanceTo(long to)
+        {
+            long w = written;
+            if (to > w) to = w;
+            if (to <= shown) return;
+            System.arraycopy(ring, (int)((to - 1) % RING_FRAMES)*FRAME_INTS, frame, 0, FRAME_INTS);
+            shown = to;
+            read = to;
+        }
+    }
+
+    /**
+     * FrameSource: the frames of one saved game, decoded in order
+     */
+    abstract static class FrameSource implements Closeable {
+        int width;
+        int height;
+        int paddleHeight;
+
+        /**
+         * next: decodes the next frame
+         *
+         * @param frame x, y, playerOneY, playerTwoY, playerOneScore, playerTwoScore (-1 if unknown)
+         * @return boolean false at the end of the game
+         * @throws IOException if the file is damaged
+         */
+        abstract boolean next(int[] frame) throws IOException;
+    }
+
+    // a txt file of the Python ML code: # width height paddleHeight dataCount, then one number per line
+    private static final class TextSource extends FrameSource {
+        private final BufferedReader reader;
+        private final int dataCount;
+        private int counter = 0;
+
+        TextSource(Path file) throws IOException
+        {
+            reader = Files.newBufferedReader(file);
+            String header = reader.readLine();
+            if (header == null) throw new IOException(file + ": no header");
+            try {
+                StringTokenizer tokenizer = new StringTokenizer(header, " ");
+                tokenizer.nextToken(); // #
+                width        = Integer.parseInt(tokenizer.nextToken());
+                height       = Integer.parseInt(tokenizer.nextToken());
+                paddleHeight = Integer.parseInt(tokenizer.nextToken());
+                dataCount    = Integer.parseInt(tokenizer.nextToken());
+            }
+            catch (RuntimeException re) {
+                throw new IOException(file + ": bad header " + header);
+            }
+        }
+
+        @Override
+        boolean next(int[] frame) throws IOException
+        {
+            if (counter >= dataCount) return false;
+            for (int i = 0; i < 4; i++)
+            {
+                String line = reader.readLine();
+                if (line == null) return false;
+                try {
+                    frame[i] = Integer.parseInt(line.trim());
+                }
+                catch (NumberFormatException nfe) {
+                    throw new IOException("bad number " + line + " after " + counter + " values");
+                }
+            }
+            frame[4] = -1;
+            frame[5] = -1;
+            counter += 4;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            reader.close();
+        }
+    }
+
+    // a PongReplay, re-simulated
+    private static final class ReplaySource extends FrameSource {
+        private final PongReplay.Reader reader;
+
+        ReplaySource(Path file) throws IOException
+        {
+            reader = new PongReplay.Reader(file);
+            PongGame pongGame = reader.getGame();
+            width        = pongGame.getAttribute(GameAttributes.GAME_WIDTH);
+            height       = pongGame.getAttribute(GameAttributes.GAME_HEIGHT);
+            paddleHeight = pongGame.getAttribute(GameAttributes.PADDLE_HEIGHT);
+        }
+
+        @Override
+        boolean next(int[] frame) throws IOException
+        {
+            if (!reader.nextFrame()) return false;
+            PongGame pongGame = reader.getGame();
+            frame[0] = pongGame.getAttribute(GameAttributes.BALL_X);
+            frame[1] = pongGame.getAttribute(GameAttributes.BALL_Y);
+            frame[2] = pongGame.getAttribute(GameAttributes.PLAYER_ONE_Y);
+            frame[3] = pongGame.getAttribute(GameAttributes.PLAYER_TWO_Y);
+            frame[4] = pongGame.getAttribute(GameAttributes.PLAYER_ONE_SCORE);
+            frame[5] = pongGame.getAttribute(GameAttributes.PLAYER_TWO_SCORE);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            reader.close();
+        }
+    }
+}
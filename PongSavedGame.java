@@ -11,6 +11,7 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.Scanner;
 import java.util.StringTokenizer;
 
@@ -44,11 +45,17 @@ public class PongSavedGame {
     
     /**
      * PongSaved constructor: starts playing game with data saved in txt file
+     * (or in a PongReplay input log, whose frames are re-simulated as it plays)
      * 
-     * @param filename filename of txt file of game data header,x,y,p1y,p2y...
+     * @param filename filename of txt file of game data header,x,y,p1y,p2y..., or of a replay
      */
     public PongSavedGame(String filename)
     {
+        if (PongReplay.isReplay(java.nio.file.Paths.get(filename)))
+        {
+            playReplay(filename);
+            return;
+        }
         try {
             Scanner scanner = openGameDatafile(filename);
             initDisplay();
@@ -75,6 +82,59 @@ public class PongSavedGame {
         System.exit(0);
     }
     
+    /**
+     * PongSaved constructor: watches a live game broadcast by a PongSpectatorServer
+     * 
+     * @param host host of the spectator server, usually "localhost"
+     * @param port port of the spectator server
+     * @param matchId match to watch, or 0 for the first match the server announces
+     */
+    public PongSavedGame(String host, int port, int matchId)
+    {
+        try (PongSpectatorClient client = new PongSpectatorClient(host, port, matchId)) {
+            PongSpectatorClient.MatchView match = null;
+            while (match == null)
+            {
+                if (client.readMessage() == PongSpectatorServer.MSG_MATCH) match = client.getLastMatch();
+            }
+            gameWidth    = match.width;
+            gameHeight   = match.height;
+            paddleHeight = match.paddleHeight;
+            initDisplay();
+            animateSpectatedGame(client, match);
+        }
+        catch (IOException ioe)
+        {
+            System.err.println("IO Exception Thrown");
+            ioe.printStackTrace();
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+    
+    private void playReplay(String filename)
+    {
+        try (PongReplay.Reader reader = new PongReplay.Reader(java.nio.file.Paths.get(filename))) {
+            PongGame pongGame = reader.getGame();
+            gameWidth    = pongGame.getAttribute(GameAttributes.GAME_WIDTH);
+            gameHeight   = pongGame.getAttribute(GameAttributes.GAME_HEIGHT);
+            paddleHeight = pongGame.getAttribute(GameAttributes.PADDLE_HEIGHT);
+            initDisplay();
+            animateReplay(reader);
+        }
+        catch (IOException ioe)
+        {
+            System.err.println("Replay: " + ioe.getMessage());
+            System.exit(1);
+        }
+        catch (InterruptedException ie)
+        {
+            System.err.println("Interrupted Exception Thrown");
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+    
     private Scanner openGameDatafile(String filename) throws Exception
     {
         File gameFile = new File(filename);
@@ -155,6 +215,49 @@ public class PongSavedGame {
         frame.setVisible(true);
     }
     
+    private void animateSpectatedGame(PongSpectatorClient client, PongSpectatorClient.MatchView match) throws IOException
+    {   // frames arrive as fast as the game runs, so repaint at most every 10 milliseconds
+        // - returns when the server ends the match
+        long lastRepaint = 0;
+        while (true)
+        {
+            byte type = client.readMessage();
+            if (client.getLastMatch() != match) continue;
+            if (type == PongSpectatorServer.MSG_END)
+            {
+                pongCanvas.repaint();
+                return;
+            }
+            if (type != PongSpectatorServer.MSG_FRAME) continue;
+            x          = match.getBallX();
+            y          = match.getBallY();
+            playerOneY = match.getPlayerOneY();
+            playerTwoY = match.getPlayerTwoY();
+            
+            long now = System.nanoTime();
+            if (now - lastRepaint >= 10000000L)
+            {
+                pongCanvas.repaint();
+                lastRepaint = now;
+            }
+        }
+    }
+    
+    private void animateReplay(PongReplay.Reader reader) throws IOException, InterruptedException
+    {   // one re-simulated tick per frame, at the pace of animateSavedGame
+        PongGame pongGame = reader.getGame();
+        while (reader.nextFrame())
+        {
+            x          = pongGame.getAttribute(GameAttributes.BALL_X);
+            y          = pongGame.getAttribute(GameAttributes.BALL_Y);
+            playerOneY = pongGame.getAttribute(GameAttributes.PLAYER_ONE_Y);
+            playerTwoY = pongGame.getAttribute(GameAttributes.PLAYER_TWO_Y);
+            pongCanvas.repaint();
+            Thread.sleep(10);
+        }
+        System.out.println(reader.getTicks());
+    }
+    
     private void animateSavedGame(Scanner scanner) throws InterruptedException
     {   
         int counter = 0;
@@ -0,0 +1,85 @@
+/*
+ * PongSelfPlay - one model playing both paddles
+ */
+package mlwithpong;
+
+/**
+ * PongSelfPlay: a PongBatchPolicy playing against itself<br>
+ * - set as both CPU players of a game (setCPUPlayers(selfPlay, selfPlay));
+ *   the right paddle sees the observation, the left paddle the mirrored
+ *   observation, so both see themselves on the right<br>
+ * - batched: when the left paddle asks for its move, both observations
+ *   are written into one buffer and the model is called once for both
+ *   paddles; the right paddle then gets the move decided with it, if it
+ *   asks on the same tick (with other decision intervals it decides
+ *   again). Both moves are decided on the same state, before either
+ *   paddle moves<br>
+ * - the observation buffer is reused, so a tick allocates nothing but
+ *   what the observation allocates itself
+ */
+public class PongSelfPlay implements PongPlayer {
+
+    private final PongBatchPolicy model;
+    private final PongObservation observation;
+    private final PongObservation mirroredObservation;
+    private final int[] moves = new int[2];      // [0] left paddle, [1] right paddle
+    private float[] observations = null;         // [left view, right view]
+    private int size = 0;
+    private PongGame observedGame = null;        // game the observations are registered on
+    private int rightMoveTick = -1;              // tick of the right move decided with the left one (-1: none)
+    private long batches = 0;
+
+    /**
+     * PongSelfPlay Constructor
+     *
+     * @param model policy for both paddles, trained on the right paddle
+     * @param observation what the model sees of the right paddle (one of
+     *        PongObservations; the left paddle sees it mirrored)
+     */
+    public PongSelfPlay(PongBatchPolicy model, PongObservation observation)
+    {
+        this.model = model;
+        this.observation = observation;
+        this.mirroredObservation = PongObservations.mirrored(observation);
+    }
+
+    @Override
+    public int choosePaddleMove(PongGame pongGame, int player)
+    {
+        int tick = pongGame.getAttribute(GameAttributes.NUM_TICKS);
+        if (player == 2 && rightMoveTick == tick && pongGame == observedGame)
+        {
+            rightMoveTick = -1;
+            return moves[1];
+        }
+        decideBoth(pongGame);
+        rightMoveTick = (player == 1) ? tick : -1;
+        return moves[player - 1];
+    }
+
+    /**
+     * getBatches: number of model calls so far (one per tick in self-play)
+     *
+     * @return long model calls
+     */
+    public long getBatches()
+    {
+        return batches;
+    }
+
+    private void decideBoth(PongGame pongGame)
+    {
+        if (pongGame != observedGame)
+        {
+            pongGame.addObservation(observation);
+            pongGame.addObservation(mirroredObservation);
+            size = observation.getSize(pongGame);
+            if (observations == null || observations.length != 2*size) observations = new float[2*size];
+            observedGame = pongGame;
+        }
+        pongGame.observe(mirroredObservation, observations, 0);
+        pongGame.observe(observation, observations, size);
+        model.choosePaddleMoves(observations, size, 2, moves);
+        batches++;
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * PongSequentialTest - stops a policy-vs-policy evaluation as soon as it is decided
+ */
+package mlwithpong;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * PongSequentialTest: does player B win more points than player A?<br>
+ * - a sequential probability ratio test (Wald's SPRT) on point outcomes:
+ *   H0, B wins a point with probability p0 (e.g. 0.5: no better), against
+ *   H1, B wins with probability p1 (e.g. 0.55); every point moves the log
+ *   likelihood ratio, and the test stops when it crosses a bound, with
+ *   false positive rate alpha and false negative rate beta<br>
+ * - points stream in from numThreads games played in parallel; match m is
+ *   seeded with (seed + m) and B plays the right paddle in even matches and
+ *   the left paddle in odd ones, so neither side of the table favours B<br>
+ * - every thread plays with its own players (from the factories), so
+ *   players need not be thread-safe<br>
+ * - a rally that reaches MAX_TICKS_PER_POINT is dropped (it says nothing
+ *   about either player)<br>
+ * - the result compares the points and CPU time used with the fixed number
+ *   of points a fixed-length test with the same alpha and beta needs
+ *   (the normal approximation of the binomial test)
+ */
+public class PongSequentialTest {
+
+    public static final int ACCEPT_H1 = 1;      // B is better (p >= p1)
+    public static final int ACCEPT_H0 = 0;      // B is not better (p <= p0)
+    public static final int UNDECIDED = -1;     // maxPoints reached first
+
+    private static final int MAX_TICKS_PER_POINT = 20000;   // as PongESTrainer
+
+    private final Supplier<PongPlayer> playerA;
+    private final Supplier<PongPlayer> playerB;
+    private final double p0;
+    private final double p1;
+    private final double alpha;
+    private final double beta;
+    private final long maxPoints;
+    private final int numThreads;
+    private final long seed;
+
+    private final double winStep;               // log likelihood ratio step of a point won by B
+    private final double lossStep;              // ... and of a point lost by B
+    private final double upperBound;            // accept H1 at or above
+    private final double lowerBound;            // accept H0 at or below
+
+    // guarded by this
+    private double llr;
+    private long points;
+    private long pointsWonByB;
+    private int decision;
+    private volatile boolean stopped;
+
+    private final AtomicLong nextMatch = new AtomicLong();
+    private final AtomicLong playedPoints = new AtomicLong();    // including points after the decision
+    private final AtomicLong matches = new AtomicLong();
+    private final AtomicLong cpuNanos = new AtomicLong();
+
+    /**
+     * PongSequentialTest Constructor
+     *
+     * @param playerA factory of the reference player
+     * @param playerB factory of the challenger
+     * @param p0 point win probability of B under H0 (B is not better)
+     * @param p1 point win probability of B under H1 (B is better), above p0
+     * @param alpha probability of accepting H1 when H0 holds
+     * @param beta probability of accepting H0 when H1 holds
+     * @param maxPoints most points to play before giving up undecided
+     * @param numThreads games played in parallel
+     * @param seed seed of the matches (match m serves with seed + m)
+     */
+    public PongSequentialTest(Supplier<PongPlayer> playerA, Supplier<PongPlayer> playerB, double p0, double p1,
+                              double alpha, double beta, long maxPoints, int numThreads, long seed)
+    {
+        if (!(0.0 < p0 && p0 < p1 && p1 < 1.0)) throw new IllegalArgumentException("need 0 < p0 < p1 < 1");
+        this.playerA = playerA;
+        this.playerB = playerB;
+        this.p0 = p0;
+        this.p1 = p1;
+        this.alpha = alpha;
+        this.beta = beta;
+        this.maxPoints = maxPoints;
+        this.numThreads = numThreads;
+        this.seed = seed;
+        winStep    = Math.log(p1/p0);
+        lossStep   = Math.log((1.0 - p1)/(1.0 - p0));
+        upperBound = Math.log((1.0 - beta)/alpha);
+        lowerBound = Math.log(beta/(1.0 - alpha));
+    }
+
+    /**
+     * fixedSamplePoints: points a fixed-length one-sided test of p0 against
+     * p1 needs for the same alpha and beta
+     *
+     * @return long number of points
+     */
+    public long fixedSamplePoints()
+    {
+        double za = normalQuantile(1.0 - alpha);
+        double zb = normalQuantile(1.0 - beta);
+        double n = (za*Math.sqrt(p0*(1.0 - p0)) + zb*Math.sqrt(p1*(1.0 - p1)))/(p1 - p0);
+        return (long)Math.ceil(n*n);
+    }
+
+    /**
+     * run: plays points until the test decides (or maxPoints)
+     *
+     * @return Result the decision and what it cost
+     * @throws InterruptedException if interrupted while waiting for the games
+     */
+    public Result run() throws InterruptedException
+    {
+        synchronized (this)
+        {
+            llr = 0.0;
+            points = 0;
+            pointsWonByB = 0;
+            decision = UNDECIDED;
+            stopped = false;
+        }
+        nextMatch.set(0);
+        playedPoints.set(0);
+        matches.set(0);
+        cpuNanos.set(0);
+        long start = System.nanoTime();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++)
+        {
+            Thread thread = new Thread(this::play, "pong-sprt-" + t);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) thread.join();
+        synchronized (this)
+        {
+            return new Result(decision, points, pointsWonByB, llr, playedPoints.get(), matches.get(),
+                              cpuNanos.get(), System.nanoTime() - start, fixedSamplePoints());
+        }
+    }
+
+    // one game thread: plays matches until the test stops
+    private void play()
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        long cpuStart = bean.isCurrentThreadCpuTimeSupported() ? bean.getCurrentThreadCpuTime() : System.nanoTime();
+        PongPlayer a = playerA.get();
+        PongPlayer b = playerB.get();
+        while (!stopped)
+        {
+            long match = nextMatch.getAndIncrement();
+            boolean bRight = (match % 2 == 0);
+            PongGame pongGame = new PongGame();
+            pongGame.setVerbose(false);
+            pongGame.setRandomSeed(seed + match);
+            if (bRight) pongGame.setCPUPlayers(a, b);
+            else pongGame.setCPUPlayers(b, a);
+
+            while (!stopped && !pongGame.isMatchOver())
+            {
+                int before = pongGame.getAttribute(GameAttributes.PLAYER_TWO_SCORE);
+                pongGame.startNewGame();
+                int ticks = 0;
+                while (!pongGame.isGameOver() && ticks++ < MAX_TICKS_PER_POINT)
+                {
+                    pongGame.updateBall();
+                    pongGame.moveCPUPlayerPaddle(1);
+                    pongGame.moveCPUPlayerPaddle(2);
+                }
+                playedPoints.incrementAndGet();
+                if (ticks > MAX_TICKS_PER_POINT) break;      // an endless rally: no information, next match
+                boolean rightWon = pongGame.getAttribute(GameAttributes.PLAYER_TWO_SCORE) > before;
+                record(rightWon == bRight);
+            }
+            if (pongGame.isMatchOver()) matches.incrementAndGet();
+        }
+        long cpuEnd = bean.isCurrentThreadCpuTimeSupported() ? bean.getCurrentThreadCpuTime() : System.nanoTime();
+        cpuNanos.addAndGet(cpuEnd - cpuStart);
+    }
+
+    private synchronized void record(boolean bWon)
+    {
+        if (stopped) return;                 // played after the decision: not part of the test
+        points++;
+        if (bWon)
+        {
+            pointsWonByB++;
+            llr += winStep;
+        }
+        else
+        {
+            llr += lossStep;
+        }
+        if (llr >= upperBound) decision = ACCEPT_H1;
+        else if (llr <= lowerBound) decision = ACCEPT_H0;
+        if (decision != UNDECIDED || points >= maxPoints) stopped = true;
+    }
+
+    // inverse of the standard normal distribution (Acklam's rational approximation, |error| < 1.2e-9)
+    static double normalQuantile(double p)
+    {
+        final double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+                            1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+        final double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+                            6.680131188771972e+01, -1.328068155288572e+01};
+        final double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+                            -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+        final double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+                            3.754408661907416e+00};
+        if (p <= 0.0 || p >= 1.0) throw new IllegalArgumentException("probability must be in (0, 1)");
+        if (p < 0.02425)
+        {
+            double q = Math.sqrt(-2.0*Math.log(p));
+            return (((((c[0]*q + c[1])*q + c[2])*q + c[3])*q + c[4])*q + c[5])
+                 / ((((d[0]*q + d[1])*q + d[2])*q + d[3])*q + 1.0);
+        }
+        if (p > 1.0 - 0.02425) return -normalQuantile(1.0 - p);
+        double q = p - 0.5;
+        double r = q*q;
+        return (((((a[0]*r + a[1])*r + a[2])*r + a[3])*r + a[4])*r + a[5])*q
+             / (((((b[0]*r + b[1])*r + b[2])*r + b[3])*r + b[4])*r + 1.0);
+    }
+
+    /**
+     * Result: the decision of a run and its cost
+     */
+    public static final class Result {
+        private final int decision;
+        private final long points;
+        private final long pointsWonByB;
+        private final double llr;
+        private final long playedPoints;
+        private final long matches;
+        private final long cpuNanos;
+        private final long wallNanos;
+        private final long fixedPoints;
+
+        Result(int decision, long points, long pointsWonByB, double llr, long playedPoints, long matches,
+               long cpuNanos, long wallNanos, long fixedPoints)
+        {
+            this.decision = decision;
+            this.points = points;
+            this.pointsWonByB = pointsWonByB;
+            this.llr = llr;
+            this.playedPoints = playedPoints;
+            this.matches = matches;
+            this.cpuNanos = cpuNanos;
+            this.wallNanos = wallNanos;
+            this.fixedPoints = fixedPoints;
+        }
+
+        public int    getDecision()       { return decision; }
+        public long   getPoints()         { return points; }
+        public long   getPointsWonByB()   { return pointsWonByB; }
+        public double getLogLikelihoodRatio() { return llr; }
+        public long   getPlayedPoints()   { return playedPoints; }
+        public long   getCpuNanos()       { return cpuNanos; }
+        public long   getWallNanos()      { return wallNanos; }
+        public long   getFixedPoints()    { return fixedPoints; }
+
+        /**
+         * getSavedCpuNanos: CPU time a fixed-length test would have used
+         * beyond this one, at this run's CPU time per point
+         *
+         * @return long nanoseconds saved (negative if the test ran longer)
+         */
+        public long getSavedCpuNanos()
+        {
+            if (playedPoints == 0) return 0;
+            return (long)((double)cpuNanos/playedPoints*(fixedPoints - playedPoints));
+        }
+
+        public void print(PrintStream out)
+        {
+            String verdict = (decision == ACCEPT_H1) ? "B is better (accept H1)"
+                           : (decision == ACCEPT_H0) ? "B is not better (accept H0)" : "undecided";
+            double share = (points == 0) ? 0.0 : (double)pointsWonByB/points;
+            double pointsPerMatch = (matches == 0) ? 0.0 : (double)playedPoints/matches;
+            out.println("sequential test: " + verdict);
+            out.println(String.format("  points: %d (B won %.1f%%), log likelihood ratio %.3f", points, 100.0*share, llr));
+            out.println(String.format("  played: %d points, %.2f s CPU, %.2f s wall", playedPoints, cpuNanos/1e9, wallNanos/1e9));
+            out.println(String.format("  fixed-length test: %d points%s; saved %d points (%.0f%%), %.2f s CPU",
+                                      fixedPoints,
+                                      (pointsPerMatch > 0) ? String.format(" (about %.0f matches)", fixedPoints/pointsPerMatch) : "",
+                                      fixedPoints - playedPoints,
+                                      100.0*(fixedPoints - playedPoints)/fixedPoints, getSavedCpuNanos()/1e9));
+        }
+    }
+}
@@ -1,19 +1,109 @@
 package mlwithpong;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 /**
  * PongSimulatedGame: plays a game without graphics<br>
  * - this is used to simulate thousands of games at high-speed, because there
  *   is no frame-rate, so the games are played as fast as the computer can go<br>
  * - the functionality from here is exactly ported to Python for 
  *   Reinforcement Learning (with Neural Networks) ML Training
+ * - loads no AWT classes, so it runs on servers with -Djava.awt.headless=true
  * 
  * @author devang
  */
 public class PongSimulatedGame {
     
+    private static final long CHECKPOINT_MILLIS = 10000;   // campaigns: time between checkpoints
+    
     public PongSimulatedGame() throws InterruptedException
     {
         PongGame pongGame = new PongGame();
+        pongGame.setStatistics(PongStatistics.forGame(pongGame));
         pongGame.startSimulatedMatch();
+        PongStatistics.forGame(pongGame).printReport(System.out);
+    }
+    
+    /**
+     * PongSimulatedGame Constructor: plays many matches in parallel<br>
+     * - every thread plays its own PongGame, quietly and fast-forwarded, and
+     *   all of them record into the shared PongStatistics of the game
+     *   configuration<br>
+     * - the merged statistics are printed when all matches are done
+     * 
+     * @param numMatches number of matches to play
+     * @param numThreads number of threads to play them on
+     * @throws InterruptedException To Handle waiting for the threads to finish
+     */
+    public PongSimulatedGame(int numMatches, int numThreads) throws InterruptedException
+    {
+        this(numMatches, numThreads, null);
+    }
+    
+    /**
+     * PongSimulatedGame Constructor: plays many matches in parallel, and
+     * broadcasts every match to viewers of a PongSpectatorServer
+     * 
+     * @param numMatches number of matches to play
+     * @param numThreads number of threads to play them on
+     * @param spectatorServer server to broadcast the matches on, or null
+     * @throws InterruptedException To Handle waiting for the threads to finish
+     */
+    public PongSimulatedGame(int numMatches, int numThreads, PongSpectatorServer spectatorServer) throws InterruptedException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        PongStatistics statistics = null;
+        for (int m = 0; m < numMatches; m++)
+        {
+            PongGame pongGame = new PongGame();
+            pongGame.setVerbose(false);
+            pongGame.setFastForward(true);      // (not while a spectator server listens)
+            statistics = PongStatistics.forGame(pongGame);
+            pongGame.setStatistics(statistics);
+            if (spectatorServer != null) spectatorServer.attach(pongGame);
+            executor.execute(() -> {
+                try {
+                    pongGame.startSimulatedMatch();
+                }
+                catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                finally {
+                    if (spectatorServer != null) spectatorServer.detach(pongGame);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        if (statistics != null) statistics.printReport(System.out);
+    }
+    
+    /**
+     * PongSimulatedGame Constructor: plays a seeded campaign of many matches
+     * that can be resumed after a crash<br>
+     * - progress is checkpointed every 10 seconds (see PongCampaign); with
+     *   resume, the campaign continues from the last good checkpoint and
+     *   prints the same statistics as an uninterrupted campaign
+     * 
+     * @param numMatches number of matches to play
+     * @param numThreads number of threads to play them on
+     * @param seed seed of the campaign
+     * @param checkpointFile file to checkpoint to
+     * @param resume true to continue from the checkpoints in the file, false to start over
+     * @throws InterruptedException To Handle waiting for the threads to finish
+     * @throws IOException if the checkpoint file cannot be read or written
+     */
+    public PongSimulatedGame(int numMatches, int numThreads, long seed, Path checkpointFile, boolean resume)
+        throws InterruptedException, IOException
+    {
+        try (PongCheckpointFile checkpoints = new PongCheckpointFile(checkpointFile, resume))
+        {
+            PongCampaign campaign = new PongCampaign(numMatches, numThreads, seed);
+            campaign.run(checkpoints, CHECKPOINT_MILLIS).printReport(System.out);
+        }
     }
 }
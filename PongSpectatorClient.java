@@ -0,0 +1,143 @@
+/*
+ * PongSpectatorClient - receives the broadcast of a PongSpectatorServer
+ */
+package mlwithpong;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * PongSpectatorClient<br>
+ * - connects to a PongSpectatorServer and decodes its delta-encoded frames
+ *   back into full game states, one MatchView per watched match<br>
+ * - readMessage() blocks for the next message; see PongSpectatorServer
+ *   for the protocol
+ */
+public class PongSpectatorClient implements Closeable {
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final Map<Integer, MatchView> matches = new HashMap<>();
+    private MatchView lastMatch = null;
+
+    /**
+     * PongSpectatorClient Constructor: connects and subscribes
+     *
+     * @param host host of the server, usually "localhost"
+     * @param port port of the server
+     * @param matchId match to watch, or 0 to watch all matches
+     * @throws IOException if the server cannot be reached or is not a spectator server
+     */
+    public PongSpectatorClient(String host, int port, int matchId) throws IOException
+    {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        OutputStream out = socket.getOutputStream();
+        VarInts.writeVarint(out, matchId);
+        out.flush();
+
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 65536));
+        if (in.readInt() != PongSpectatorServer.MAGIC || in.readByte() != PongSpectatorServer.VERSION)
+        {
+            socket.close();
+            throw new IOException("not a PongSpectatorServer: " + host + ":" + port);
+        }
+    }
+
+    /**
+     * readMessage: reads and applies the next message from the server
+     *
+     * @return byte PongSpectatorServer.MSG_MATCH, MSG_FRAME or MSG_END
+     * @throws IOException if the connection fails or the message is malformed
+     */
+    public byte readMessage() throws IOException
+    {
+        byte type = in.readByte();
+        int matchId = VarInts.readVarint(in);
+        if (type == PongSpectatorServer.MSG_MATCH)
+        {
+            MatchView match = new MatchView(matchId);
+            match.width        = VarInts.readVarint(in);
+            match.height       = VarInts.readVarint(in);
+            match.paddleHeight = VarInts.readVarint(in);
+            matches.put(matchId, match);
+            lastMatch = match;
+        }
+        else if (type == PongSpectatorServer.MSG_FRAME)
+        {
+            MatchView match = matches.get(matchId);
+            if (match == null) throw new IOException("frame for unknown match " + matchId);
+            match.tick += VarInts.readVarint(in);
+            int mask = in.readUnsignedByte();
+            for (int i = 0; i < PongSpectatorServer.NUM_FIELDS; i++)
+            {
+                if ((mask & (1 << i)) != 0) match.state[i] += VarInts.unZigZag(VarInts.readVarint(in));
+            }
+            lastMatch = match;
+        }
+        else if (type == PongSpectatorServer.MSG_END)
+        {
+            MatchView match = matches.get(matchId);
+            if (match == null) throw new IOException("end of unknown match " + matchId);
+            match.ended = true;
+            lastMatch = match;
+        }
+        else
+        {
+            throw new IOException("unknown message type " + type);
+        }
+        return type;
+    }
+
+    /**
+     * getLastMatch: the match updated by the most recent readMessage()
+     *
+     * @return MatchView of that match
+     */
+    public MatchView getLastMatch()
+    {
+        return lastMatch;
+    }
+
+    public MatchView getMatch(int matchId)
+    {
+        return matches.get(matchId);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        socket.close();
+    }
+
+    /**
+     * MatchView: the viewer's copy of one broadcast game
+     */
+    public static class MatchView {
+        public final int matchId;
+        public int width;
+        public int height;
+        public int paddleHeight;
+        public long tick = 0;     // ticks published since the viewer joined
+        public boolean ended = false;   // the server sent MSG_END: no more frames
+        public final int[] state = new int[PongSpectatorServer.NUM_FIELDS];
+
+        MatchView(int matchId)
+        {
+            this.matchId = matchId;
+        }
+
+        public int getBallX()          { return state[0]; }
+        public int getBallY()          { return state[1]; }
+        public int getPlayerOneY()     { return state[2]; }
+        public int getPlayerTwoY()     { return state[3]; }
+        public int getPlayerOneScore() { return state[4]; }
+        public int getPlayerTwoScore() { return state[5]; }
+    }
+}
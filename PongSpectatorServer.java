@@ -0,0 +1,435 @@
+/*
+ * PongSpectatorServer - broadcasts the state of running games to viewer processes
+ */
+package mlwithpong;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PongSpectatorServer<br>
+ * - publishes the per-tick state (ball x/y, paddle Ys, scores) of any number
+ *   of running PongGames over a loopback TCP port<br>
+ * - viewers (PongSpectatorClient, or PongSavedGame attached to a server)
+ *   connect, send the id of the match to watch (0 for all matches), and then
+ *   receive a stream of delta-encoded, varint-packed frames<br>
+ * <p>
+ * The game thread only copies 6 ints into a ring buffer per tick
+ * (MatchFeed.tickCompleted), so viewers never slow a simulation down.
+ * A single network thread encodes each viewer's frames as deltas against the
+ * state that viewer last received, and only while its socket accepts data.
+ * A viewer that falls more than a ring length behind skips ahead to the
+ * newest frame (its next delta is against what it last saw, so it stays
+ * correct), which keeps slow viewers from holding back fast ones.
+ * A detached match ends with an end message to every viewer once it has
+ * received the last frame, and is then dropped.
+ * The network thread polls for new ticks every millisecond only while a
+ * subscribed viewer and a match exist; otherwise it blocks until a viewer
+ * connects or a match is attached.
+ * <p>
+ * Protocol (server to viewer, after the viewer's subscription varint):<br>
+ *   hello:  int MAGIC, byte VERSION<br>
+ *   match:  byte MSG_MATCH, varint matchId, varint width, varint height, varint paddleHeight<br>
+ *   frame:  byte MSG_FRAME, varint matchId, varint ticks since the viewer's previous frame,
+ *           byte mask of changed fields, zigzag varint delta per changed field<br>
+ *   end:    byte MSG_END, varint matchId (the match was detached; no more frames follow)<br>
+ *   fields: 0 ball x, 1 ball y, 2 player-1 y, 3 player-2 y, 4 player-1 score, 5 player-2 score
+ */
+public class PongSpectatorServer implements Runnable, Closeable {
+
+    public static final int  DEFAULT_PORT = 5757;
+    public static final int  MAGIC        = 0x504F4E47; // "PONG"
+    public static final byte VERSION      = 2;
+    public static final byte MSG_MATCH    = 1;
+    public static final byte MSG_FRAME    = 2;
+    public static final byte MSG_END      = 3;
+    public static final int  NUM_FIELDS   = 6;
+
+    private static final int RING_SIZE       = 1024;    // ticks buffered per match (power of 2)
+    private static final int RING_MASK       = RING_SIZE - 1;
+    private static final int MAX_LAG         = RING_SIZE - 2;   // oldest readable tick: published - MAX_LAG
+    private static final int VIEWER_BUFFER   = 8192;    // bytes queued per viewer
+    private static final int MAX_FRAME_BYTES = 1 + 2*VarInts.MAX_VARINT_BYTES + 1 + NUM_FIELDS*VarInts.MAX_VARINT_BYTES;
+
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final List<MatchFeed> feeds = new CopyOnWriteArrayList<>();
+    private final List<Viewer> viewers = new ArrayList<>();  // network thread only
+    private final AtomicInteger nextMatchId = new AtomicInteger(1);
+    private final AtomicInteger viewerCount = new AtomicInteger(0);
+    private final Thread networkThread;
+    private volatile boolean running = true;
+
+    /**
+     * PongSpectatorServer Constructor: listens on a loopback port and
+     * starts the network thread
+     *
+     * @param port TCP port on 127.0.0.1, or 0 for any free port
+     * @throws IOException if the port cannot be opened
+     */
+    public PongSpectatorServer(int port) throws IOException
+    {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        networkThread = new Thread(this, "PongSpectatorServer");
+        networkThread.setDaemon(true);
+        networkThread.start();
+    }
+
+    public int getPort()
+    {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public int getViewerCount()
+    {
+        return viewerCount.get();
+    }
+
+    /**
+     * attach: starts broadcasting a game<br>
+     * - adds a PongTickListener to the game, so every later updateBall() is published
+     *
+     * @param pongGame the game to broadcast
+     * @return int the match id viewers use to subscribe to this game
+     */
+    public int attach(PongGame pongGame)
+    {
+        MatchFeed feed = new MatchFeed(nextMatchId.getAndIncrement(), pongGame,
+                                       pongGame.getAttribute(GameAttributes.GAME_WIDTH),
+                                       pongGame.getAttribute(GameAttributes.GAME_HEIGHT),
+                                       pongGame.getAttribute(GameAttributes.PADDLE_HEIGHT));
+        feeds.add(feed);
+        pongGame.addTickListener(feed);
+        selector.wakeup();
+        return feed.matchId;
+    }
+
+    /**
+     * detach: stops broadcasting a game, e.g. once its match is over<br>
+     * - viewers still receive the frames already published, then an end
+     *   message, and then the match is dropped
+     *
+     * @param pongGame a game passed to attach()
+     */
+    public void detach(PongGame pongGame)
+    {
+        for (MatchFeed feed : feeds)
+        {
+            if (feed.game != pongGame) continue;
+            pongGame.removeTickListener(feed);
+            feed.finished = true;
+        }
+        selector.wakeup();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        running = false;
+        selector.wakeup();
+        try {
+            networkThread.join(1000);
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override // the network thread: accepts viewers and streams frames to them
+    public void run()
+    {
+        try {
+            while (running)
+            {
+                if (isIdle()) selector.select();          // woken by a viewer, attach() or detach()
+                else selector.select(1);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext())
+                {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) acceptViewers();
+                    else if (key.isReadable()) readSubscription((Viewer)key.attachment());
+                }
+                for (int v = viewers.size() - 1; v >= 0; v--)
+                {
+                    Viewer viewer = viewers.get(v);
+                    if (viewer.subscription >= 0) fillFrames(viewer);
+                    if (!flush(viewer)) dropViewer(v);
+                }
+                removeFinishedFeeds();
+            }
+        }
+        catch (IOException ioe) {
+            System.err.println("PongSpectatorServer: " + ioe);
+        }
+        finally {
+            for (int v = viewers.size() - 1; v >= 0; v--) dropViewer(v);
+            try {
+                serverChannel.close();
+                selector.close();
+            }
+            catch (IOException ioe) {
+                // closing anyway
+            }
+        }
+    }
+
+    // nothing to stream: no bytes queued, and no match or no viewer subscribed yet
+    private boolean isIdle()
+    {
+        boolean subscribed = false;
+        for (Viewer viewer : viewers)
+        {
+            if (viewer.out.position() > 0) return false;
+            if (viewer.subscription >= 0) subscribed = true;
+        }
+        return feeds.isEmpty() || !subscribed;
+    }
+
+    private void acceptViewers() throws IOException
+    {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null)
+        {
+            acceptViewer(channel);
+        }
+    }
+
+    private void acceptViewer(SocketChannel channel) throws IOException
+    {
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Viewer viewer = new Viewer(channel);
+        channel.register(selector, SelectionKey.OP_READ, viewer);
+        viewer.out.putInt(MAGIC);
+        viewer.out.put(VERSION);
+        viewers.add(viewer);
+        viewerCount.incrementAndGet();
+    }
+
+    private void readSubscription(Viewer viewer)
+    {
+        try {
+            if (viewer.channel.read(viewer.in) < 0)
+            {
+                viewer.channel.close();
+                return;
+            }
+        }
+        catch (IOException ioe) {
+            try { viewer.channel.close(); } catch (IOException e) { /* closing anyway */ }
+            return;
+        }
+        if (viewer.subscription >= 0) { viewer.in.clear(); return; }
+        // the subscription varint is complete once a byte without the high bit arrives
+        for (int b = 0; b < viewer.in.position(); b++)
+        {
+            if (viewer.in.get(b) >= 0)
+            {
+                viewer.in.flip();
+                viewer.subscription = VarInts.readVarint(viewer.in);
+                viewer.in.clear();
+                return;
+            }
+        }
+    }
+
+    private void fillFrames(Viewer viewer)
+    {
+        ByteBuffer out = viewer.out;
+        for (MatchFeed feed : feeds)
+        {
+            if (viewer.subscription != 0 && viewer.subscription != feed.matchId) continue;
+            FeedCursor cursor = viewer.cursors.get(feed);
+            if (cursor == null)
+            {
+                if (out.remaining() < 1 + 4*VarInts.MAX_VARINT_BYTES) return;
+                out.put(MSG_MATCH);
+                VarInts.writeVarint(out, feed.matchId);
+                VarInts.writeVarint(out, feed.width);
+                VarInts.writeVarint(out, feed.height);
+                VarInts.writeVarint(out, feed.paddleHeight);
+                cursor = new FeedCursor();
+                cursor.lastSequence = Math.max(0, feed.published.get() - 1);
+                viewer.cursors.put(feed, cursor);
+            }
+            boolean finished = feed.finished;   // read before published: no tick follows it
+            while (out.remaining() >= MAX_FRAME_BYTES)
+            {
+                long published = feed.published.get();
+                if (cursor.lastSequence >= published) break;
+                long sequence = cursor.lastSequence + 1;
+                if (published - sequence > MAX_LAG) sequence = published;     // too far behind: skip ahead
+                if (!feed.read(sequence, viewer.frame))
+                {
+                    // overwritten while reading: skip ahead to the newest tick instead
+                    sequence = feed.published.get();
+                    if (!feed.read(sequence, viewer.frame)) continue;
+                }
+                writeFrame(out, feed.matchId, sequence - cursor.lastSequence, viewer.frame, cursor.lastSent);
+                cursor.lastSequence = sequence;
+            }
+            if (finished && !cursor.ended && cursor.lastSequence >= feed.published.get()
+                && out.remaining() >= 1 + VarInts.MAX_VARINT_BYTES)
+            {
+                out.put(MSG_END);
+                VarInts.writeVarint(out, feed.matchId);
+                cursor.ended = true;
+            }
+        }
+    }
+
+    // drops detached matches once every viewer watching them was sent their end
+    private void removeFinishedFeeds()
+    {
+        for (MatchFeed feed : feeds)
+        {
+            if (!feed.finished) continue;
+            boolean caughtUp = true;
+            for (Viewer viewer : viewers)
+            {
+                if (viewer.subscription != 0 && viewer.subscription != feed.matchId) continue;
+                FeedCursor cursor = viewer.cursors.get(feed);
+                if (cursor == null || !cursor.ended) caughtUp = false;
+            }
+            if (!caughtUp) continue;
+            feeds.remove(feed);
+            for (Viewer viewer : viewers) viewer.cursors.remove(feed);
+        }
+    }
+
+    private static void writeFrame(ByteBuffer out, int matchId, long ticks, int[] frame, int[] lastSent)
+    {
+        int mask = 0;
+        for (int i = 0; i < NUM_FIELDS; i++)
+        {
+            if (frame[i] != lastSent[i]) mask |= 1 << i;
+        }
+        out.put(MSG_FRAME);
+        VarInts.writeVarint(out, matchId);
+        VarInts.writeVarint(out, (int)Math.min(Integer.MAX_VALUE, ticks));
+        out.put((byte)mask);
+        for (int i = 0; i < NUM_FIELDS; i++)
+        {
+            if ((mask & (1 << i)) == 0) continue;
+            VarInts.writeVarint(out, VarInts.zigZag(frame[i] - lastSent[i]));
+            lastSent[i] = frame[i];
+        }
+    }
+
+    private boolean flush(Viewer viewer)
+    {
+        if (!viewer.channel.isOpen()) return false;
+        if (viewer.out.position() == 0) return true;
+        try {
+            viewer.out.flip();
+            viewer.channel.write(viewer.out);
+            viewer.out.compact();
+            return true;
+        }
+        catch (IOException ioe) {
+            return false;
+        }
+    }
+
+    private void dropViewer(int index)
+    {
+        Viewer viewer = viewers.remove(index);
+        viewerCount.decrementAndGet();
+        try {
+            viewer.channel.close();
+        }
+        catch (IOException ioe) {
+            // closing anyway
+        }
+    }
+
+    /**
+     * MatchFeed: single-producer ring buffer of one game's recent ticks
+     */
+    private static class MatchFeed implements PongTickListener {
+        final int matchId;
+        final PongGame game;
+        final int width;
+        final int height;
+        final int paddleHeight;
+        final int[] ring = new int[RING_SIZE*NUM_FIELDS];
+        final AtomicLong published = new AtomicLong(0);   // sequence of the newest complete tick
+        volatile boolean finished;                        // detached: no more ticks will be published
+
+        MatchFeed(int matchId, PongGame game, int width, int height, int paddleHeight)
+        {
+            this.matchId = matchId;
+            this.game = game;
+            this.width = width;
+            this.height = height;
+            this.paddleHeight = paddleHeight;
+        }
+
+        @Override // game thread: copy the state into the next slot, then publish it
+        public void tickCompleted(PongGame pongGame)
+        {
+            long sequence = published.get() + 1;
+            int base = (int)(sequence & RING_MASK)*NUM_FIELDS;
+            ring[base]     = pongGame.getAttribute(GameAttributes.BALL_X);
+            ring[base + 1] = pongGame.getAttribute(GameAttributes.BALL_Y);
+            ring[base + 2] = pongGame.getAttribute(GameAttributes.PLAYER_ONE_Y);
+            ring[base + 3] = pongGame.getAttribute(GameAttributes.PLAYER_TWO_Y);
+            ring[base + 4] = pongGame.getAttribute(GameAttributes.PLAYER_ONE_SCORE);
+            ring[base + 5] = pongGame.getAttribute(GameAttributes.PLAYER_TWO_SCORE);
+            published.lazySet(sequence);
+        }
+
+        // network thread: copies a slot, false if the game overwrote it meanwhile
+        boolean read(long sequence, int[] frame)
+        {
+            int base = (int)(sequence & RING_MASK)*NUM_FIELDS;
+            System.arraycopy(ring, base, frame, 0, NUM_FIELDS);
+            VarHandle.loadLoadFence();
+            return published.get() - sequence <= MAX_LAG;
+        }
+    }
+
+    private static class FeedCursor {
+        long lastSequence;
+        boolean ended = false;                       // MSG_END sent
+        final int[] lastSent = new int[NUM_FIELDS];
+    }
+
+    private static class Viewer {
+        final SocketChannel channel;
+        final ByteBuffer out = ByteBuffer.allocateDirect(VIEWER_BUFFER);
+        final ByteBuffer in  = ByteBuffer.allocate(16);
+        final Map<MatchFeed, FeedCursor> cursors = new IdentityHashMap<>();
+        final int[] frame = new int[NUM_FIELDS];
+        int subscription = -1;                                // match id, 0 for all, -1 until known
+
+        Viewer(SocketChannel channel)
+        {
+            this.channel = channel;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * PongStatistics - match statistics fed from the PongGame engine
+ */
+package mlwithpong;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * PongStatistics: per-configuration statistics of played games<br>
+ * - per player: points won, paddle hits, serves received, serves returned,
+ *   and the distribution of where the ball hit the paddle (the spin offset)<br>
+ * - per game: volleys per rally and ticks per game as LogHistograms<br>
+ * <p>
+ * Recording is striped per thread: every thread that records gets its own
+ * Counts (through a ThreadLocal) that only it writes to, so many
+ * simulations running in parallel never write to shared memory.
+ * getTotals() merges all threads' Counts into a new Counts.<br>
+ * Totals read while simulations are still running are approximate;
+ * totals read after the simulation threads have been joined are exact.
+ * <p>
+ * Usage:<br>
+ *   pongGame.setStatistics(PongStatistics.forGame(pongGame));<br>
+ *   ... play matches on any number of threads ...<br>
+ *   PongStatistics.forGame(pongGame).printReport(System.out);
+ */
+public class PongStatistics {
+
+    private static final ConcurrentHashMap<String, PongStatistics> CONFIGURATIONS = new ConcurrentHashMap<>();
+
+    private final String configuration;
+    private final int paddleHeight;
+    private final ConcurrentLinkedQueue<Counts> stripes = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Counts> localCounts = ThreadLocal.withInitial(this::newStripe);
+
+    /**
+     * PongStatistics Constructor: empty statistics for one game configuration
+     *
+     * @param configuration name of the configuration (see PongGame.describeConfiguration)
+     * @param paddleHeight height of the paddle, which bounds the hit offsets
+     */
+    public PongStatistics(String configuration, int paddleHeight)
+    {
+        this.configuration = configuration;
+        this.paddleHeight  = paddleHeight;
+    }
+
+    /**
+     * forGame: the shared statistics of the configuration a game is played with<br>
+     * - all games with the same configuration record into the same statistics
+     *
+     * @param pongGame game whose configuration to look up
+     * @return PongStatistics shared statistics for that configuration
+     */
+    public static PongStatistics forGame(PongGame pongGame)
+    {
+        String name = pongGame.describeConfiguration();
+        int height = pongGame.getAttribute(GameAttributes.PADDLE_HEIGHT);
+        return CONFIGURATIONS.computeIfAbsent(name, n -> new PongStatistics(n, height));
+    }
+
+    /**
+     * allConfigurations: statistics of every configuration used through forGame()
+     *
+     * @return Collection of the registered statistics
+     */
+    public static Collection<PongStatistics> allConfigurations()
+    {
+        return new ArrayList<>(CONFIGURATIONS.values());
+    }
+
+    public String getConfiguration()
+    {
+        return configuration;
+    }
+
+    /**
+     * recordPaddleHit: the ball was returned by a paddle
+     *
+     * @param player 1 for the left paddle, 2 for the right paddle
+     * @param offset ball y minus paddle center y at the hit (the spin offset)
+     */
+    public void recordPaddleHit(int player, int offset)
+    {
+        Counts counts = localCounts.get();
+        int p = player - 1;
+        counts.paddleHits[p]++;
+        int half = paddleHeight/2;
+        int index = Math.max(-half, Math.min(half, offset)) + half;
+        counts.hitOffsets[p][index]++;
+    }
+
+    /**
+     * recordPoint: a game (rally) has ended
+     *
+     * @param winner 1 if player 1 won the point, 2 if player 2 won the point
+     * @param serveToPlayer the player the ball was served towards
+     * @param numVolleys paddle hits during the rally
+     * @param numTicks updateBall() ticks during the game
+     */
+    public void recordPoint(int winner, int serveToPlayer, int numVolleys, int numTicks)
+    {
+        Counts counts = localCounts.get();
+        counts.games++;
+        counts.points[winner - 1]++;
+        counts.servesReceived[serveToPlayer - 1]++;
+        if (numVolleys > 0) counts.servesReturned[serveToPlayer - 1]++;
+        counts.volleysPerRally.record(numVolleys);
+        counts.ticksPerGame.record(numTicks);
+    }
+
+    /**
+     * add: merges counts recorded elsewhere (e.g. read from a checkpoint)
+     * into the counts of the calling thread
+     *
+     * @param counts counts to merge (is not modified)
+     */
+    public void add(Counts counts)
+    {
+        localCounts.get().add(counts);
+    }
+
+    /**
+     * getTotals: merges the counts of every recording thread
+     *
+     * @return Counts new object holding the sum of all threads' counts
+     */
+    public Counts getTotals()
+    {
+        Counts totals = new Counts(paddleHeight);
+        for (Counts counts : stripes)
+        {
+            totals.add(counts);
+        }
+        return totals;
+    }
+
+    /**
+     * printReport: writes the merged statistics as readable text
+     *
+     * @param out stream to write to
+     */
+    public void printReport(PrintStream out)
+    {
+        Counts totals = getTotals();
+        out.println("Statistics: " + configuration);
+        out.println("  games: " + totals.games);
+        out.println("  volleys per rally: " + totals.volleysPerRally);
+        out.println("  ticks per game:    " + totals.ticksPerGame);
+        for (int p = 0; p < 2; p++)
+        {
+            out.println("  player " + (p+1) + ":");
+            out.println("    points: " + totals.points[p] + "  paddle hits: " + totals.paddleHits[p]);
+            out.println("    serves received: " + totals.servesReceived[p]
+                      + "  returned: " + totals.servesReturned[p]
+                      + "  aces conceded: " + (totals.servesReceived[p] - totals.servesReturned[p]));
+            StringBuilder offsets = new StringBuilder("    hit offsets:");
+            for (int o = 0; o < totals.hitOffsets[p].length; o++)
+            {
+                offsets.append(' ').append(o - paddleHeight/2).append(':').append(totals.hitOffsets[p][o]);
+            }
+            out.println(offsets);
+        }
+    }
+
+    private Counts newStripe()
+    {
+        Counts counts = new Counts(paddleHeight);
+        stripes.add(counts);
+        return counts;
+    }
+
+    /**
+     * Counts: plain counters written by a single thread<br>
+     * - index 0 is player 1 (left), index 1 is player 2 (right)
+     */
+    public static class Counts {
+        public long   games = 0;
+        public final long[]   points         = new long[2];
+        public final long[]   paddleHits     = new long[2];
+        public final long[]   servesReceived = new long[2];
+        public final long[]   servesReturned = new long[2];
+        public final long[][] hitOffsets;   // [player][offset + paddleHeight/2]
+        public final LogHistogram volleysPerRally = new LogHistogram();
+        public final LogHistogram ticksPerGame    = new LogHistogram();
+
+        Counts(int paddleHeight)
+        {
+            hitOffsets = new long[2][2*(paddleHeight/2) + 1];
+        }
+
+        /**
+         * add: merges another Counts into this one
+         *
+         * @param other counts to merge (is not modified)
+         */
+        public void add(Counts other)
+        {
+            games += other.games;
+            for (int p = 0; p < 2; p++)
+            {
+                points[p]         += other.points[p];
+                paddleHits[p]     += other.paddleHits[p];
+                servesReceived[p] += other.servesReceived[p];
+                servesReturned[p] += other.servesReturned[p];
+                for (int o = 0; o < hitOffsets[p].length && o < other.hitOffsets[p].length; o++)
+                {
+                    hitOffsets[p][o] += other.hitOffsets[p][o];
+                }
+            }
+            volleysPerRally.add(other.volleysPerRally);
+            ticksPerGame.add(other.ticksPerGame);
+        }
+
+        /**
+         * write: writes the counts as varints (for checkpoints)
+         *
+         * @param out stream to write to
+         * @throws IOException if the stream fails
+         */
+        public void write(OutputStream out) throws IOException
+        {
+            VarInts.writeVarlong(out, games);
+            VarInts.writeVarint(out, hitOffsets[0].length);
+            for (int p = 0; p < 2; p++)
+            {
+                VarInts.writeVarlong(out, points[p]);
+                VarInts.writeVarlong(out, paddleHits[p]);
+                VarInts.writeVarlong(out, servesReceived[p]);
+                VarInts.writeVarlong(out, servesReturned[p]);
+                for (long h : hitOffsets[p]) VarInts.writeVarlong(out, h);
+            }
+            volleysPerRally.write(out);
+            ticksPerGame.write(out);
+        }
+
+        /**
+         * read: replaces the counts with counts written by write()
+         *
+         * @param in stream to read from
+         * @throws IOException if the stream fails, or the counts are of another paddle height
+         */
+        public void read(InputStream in) throws IOException
+        {
+            games = VarInts.readVarlong(in);
+            if (VarInts.readVarint(in) != hitOffsets[0].length)
+            {
+                throw new IOException("counts of a different paddle height");
+            }
+            for (int p = 0; p < 2; p++)
+            {
+                points[p]         = VarInts.readVarlong(in);
+                paddleHits[p]     = VarInts.readVarlong(in);
+                servesReceived[p] = VarInts.readVarlong(in);
+                servesReturned[p] = VarInts.readVarlong(in);
+                for (int o = 0; o < hitOffsets[p].length; o++) hitOffsets[p][o] = VarInts.readVarlong(in);
+            }
+            volleysPerRally.read(in);
+            ticksPerGame.read(in);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+/*
+ * PongTickListener - callback for every tick of a PongGame
+ */
+package mlwithpong;
+
+/**
+ * PongTickListener<br>
+ * - notified by PongGame at the end of every updateBall() call, on the
+ *   thread running the game<br>
+ * - the listener reads the game state with getAttribute(); it must return
+ *   quickly, because the game waits for it
+ */
+public interface PongTickListener {
+
+    /**
+     * tickCompleted: the ball has moved one tick
+     *
+     * @param pongGame the game that ticked
+     */
+    void tickCompleted(PongGame pongGame);
+}
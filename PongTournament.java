@@ -0,0 +1,353 @@
+/*
+ * PongTournament - round-robin tournament and ratings of paddle policies
+ */
+package mlwithpong;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * PongTournament: compares paddle policies<br>
+ * - every pair of registered players plays matchesPerSide matches with each
+ *   player on the left, so neither side of the table favours anyone<br>
+ * - match m of a pairing is seeded from the two names and m
+ *   (PongGame.setRandomSeed), so a result can be reproduced on its own<br>
+ * - matches run on a thread pool; every match gets new players from the
+ *   registered factories, so players need not be thread-safe<br>
+ * - incremental: results are kept (and appended to the results file, if
+ *   any), and play() only plays the matches that have no result yet, so
+ *   registering one more player only plays its new pairings<br>
+ * <p>
+ * Ratings: Elo-scaled Bradley-Terry ratings, fitted to all match results
+ * at once (so the order of the matches does not matter), with 95%
+ * confidence intervals from the curvature of the likelihood. Every player
+ * also gets one virtual draw against a 1500 player, which keeps players
+ * that won or lost everything at a finite rating.
+ */
+public class PongTournament {
+
+    public static final double MEAN_RATING = 1500.0;
+    private static final double ELO_SCALE = 400.0/Math.log(10.0);
+    private static final long   MAX_TICKS_PER_MATCH = 10000000L;   // a match of endless rallies is a draw
+
+    private final Map<String, Supplier<PongPlayer>> players = new LinkedHashMap<>();
+    private final Map<String, MatchResult> results = new HashMap<>();   // by matchKey()
+    private final int matchesPerSide;
+    private final int numThreads;
+    private final Path resultsFile;
+
+    /**
+     * PongTournament Constructor
+     *
+     * @param matchesPerSide matches per pairing with each player on the left
+     * @param numThreads threads to play matches on
+     * @param resultsFile file to load earlier results from and append new
+     *        ones to, or null to keep results in memory only
+     * @throws IOException if the results file cannot be read
+     */
+    public PongTournament(int matchesPerSide, int numThreads, Path resultsFile) throws IOException
+    {
+        this.matchesPerSide = matchesPerSide;
+        this.numThreads = numThreads;
+        this.resultsFile = resultsFile;
+        if (resultsFile != null && Files.exists(resultsFile)) loadResults();
+    }
+
+    /**
+     * register: adds a player to the tournament
+     *
+     * @param name unique name, used in the results file and the leaderboard
+     * @param factory makes a new instance of the player for every match
+     */
+    public void register(String name, Supplier<PongPlayer> factory)
+    {
+        if (name.contains(",") || players.containsKey(name))
+        {
+            throw new IllegalArgumentException("player names must be unique and contain no comma: " + name);
+        }
+        players.put(name, factory);
+    }
+
+    /**
+     * play: plays every match of every pairing that has no result yet
+     *
+     * @return int number of matches played
+     * @throws InterruptedException if interrupted while waiting for the matches
+     * @throws IOException if the results file cannot be written
+     */
+    public int play() throws InterruptedException, IOException
+    {
+        List<String[]> pending = new ArrayList<>();
+        for (String left : players.keySet())
+        {
+            for (String right : players.keySet())
+            {
+                if (left.equals(right)) continue;
+                for (int m = 0; m < matchesPerSide; m++)
+                {
+                    if (!results.containsKey(matchKey(left, right, m))) pending.add(new String[] {left, right, Integer.toString(m)});
+                }
+            }
+        }
+        if (pending.isEmpty()) return 0;
+
+        BufferedWriter writer = (resultsFile == null) ? null
+            : Files.newBufferedWriter(resultsFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        for (String[] match : pending)
+        {
+            executor.execute(() -> {
+                MatchResult result = playMatch(match[0], match[1], Integer.parseInt(match[2]));
+                synchronized (results)
+                {
+                    results.put(matchKey(result.left, result.right, result.index), result);
+                    if (writer == null) return;
+                    try {
+                        writer.write(result.toLine());
+                        writer.newLine();
+                        writer.flush();
+                    }
+                    catch (IOException ioe) {
+                        System.err.println("cannot write tournament result: " + ioe);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        if (writer != null) writer.close();
+        return pending.size();
+    }
+
+    /**
+     * getStandings: ratings and records of the registered players, best first
+     *
+     * @return List of standings
+     */
+    public List<Standing> getStandings()
+    {
+        List<String> names = new ArrayList<>(players.keySet());
+        int n = names.size();
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < n; i++) index.put(names.get(i), i);
+
+        // games[i][j]: matches between i and j, score[i][j]: match points of i against j
+        double[][] games = new double[n][n];
+        double[][] score = new double[n][n];
+        Standing[] standings = new Standing[n];
+        for (int i = 0; i < n; i++) standings[i] = new Standing(names.get(i));
+        synchronized (results)
+        {
+            for (MatchResult result : results.values())
+            {
+                Integer l = index.get(result.left);
+                Integer r = index.get(result.right);
+                if (l == null || r == null) continue;   // a player that is not registered any more
+                double leftScore = (result.leftScore > result.rightScore) ? 1.0 : (result.leftScore < result.rightScore) ? 0.0 : 0.5;
+                games[l][r]++;
+                games[r][l]++;
+                score[l][r] += leftScore;
+                score[r][l] += 1.0 - leftScore;
+                standings[l].record(leftScore, result.leftScore, result.rightScore);
+                standings[r].record(1.0 - leftScore, result.rightScore, result.leftScore);
+            }
+        }
+
+        // Bradley-Terry by Newton steps on each rating (natural log scale),
+        // with one virtual draw of every player against a fixed 0 rating
+        double[] rating = new double[n];
+        double[] curvature = new double[n];
+        for (int iteration = 0; iteration < 1000; iteration++)
+        {
+            double maxStep = 0.0;
+            for (int i = 0; i < n; i++)
+            {
+                double p0 = 1.0/(1.0 + Math.exp(-rating[i]));
+                double gradient = 0.5 - p0;
+                double hessian = p0*(1.0 - p0);
+                for (int j = 0; j < n; j++)
+                {
+                    if (games[i][j] == 0) continue;
+                    double p = 1.0/(1.0 + Math.exp(rating[j] - rating[i]));
+                    gradient += score[i][j] - games[i][j]*p;
+                    hessian += games[i][j]*p*(1.0 - p);
+                }
+                double step = gradient/hessian;
+                rating[i] += step;
+                curvature[i] = hessian;
+                maxStep = Math.max(maxStep, Math.abs(step));
+            }
+            if (maxStep < 1e-9) break;
+        }
+        for (int i = 0; i < n; i++)
+        {
+            standings[i].rating = MEAN_RATING + ELO_SCALE*rating[i];
+            standings[i].ratingError95 = 1.96*ELO_SCALE/Math.sqrt(curvature[i]);
+        }
+
+        List<Standing> list = new ArrayList<>(List.of(standings));
+        list.sort(Comparator.comparingDouble((Standing s) -> s.rating).reversed());
+        return list;
+    }
+
+    /**
+     * printLeaderboard: prints the standings as a table
+     *
+     * @param out stream to print to
+     */
+    public void printLeaderboard(PrintStream out)
+    {
+        out.println(String.format("%-4s %-24s %7s %6s %7s %5s %5s %5s %7s %7s",
+                                  "rank", "player", "rating", "+-95%", "matches", "won", "drawn", "lost", "points", "against"));
+        int rank = 1;
+        for (Standing s : getStandings())
+        {
+            out.println(String.format("%-4d %-24s %7.0f %6.0f %7d %5d %5d %5d %7d %7d",
+                                      rank++, s.name, s.rating, s.ratingError95, s.matches,
+                                      s.won, s.drawn, s.lost, s.pointsFor, s.pointsAgainst));
+        }
+    }
+
+    /**
+     * writeLeaderboard: writes the leaderboard to a file
+     *
+     * @param file file to (over)write
+     * @throws IOException if the file cannot be written
+     */
+    public void writeLeaderboard(Path file) throws IOException
+    {
+        try (PrintStream out = new PrintStream(Files.newOutputStream(file), false, StandardCharsets.UTF_8))
+        {
+            printLeaderboard(out);
+        }
+    }
+
+    private MatchResult playMatch(String left, String right, int index)
+    {
+        PongGame pongGame = new PongGame();
+        pongGame.setVerbose(false);
+        pongGame.setRandomSeed(seed(left, right, index));
+        pongGame.setCPUPlayers(players.get(left).get(), players.get(right).get());
+
+        // the tick loop of startSimulatedMatch, with a limit for endless rallies
+        long ticks = 0;
+        while (!pongGame.isMatchOver() && ticks < MAX_TICKS_PER_MATCH)
+        {
+            pongGame.startNewGame();
+            while (!pongGame.isGameOver() && ticks++ < MAX_TICKS_PER_MATCH)
+            {
+                pongGame.updateBall();
+                pongGame.moveCPUPlayerPaddle(1);
+                pongGame.moveCPUPlayerPaddle(2);
+            }
+        }
+        return new MatchResult(left, right, index,
+                               pongGame.getAttribute(GameAttributes.PLAYER_ONE_SCORE),
+                               pongGame.getAttribute(GameAttributes.PLAYER_TWO_SCORE));
+    }
+
+    private static long seed(String left, String right, int index)
+    {
+        long h = 1125899906842597L;
+        for (char c : (left + "," + right).toCharArray()) h = 31*h + c;
+        return h*0x9e3779b97f4a7c15L + index;
+    }
+
+    private static String matchKey(String left, String right, int index)
+    {
+        return left + "," + right + "," + index;
+    }
+
+    private void loadResults() throws IOException
+    {
+        try (BufferedReader reader = Files.newBufferedReader(resultsFile, StandardCharsets.UTF_8))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                String[] fields = line.split(",");
+                if (fields.length != 5) continue;
+                MatchResult result = new MatchResult(fields[0], fields[1], Integer.parseInt(fields[2]),
+                                                     Integer.parseInt(fields[3]), Integer.parseInt(fields[4]));
+                results.put(matchKey(result.left, result.right, result.index), result);
+            }
+        }
+    }
+
+    /**
+     * MatchResult: final score of one match (one line of the results file)
+     */
+    private static final class MatchResult {
+        final String left;
+        final String right;
+        final int index;
+        final int leftScore;
+        final int rightScore;
+
+        MatchResult(String left, String right, int index, int leftScore, int rightScore)
+        {
+            this.left = left;
+            this.right = right;
+            this.index = index;
+            this.leftScore = leftScore;
+            this.rightScore = rightScore;
+        }
+
+        String toLine()
+        {
+            return left + "," + right + "," + index + "," + leftScore + "," + rightScore;
+        }
+    }
+
+    /**
+     * Standing: a player's rating and record
+     */
+    public static final class Standing {
+        private final String name;
+        private double rating;
+        private double ratingError95;
+        private int matches, won, drawn, lost;
+        private long pointsFor, pointsAgainst;
+
+        Standing(String name)
+        {
+            this.name = name;
+        }
+
+        void record(double matchScore, int points, int against)
+        {
+            matches++;
+            if (matchScore == 1.0) won++;
+            else if (matchScore == 0.0) lost++;
+            else drawn++;
+            pointsFor += points;
+            pointsAgainst += against;
+        }
+
+        public String getName()           { return name; }
+        public double getRating()         { return rating; }
+        public double getRatingError95()  { return ratingError95; }
+        public int    getMatches()        { return matches; }
+        public int    getWon()            { return won; }
+        public int    getDrawn()          { return drawn; }
+        public int    getLost()           { return lost; }
+        public long   getPointsFor()      { return pointsFor; }
+        public long   getPointsAgainst()  { return pointsAgainst; }
+    }
+}
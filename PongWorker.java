@@ -0,0 +1,351 @@
+/*
+ * PongWorker - a headless simulation process serving a PongCoordinator
+ */
+package mlwithpong;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * PongWorker<br>
+ * - connects to a PongCoordinator once per job thread, leases jobs, runs
+ *   them on headless PongGames and sends back their results<br>
+ * - a heartbeat thread renews the lease of a connection while its job
+ *   makes progress (the handler reports it once per point and every
+ *   PROGRESS_TICKS ticks within one), so a long job is not re-leased; a
+ *   worker that is killed closes its connections, and a job that hangs
+ *   stops the heartbeats of its own connection: either way the
+ *   coordinator hands the job to another worker<br>
+ * - jobs are a kind and a few long arguments, results a few longs; job
+ *   kinds are registered Handlers (see JOB_MATCHES, JOB_ROLLOUTS)<br>
+ * <p>
+ * Run one process per JVM wanted: java mlwithpong.PongWorker [port [threads]]
+ * (or PongCoordinator.launchWorkers)
+ */
+public class PongWorker {
+
+    /**
+     * JOB_MATCHES: seeded matches between algorithmic CPUs (a sweep point
+     * or a tournament pairing)<br>
+     * args: seed, left simple (1) or forecast (0), right simple (1) or
+     * forecast (0), matches, paddle moves per tick<br>
+     * result: left matches won, right matches won, left points, right points, ticks
+     */
+    public static final int JOB_MATCHES  = 1;
+
+    /**
+     * JOB_ROLLOUTS: seeded points of the forecasting CPU (right paddle)
+     * making random moves with some probability, against the forecasting CPU<br>
+     * args: seed, points, random move probability in millionths<br>
+     * result: points won, points lost, ticks
+     */
+    public static final int JOB_ROLLOUTS = 2;
+
+    private static final long MAX_TICKS_PER_MATCH = 10000000L;  // as PongTournament
+    private static final int  MAX_TICKS_PER_POINT = 20000;      // as PongESTrainer
+    private static final int  PROGRESS_TICKS      = 65536;      // ticks per progress step within a point (power of 2)
+
+    private final String host;
+    private final int port;
+    private final int numThreads;
+    private final Map<Integer, Handler> handlers = new HashMap<>();
+    private final List<Connection> connections = new ArrayList<>();   // guarded by itself
+    private volatile int heartbeatMillis = 0;
+
+    /**
+     * PongWorker Constructor: a worker with the JOB_MATCHES and
+     * JOB_ROLLOUTS handlers
+     *
+     * @param host host of the coordinator (loopback)
+     * @param port port of the coordinator
+     * @param numThreads job threads (one connection each)
+     */
+    public PongWorker(String host, int port, int numThreads)
+    {
+        this.host = host;
+        this.port = port;
+        this.numThreads = numThreads;
+        register(JOB_MATCHES, PongWorker::playMatches);
+        register(JOB_ROLLOUTS, PongWorker::playRollouts);
+    }
+
+    /**
+     * register: adds (or replaces) the handler of a job kind
+     *
+     * @param kind job kind
+     * @param handler code that runs a job of that kind
+     */
+    public void register(int kind, Handler handler)
+    {
+        handlers.put(kind, handler);
+    }
+
+    /**
+     * run: serves jobs until the coordinator is done or gone
+     *
+     * @throws InterruptedException if interrupted while waiting for the job threads
+     */
+    public void run() throws InterruptedException
+    {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++)
+        {
+            Thread thread = new Thread(this::serve, "pong-worker-" + t);
+            thread.start();
+            threads.add(thread);
+        }
+        Thread heartbeat = new Thread(this::heartbeat, "pong-worker-heartbeat");
+        heartbeat.setDaemon(true);
+        heartbeat.start();
+        for (Thread thread : threads) thread.join();
+    }
+
+    // one job thread: lease, run, send the result, until MSG_DONE
+    private void serve()
+    {
+        try (Socket socket = new Socket(host, port);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())))
+        {
+            socket.setTcpNoDelay(true);
+            out.writeInt(PongCoordinator.MAGIC);
+            out.writeByte(PongCoordinator.VERSION);
+            out.flush();
+            if (in.readInt() != PongCoordinator.MAGIC || in.readByte() != PongCoordinator.VERSION)
+            {
+                throw new IOException("not a PongCoordinator");
+            }
+            heartbeatMillis = VarInts.readVarint(in);
+            Connection connection = new Connection(out);
+            synchronized (connections)
+            {
+                connections.add(connection);
+            }
+
+            while (true)
+            {
+                synchronized (out)
+                {
+                    out.writeByte(PongCoordinator.MSG_LEASE);
+                    out.flush();
+                }
+                byte type = in.readByte();
+                if (type == PongCoordinator.MSG_DONE) break;
+                if (type == PongCoordinator.MSG_WAIT)
+                {
+                    Thread.sleep(VarInts.readVarint(in));
+                    continue;
+                }
+                if (type != PongCoordinator.MSG_JOB) throw new IOException("unexpected message " + type);
+
+                long jobId = VarInts.readVarlong(in);
+                int kind = VarInts.readVarint(in);
+                long[] args = new long[VarInts.readVarint(in)];
+                for (int i = 0; i < args.length; i++) args[i] = VarInts.unZigZag(VarInts.readVarlong(in));
+                Handler handler = handlers.get(kind);
+                if (handler == null) throw new IOException("no handler for job kind " + kind);
+                connection.running = true;
+                long[] result = handler.run(args, connection.progress);
+                connection.running = false;
+
+                synchronized (out)
+                {
+                    out.writeByte(PongCoordinator.MSG_RESULT);
+                    VarInts.writeVarlong(out, jobId);
+                    VarInts.writeVarint(out, result.length);
+                    for (long r : result) VarInts.writeVarlong(out, VarInts.zigZag(r));
+                    out.flush();
+                }
+            }
+            synchronized (connections)
+            {
+                connections.remove(connection);
+            }
+        }
+        catch (IOException ioe) {
+            // the coordinator is gone (or this worker failed a job: it is re-leased elsewhere)
+            System.err.println("pong worker: " + ioe);
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void heartbeat()
+    {
+        while (true)
+        {
+            try {
+                Thread.sleep(Math.max(1, heartbeatMillis == 0 ? 10 : heartbeatMillis));
+            }
+            catch (InterruptedException ie) {
+                return;
+            }
+            synchronized (connections)
+            {
+                for (Connection connection : connections)
+                {
+                    // a running job renews its lease only if it advanced since the last heartbeat
+                    long progress = connection.progress.get();
+                    if (connection.running && progress == connection.lastProgress) continue;
+                    connection.lastProgress = progress;
+                    try {
+                        synchronized (connection.out)
+                        {
+                            connection.out.writeByte(PongCoordinator.MSG_HEARTBEAT);
+                            connection.out.flush();
+                        }
+                    }
+                    catch (IOException ioe) {
+                        // the job thread sees the closed connection too
+                    }
+                }
+            }
+        }
+    }
+
+    // JOB_MATCHES: the tick loop of PongTournament.playMatch, with algorithmic CPUs
+    private static long[] playMatches(long[] args, Progress progress)
+    {
+        long seed = args[0];
+        boolean leftSimple = args[1] != 0;
+        boolean rightSimple = args[2] != 0;
+        int matches = (int)args[3];
+        int paddleMoves = (int)args[4];
+
+        long[] result = new long[5];
+        for (int m = 0; m < matches; m++)
+        {
+            PongGame pongGame = new PongGame();
+            pongGame.setVerbose(false);
+            pongGame.setRandomSeed(seed + m);
+            long ticks = 0;
+            while (!pongGame.isMatchOver() && ticks < MAX_TICKS_PER_MATCH)
+            {
+                progress.advance();
+                pongGame.startNewGame();
+                while (!pongGame.isGameOver() && ticks++ < MAX_TICKS_PER_MATCH)
+                {
+                    if ((ticks & (PROGRESS_TICKS - 1)) == 0) progress.advance();   // long rallies keep the lease too
+                    pongGame.updateBall();
+                    for (int p = 0; p < paddleMoves; p++)
+                    {
+                        pongGame.moveCPUPaddle(1, leftSimple);
+                        pongGame.moveCPUPaddle(2, rightSimple);
+                    }
+                }
+            }
+            int left = pongGame.getAttribute(GameAttributes.PLAYER_ONE_SCORE);
+            int right = pongGame.getAttribute(GameAttributes.PLAYER_TWO_SCORE);
+            if (left > right) result[0]++;
+            else if (right > left) result[1]++;
+            result[2] += left;
+            result[3] += right;
+            result[4] += ticks;
+        }
+        return result;
+    }
+
+    // JOB_ROLLOUTS: the point loop of PongESTrainer.evaluate, with an epsilon-random CPU
+    private static long[] playRollouts(long[] args, Progress progress)
+    {
+        long seed = args[0];
+        long points = args[1];
+        double epsilon = args[2]/1e6;
+
+        PongGame pongGame = new PongGame();
+        pongGame.setVerbose(false);
+        pongGame.setRandomSeed(seed);
+        SplittableRandom random = new SplittableRandom(seed);
+        int width = pongGame.getAttribute(GameAttributes.GAME_WIDTH);
+        int dyPaddle = pongGame.getAttribute(GameAttributes.PADDLE_DY);
+        long[] result = new long[3];
+        for (long point = 0; point < points; point++)
+        {
+            progress.advance();
+            pongGame.startNewGame();
+            for (int t = 0; t < MAX_TICKS_PER_POINT; t++, result[2]++)
+            {
+                if ((result[2] & (PROGRESS_TICKS - 1)) == 0) progress.advance();
+                pongGame.updateBall();
+                int x = pongGame.getAttribute(GameAttributes.BALL_X);
+                if (x < 0) { result[0]++; break; }         // past the left paddle
+                if (x > width) { result[1]++; break; }
+                pongGame.playerOneAlgorithmicCPUMovePaddle(false);
+                if (random.nextDouble() < epsilon) pongGame.movePlayerTwoPaddle((random.nextBoolean() ? 1 : -1)*dyPaddle);
+                else pongGame.playerTwoAlgorithmicCPUMovePaddle(false);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * main: runs a worker process against a coordinator on this machine
+     *
+     * @param args [port [threads]]
+     * @throws InterruptedException if interrupted while serving jobs
+     */
+    public static void main(String[] args) throws InterruptedException
+    {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : PongCoordinator.DEFAULT_PORT;
+        int threads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        new PongWorker(InetAddress.getLoopbackAddress().getHostAddress(), port, threads).run();
+    }
+
+    /**
+     * Handler: runs one kind of job
+     */
+    @FunctionalInterface
+    public interface Handler {
+        /**
+         * run: runs one job; must be deterministic in its arguments, since
+         * a job may run more than once
+         *
+         * @param args arguments of the job
+         * @param progress to advance at least once per heartbeat period
+         *        (e.g. once per point), or the job's lease is not renewed
+         * @return long[] result of the job
+         */
+        long[] run(long[] args, Progress progress);
+    }
+
+    /**
+     * Progress: how far the job of one connection has come
+     */
+    public static final class Progress {
+        private volatile long count = 0;   // written by the job thread only
+
+        public void advance()
+        {
+            count++;
+        }
+
+        long get()
+        {
+            return count;
+        }
+    }
+
+    // one connection to the coordinator: its output and the progress of its job
+    private static final class Connection {
+        final DataOutputStream out;
+        final Progress progress = new Progress();
+        volatile boolean running = false;   // a job is running
+        long lastProgress = 0;              // heartbeat thread only
+
+        Connection(DataOutputStream out)
+        {
+            this.out = out;
+        }
+    }
+}
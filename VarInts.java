@@ -0,0 +1,137 @@
+/*
+ * VarInts - variable-length integer encoding for compact binary formats
+ */
+package mlwithpong;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * VarInts<br>
+ * - LEB128 varints: 7 bits per byte, high bit set on all but the last byte,
+ *   so values under 128 take one byte<br>
+ * - zigZag() maps small negative numbers to small positive numbers
+ *   (0,-1,1,-2,2... to 0,1,2,3,4...) so deltas also encode in one byte
+ */
+public final class VarInts {
+
+    public static final int MAX_VARINT_BYTES  = 5;
+    public static final int MAX_VARLONG_BYTES = 10;
+
+    private VarInts()
+    {
+    }
+
+    public static int zigZag(int value)
+    {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    public static int unZigZag(int value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static long zigZag(long value)
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    public static long unZigZag(long value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static void writeVarint(ByteBuffer buffer, int value)
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            buffer.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+
+    public static void writeVarlong(ByteBuffer buffer, long value)
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            buffer.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+
+    public static int readVarint(ByteBuffer buffer)
+    {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7)
+        {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IllegalStateException("malformed varint");
+    }
+
+    public static long readVarlong(ByteBuffer buffer)
+    {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7)
+        {
+            byte b = buffer.get();
+            value |= (long)(b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IllegalStateException("malformed varlong");
+    }
+
+    public static void writeVarint(OutputStream out, int value) throws IOException
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    public static void writeVarlong(OutputStream out, long value) throws IOException
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.write((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int)value);
+    }
+
+    public static int readVarint(InputStream in) throws IOException
+    {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7)
+        {
+            int b = in.read();
+            if (b < 0) throw new EOFException();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("malformed varint");
+    }
+
+    public static long readVarlong(InputStream in) throws IOException
+    {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7)
+        {
+            int b = in.read();
+            if (b < 0) throw new EOFException();
+            value |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("malformed varlong");
+    }
+}